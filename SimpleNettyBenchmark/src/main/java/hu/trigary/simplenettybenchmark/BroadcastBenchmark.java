@@ -0,0 +1,96 @@
+package hu.trigary.simplenettybenchmark;
+
+import hu.trigary.simplenetty.client.Client;
+import hu.trigary.simplenetty.serialization.DataSerializer;
+import hu.trigary.simplenetty.server.Server;
+import hu.trigary.simplenetty.server.ServerClient;
+import hu.trigary.simplenetty.transport.Transport;
+import io.netty.channel.EventLoopGroup;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures how long it takes for a broadcast message to reach all connected clients.
+ * The message is serialized once by the server and the resulting frame is shared by all connections.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g", "-Dio.netty.leakDetection.level=disabled"})
+public class BroadcastBenchmark {
+	private static final int PORT = 8811;
+	
+	@Param({"array", "buffer"})
+	public String serializer;
+	
+	@Param({"NIO", "EPOLL"})
+	public String transport;
+	
+	@Param({"1", "16", "128"})
+	public int clients;
+	
+	@Param({"256"})
+	public int size;
+	
+	private final AtomicLong received = new AtomicLong();
+	private final List<Client<byte[]>> connected = new ArrayList<>();
+	private long expected;
+	private byte[] payload;
+	private EventLoopGroup clientGroup;
+	private Server<ServerClient<byte[]>, byte[]> server;
+	
+	@Setup(Level.Trial)
+	public void setup() throws InterruptedException {
+		DataSerializer<byte[]> dataSerializer = Payloads.getSerializer(serializer);
+		Transport currentTransport = Loopback.getTransport(transport);
+		payload = Payloads.newPayload(size);
+		
+		server = Loopback.newServer(dataSerializer, currentTransport, PORT, created -> {
+		});
+		clientGroup = currentTransport.newEventLoopGroup(1, null);
+		for (int i = 0; i < clients; i++) {
+			Client<byte[]> client = Loopback.newClient(dataSerializer, currentTransport, clientGroup);
+			client.onReceived(data -> received.incrementAndGet());
+			client.connect(Loopback.HOST, PORT, 0);
+			connected.add(client);
+		}
+		Loopback.awaitCondition(() -> server.getClients().size() == clients);
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown() throws InterruptedException {
+		for (Client<byte[]> client : connected) {
+			client.uninitialize();
+		}
+		clientGroup.shutdownGracefully().sync();
+		server.stop();
+	}
+	
+	
+	
+	@Benchmark
+	public long broadcast() {
+		expected += clients;
+		server.sendToAll(payload);
+		Loopback.awaitCondition(() -> received.get() >= expected);
+		return expected;
+	}
+}
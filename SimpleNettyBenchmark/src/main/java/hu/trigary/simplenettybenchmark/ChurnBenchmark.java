@@ -0,0 +1,71 @@
+package hu.trigary.simplenettybenchmark;
+
+import hu.trigary.simplenetty.client.Client;
+import hu.trigary.simplenetty.server.Server;
+import hu.trigary.simplenetty.server.ServerClient;
+import hu.trigary.simplenetty.transport.Transport;
+import io.netty.channel.EventLoopGroup;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of a connection's whole lifecycle: connecting, the server registering the client
+ * (which includes the pipeline initialization) and then both sides cleaning up after the disconnection.
+ * The clients are only disconnected once the server has registered them,
+ * so the benchmark also tracks the performance of the server's client collection.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g", "-Dio.netty.leakDetection.level=disabled"})
+public class ChurnBenchmark {
+	private static final int PORT = 8812;
+	
+	@Param({"NIO", "EPOLL"})
+	public String transport;
+	
+	private EventLoopGroup clientGroup;
+	private Server<ServerClient<byte[]>, byte[]> server;
+	private Client<byte[]> client;
+	
+	@Setup(Level.Trial)
+	public void setup() throws InterruptedException {
+		Transport currentTransport = Loopback.getTransport(transport);
+		server = Loopback.newServer(Payloads.BUFFER_SERIALIZER, currentTransport, PORT, created -> {
+		});
+		clientGroup = currentTransport.newEventLoopGroup(1, null);
+		client = Loopback.newClient(Payloads.BUFFER_SERIALIZER, currentTransport, clientGroup);
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown() throws InterruptedException {
+		client.uninitialize();
+		clientGroup.shutdownGracefully().sync();
+		server.stop();
+	}
+	
+	
+	
+	@Benchmark
+	public void connectDisconnect() throws InterruptedException {
+		client.connect(Loopback.HOST, PORT, 0);
+		Loopback.awaitCondition(() -> !server.getClients().isEmpty());
+		client.disconnect();
+		Loopback.awaitCondition(() -> client.getContext() == null && server.getClients().isEmpty());
+	}
+}
@@ -0,0 +1,95 @@
+package hu.trigary.simplenettybenchmark;
+
+import hu.trigary.simplenetty.serialization.DataSerializer;
+import hu.trigary.simplenetty.serialization.FrameDecoder;
+import hu.trigary.simplenetty.serialization.FrameEncoder;
+import hu.trigary.simplenetty.serialization.FrameFormat;
+import hu.trigary.simplenetty.serialization.PacketDecoder;
+import hu.trigary.simplenetty.serialization.PacketEncoder;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of the encoders and decoders without any I/O,
+ * using {@link EmbeddedChannel}s which contain the same handlers as the real pipelines.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g", "-Dio.netty.leakDetection.level=disabled"})
+public class CodecBenchmark {
+	@Param({"array", "buffer"})
+	public String serializer;
+	
+	@Param({"VARINT", "FIXED_INT"})
+	public FrameFormat format;
+	
+	@Param({"32", "1024"})
+	public int size;
+	
+	private byte[] payload;
+	private ByteBuf frame;
+	private EmbeddedChannel encoder;
+	private EmbeddedChannel decoder;
+	
+	@Setup(Level.Trial)
+	public void setup() {
+		DataSerializer<byte[]> dataSerializer = Payloads.getSerializer(serializer);
+		payload = Payloads.newPayload(size);
+		encoder = new EmbeddedChannel(new FrameEncoder(format), new PacketEncoder<>(dataSerializer));
+		decoder = new EmbeddedChannel(new FrameDecoder(format), new PacketDecoder<>(dataSerializer));
+		
+		encoder.writeOutbound(payload);
+		frame = Unpooled.buffer();
+		ByteBuf buffer;
+		while ((buffer = encoder.readOutbound()) != null) {
+			frame.writeBytes(buffer);
+			buffer.release();
+		}
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		frame.release();
+		encoder.finishAndReleaseAll();
+		decoder.finishAndReleaseAll();
+	}
+	
+	
+	
+	@Benchmark
+	public int encode() {
+		encoder.writeOutbound(payload);
+		int bytes = 0;
+		ByteBuf buffer;
+		while ((buffer = encoder.readOutbound()) != null) {
+			bytes += buffer.readableBytes();
+			buffer.release();
+		}
+		return bytes;
+	}
+	
+	@Benchmark
+	public byte[] decode() {
+		decoder.writeInbound(frame.retainedDuplicate());
+		return decoder.readInbound();
+	}
+}
@@ -0,0 +1,84 @@
+package hu.trigary.simplenettybenchmark;
+
+import hu.trigary.simplenetty.client.Client;
+import hu.trigary.simplenetty.serialization.DataSerializer;
+import hu.trigary.simplenetty.server.Server;
+import hu.trigary.simplenetty.server.ServerClient;
+import hu.trigary.simplenetty.transport.Transport;
+import io.netty.channel.EventLoopGroup;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the round-trip latency of a single message over the loopback interface:
+ * the client sends the payload and waits until the server echoes it back.
+ * The sampled distribution contains the p50, p99 and other percentiles.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g", "-Dio.netty.leakDetection.level=disabled"})
+public class EchoBenchmark {
+	private static final int PORT = 8810;
+	
+	@Param({"array", "buffer"})
+	public String serializer;
+	
+	@Param({"NIO", "EPOLL"})
+	public String transport;
+	
+	@Param({"32", "1024"})
+	public int size;
+	
+	private final BlockingQueue<byte[]> responses = new ArrayBlockingQueue<>(1);
+	private byte[] payload;
+	private EventLoopGroup clientGroup;
+	private Server<ServerClient<byte[]>, byte[]> server;
+	private Client<byte[]> client;
+	
+	@Setup(Level.Trial)
+	public void setup() throws InterruptedException {
+		DataSerializer<byte[]> dataSerializer = Payloads.getSerializer(serializer);
+		Transport currentTransport = Loopback.getTransport(transport);
+		payload = Payloads.newPayload(size);
+		
+		server = Loopback.newServer(dataSerializer, currentTransport, PORT,
+				created -> created.onReceived(ServerClient::send));
+		clientGroup = currentTransport.newEventLoopGroup(1, null);
+		client = Loopback.newClient(dataSerializer, currentTransport, clientGroup);
+		client.onReceived(responses::offer);
+		client.connect(Loopback.HOST, PORT, 0);
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown() throws InterruptedException {
+		client.uninitialize();
+		clientGroup.shutdownGracefully().sync();
+		server.stop();
+	}
+	
+	
+	
+	@Benchmark
+	public byte[] echo() throws InterruptedException {
+		client.send(payload);
+		return responses.take();
+	}
+}
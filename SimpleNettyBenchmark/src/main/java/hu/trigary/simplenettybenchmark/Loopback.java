@@ -0,0 +1,101 @@
+package hu.trigary.simplenettybenchmark;
+
+import hu.trigary.simplenetty.client.Client;
+import hu.trigary.simplenetty.serialization.DataSerializer;
+import hu.trigary.simplenetty.server.Server;
+import hu.trigary.simplenetty.server.ServerClient;
+import hu.trigary.simplenetty.transport.SocketOptions;
+import hu.trigary.simplenetty.transport.Transport;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+
+import java.io.IOException;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Helpers for the benchmarks which run a server and its clients on the loopback interface.
+ * Each benchmark class uses its own fixed port and a single worker thread is used on each side,
+ * so that the results only depend on the machine, not on the amount of its cores.
+ */
+public final class Loopback {
+	public static final String HOST = "127.0.0.1";
+	
+	private Loopback() {
+	}
+	
+	
+	
+	/**
+	 * Parses the value of the transport parameter. If the requested transport is not available
+	 * (eg. epoll on a non-Linux system), the benchmark fails instead of silently measuring something else.
+	 *
+	 * @param name the name of the transport
+	 * @return the requested transport
+	 */
+	public static Transport getTransport(String name) {
+		Transport transport = Transport.valueOf(name);
+		if (!transport.isAvailable()) {
+			throw new IllegalStateException("The transport is not available on this platform: " + name);
+		}
+		return transport;
+	}
+	
+	/**
+	 * Creates and starts a new server.
+	 *
+	 * @param serializer the serializer to use
+	 * @param transport the transport to use
+	 * @param port the port to bind to
+	 * @param setup called before the server is started, should set the event listeners
+	 * @return the started server
+	 * @throws InterruptedException if the thread gets interrupted while binding
+	 */
+	public static Server<ServerClient<byte[]>, byte[]> newServer(DataSerializer<byte[]> serializer, Transport transport,
+			int port, Consumer<Server<ServerClient<byte[]>, byte[]>> setup) throws InterruptedException {
+		Server<ServerClient<byte[]>, byte[]> server = new Server<>(serializer, ServerClient::new);
+		server.setTransport(transport);
+		server.setWorkerThreads(1);
+		server.setSocketOptions(new SocketOptions().setTcpNoDelay(true));
+		server.onException((client, cause) -> {
+			//the clients close their connections with a reset, see #newClient
+			if (!(cause instanceof IOException)) {
+				cause.printStackTrace();
+			}
+		});
+		setup.accept(server);
+		server.start(HOST, port);
+		return server;
+	}
+	
+	/**
+	 * Creates a new client which uses the specified worker group and closes its connections
+	 * with a reset instead of a handshake: this way no sockets are left in the TIME_WAIT state,
+	 * so benchmarks which open many connections don't run out of ephemeral ports.
+	 *
+	 * @param serializer the serializer to use
+	 * @param transport the transport to use
+	 * @param workerGroup the worker group shared by the clients
+	 * @return the newly created, not yet connected client
+	 */
+	public static Client<byte[]> newClient(DataSerializer<byte[]> serializer, Transport transport, EventLoopGroup workerGroup) {
+		Client<byte[]> client = new Client<>(serializer);
+		client.setTransport(transport);
+		client.setSharedWorkerGroup(workerGroup);
+		client.setSocketOptions(new SocketOptions().setTcpNoDelay(true));
+		client.onConfigured(bootstrap -> bootstrap.option(ChannelOption.SO_LINGER, 0));
+		return client;
+	}
+	
+	/**
+	 * Busy-waits until the specified condition becomes true.
+	 * Yielding is preferred over parking: the latter would dominate the measured latencies.
+	 *
+	 * @param condition the condition to wait for
+	 */
+	public static void awaitCondition(BooleanSupplier condition) {
+		while (!condition.getAsBoolean()) {
+			Thread.yield();
+		}
+	}
+}
@@ -0,0 +1,85 @@
+package hu.trigary.simplenettybenchmark;
+
+import hu.trigary.simplenetty.serialization.ByteBufDataSerializer;
+import hu.trigary.simplenetty.serialization.DataSerializer;
+import io.netty.buffer.ByteBuf;
+
+import java.util.Random;
+
+/**
+ * The serializers and payloads shared by the benchmarks.
+ * Both serializers work with raw byte arrays, the only difference between them is
+ * whether they go through the byte array or the {@link ByteBuf} based code paths.
+ */
+public final class Payloads {
+	public static final DataSerializer<byte[]> ARRAY_SERIALIZER = new DataSerializer<byte[]>() {
+		@Override
+		public byte[] serialize(byte[] data) {
+			return data;
+		}
+		
+		@Override
+		public byte[] deserialize(byte[] bytes) {
+			return bytes;
+		}
+		
+		@Override
+		public Class<byte[]> getType() {
+			return byte[].class;
+		}
+	};
+	
+	public static final DataSerializer<byte[]> BUFFER_SERIALIZER = new ByteBufDataSerializer<byte[]>() {
+		@Override
+		public void serialize(byte[] data, ByteBuf output) {
+			output.writeBytes(data);
+		}
+		
+		@Override
+		public byte[] deserialize(ByteBuf input) {
+			byte[] bytes = new byte[input.readableBytes()];
+			input.readBytes(bytes);
+			return bytes;
+		}
+		
+		@Override
+		public Class<byte[]> getType() {
+			return byte[].class;
+		}
+	};
+	
+	private Payloads() {
+	}
+	
+	
+	
+	/**
+	 * Gets the serializer with the specified name, which is the value of the benchmarks' parameter.
+	 *
+	 * @param name either "array" or "buffer"
+	 * @return the serializer with the specified name
+	 */
+	public static DataSerializer<byte[]> getSerializer(String name) {
+		switch (name) {
+			case "array":
+				return ARRAY_SERIALIZER;
+			case "buffer":
+				return BUFFER_SERIALIZER;
+			default:
+				throw new IllegalArgumentException("Unknown serializer: " + name);
+		}
+	}
+	
+	/**
+	 * Creates a new payload of the specified size.
+	 * The contents are generated using a fixed seed, so that all runs use the same data.
+	 *
+	 * @param size the size of the payload in bytes
+	 * @return the newly created payload
+	 */
+	public static byte[] newPayload(int size) {
+		byte[] payload = new byte[size];
+		new Random(size).nextBytes(payload);
+		return payload;
+	}
+}
@@ -0,0 +1,115 @@
+package hu.trigary.simplenettybenchmark;
+
+import com.google.gson.Gson;
+import hu.trigary.simplenetty.serialization.BinarySerializer;
+import hu.trigary.simplenetty.serialization.DataSerializer;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the JSON serialization of the example (Gson, converted to US-ASCII bytes)
+ * with the {@link BinarySerializer}, using a small chat message with a nested object.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g", "-Dio.netty.leakDetection.level=disabled"})
+public class PojoBenchmark {
+	@Param({"gson", "binary"})
+	public String serializer;
+	
+	private DataSerializer<ChatMessage> dataSerializer;
+	private ChatMessage message;
+	private ByteBuf output;
+	private ByteBuf input;
+	
+	@Setup(Level.Trial)
+	public void setup() {
+		dataSerializer = serializer.equals("gson") ? new GsonSerializer() : new BinarySerializer<>(ChatMessage.class);
+		message = new ChatMessage();
+		message.id = 1234567;
+		message.timestamp = 1539760000000L;
+		message.channel = Channel.GLOBAL;
+		message.text = "Hello there, this is a message of a typical length.";
+		message.sender = new User();
+		message.sender.id = 42;
+		message.sender.name = "Trigary";
+		message.sender.admin = true;
+		
+		output = Unpooled.buffer(256);
+		input = Unpooled.buffer(256);
+		dataSerializer.serialize(message, input);
+	}
+	
+	
+	
+	@Benchmark
+	public int serialize() {
+		output.clear();
+		dataSerializer.serialize(message, output);
+		return output.readableBytes();
+	}
+	
+	@Benchmark
+	public ChatMessage deserialize() {
+		input.readerIndex(0);
+		return dataSerializer.deserialize(input);
+	}
+	
+	
+	
+	public enum Channel {
+		GLOBAL,
+		LOCAL
+	}
+	
+	public static class User {
+		int id;
+		String name;
+		boolean admin;
+	}
+	
+	public static class ChatMessage {
+		int id;
+		long timestamp;
+		Channel channel;
+		String text;
+		User sender;
+	}
+	
+	private static class GsonSerializer implements DataSerializer<ChatMessage> {
+		private static final Gson GSON = new Gson();
+		
+		@Override
+		public byte[] serialize(ChatMessage data) {
+			return GSON.toJson(data).getBytes(StandardCharsets.US_ASCII);
+		}
+		
+		@Override
+		public ChatMessage deserialize(byte[] bytes) {
+			return GSON.fromJson(new String(bytes, StandardCharsets.US_ASCII), ChatMessage.class);
+		}
+		
+		@Override
+		public Class<ChatMessage> getType() {
+			return ChatMessage.class;
+		}
+	}
+}
@@ -0,0 +1,47 @@
+package hu.trigary.simplenettybenchmark.load;
+
+import hu.trigary.simplenetty.client.Client;
+import io.netty.channel.ChannelHandlerContext;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A single simulated client: it sends a message, waits for the echoed response,
+ * then thinks for a while before sending the next message.
+ * All of its events are handled on the event loop of its channel, so no synchronization is necessary.
+ */
+class LoadConnection {
+	private final LoadGenerator generator;
+	private final Client<byte[]> client;
+	private long sentAt;
+	
+	LoadConnection(LoadGenerator generator, Client<byte[]> client) {
+		this.generator = generator;
+		this.client = client;
+		client.onConnected(this::scheduleSend);
+		client.onReceived(this::onReceived);
+		client.onDisconnected(generator::onDisconnected);
+		client.onException(generator::onException);
+	}
+	
+	
+	
+	private void onReceived(byte[] data) {
+		generator.recordResponse(System.nanoTime() - sentAt);
+		scheduleSend();
+	}
+	
+	private void scheduleSend() {
+		ChannelHandlerContext context = client.getContext();
+		if (context != null && generator.isRunning()) {
+			context.executor().schedule(this::send, generator.nextThinkNanos(), TimeUnit.NANOSECONDS);
+		}
+	}
+	
+	private void send() {
+		if (generator.isRunning()) {
+			sentAt = System.nanoTime();
+			client.send(generator.getPayload());
+		}
+	}
+}
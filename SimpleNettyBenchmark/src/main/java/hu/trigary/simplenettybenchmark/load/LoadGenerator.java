@@ -0,0 +1,215 @@
+package hu.trigary.simplenettybenchmark.load;
+
+import hu.trigary.simplenetty.client.Client;
+import hu.trigary.simplenetty.metrics.Histogram;
+import hu.trigary.simplenetty.server.Server;
+import hu.trigary.simplenetty.server.ServerClient;
+import hu.trigary.simplenetty.transport.SocketOptions;
+import hu.trigary.simplenetty.transport.Transport;
+import hu.trigary.simplenettybenchmark.Payloads;
+import io.netty.channel.EventLoopGroup;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Simulates many concurrent clients against an echo server, both running in this process on the loopback interface.
+ * The clients share a few event loop threads instead of each having its own,
+ * therefore tens of thousands of connections can be simulated.
+ * <p>
+ * The connections are opened evenly spaced during the ramp-up, then the steady state is measured:
+ * the throughput and the distribution of the round-trip latencies are printed at the end.
+ * Usage: {@code java -cp benchmarks.jar hu.trigary.simplenettybenchmark.load.LoadGenerator --connections=10000}
+ * <p>
+ * Each connection needs a file descriptor on both sides, so the limit ({@code ulimit -n}) may need to be raised.
+ * The connections are spread across multiple local addresses (127.0.0.x) to avoid running out of ephemeral ports.
+ */
+public class LoadGenerator {
+	private static final String HOST = "127.0.0.1";
+	private static final int CONNECTIONS_PER_ADDRESS = 20000;
+	private static final long CONNECT_TIMEOUT_MILLIS = 10000;
+	private static final int CONNECTOR_THREADS = 8;
+	private static final double[] PERCENTILES = {50, 75, 90, 95, 99, 99.9, 99.99, 100};
+	private final AtomicBoolean exceptionPrinted = new AtomicBoolean();
+	private final LongAdder responses = new LongAdder();
+	private final LongAdder exceptions = new LongAdder();
+	private final LongAdder disconnects = new LongAdder();
+	private final LoadSettings settings;
+	private final byte[] payload;
+	private final long meanThinkNanos;
+	private volatile Histogram latencies = new Histogram();
+	private volatile boolean running = true;
+	
+	public LoadGenerator(LoadSettings settings) {
+		this.settings = settings;
+		payload = Payloads.newPayload(settings.getSize());
+		meanThinkNanos = TimeUnit.MILLISECONDS.toNanos(settings.getThinkMillis());
+	}
+	
+	public static void main(String[] args) throws InterruptedException {
+		LoadSettings settings;
+		try {
+			settings = LoadSettings.parse(args);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println("Available settings: --connections --threads --server-threads --size"
+					+ " --think (millis) --ramp-up (seconds) --duration (seconds) --port");
+			System.exit(1);
+			return;
+		}
+		new LoadGenerator(settings).run();
+	}
+	
+	
+	
+	/**
+	 * Starts the server, opens the connections, measures the steady state, prints the results and then cleans up.
+	 *
+	 * @throws InterruptedException if the thread gets interrupted
+	 */
+	public void run() throws InterruptedException {
+		System.out.println("Settings: " + settings);
+		Transport transport = Transport.getDefault();
+		Server<ServerClient<byte[]>, byte[]> server = new Server<>(Payloads.BUFFER_SERIALIZER, ServerClient::new);
+		server.setTransport(transport);
+		server.setWorkerThreads(settings.getServerThreads());
+		server.setSocketOptions(new SocketOptions().setTcpNoDelay(true));
+		server.onReceived(ServerClient::send);
+		server.onException((client, cause) -> onException(cause));
+		server.start(HOST, settings.getPort());
+		
+		EventLoopGroup clientGroup = transport.newEventLoopGroup(settings.getThreads(), null);
+		try {
+			rampUp(transport, clientGroup);
+			measure();
+		} finally {
+			running = false;
+			clientGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS).sync();
+			server.stop();
+		}
+	}
+	
+	
+	
+	boolean isRunning() {
+		return running;
+	}
+	
+	byte[] getPayload() {
+		return payload;
+	}
+	
+	long nextThinkNanos() {
+		return meanThinkNanos == 0 ? 0 : (long) (-meanThinkNanos * Math.log(1 - ThreadLocalRandom.current().nextDouble()));
+	}
+	
+	void recordResponse(long latencyNanos) {
+		latencies.record(latencyNanos);
+		responses.increment();
+	}
+	
+	void onDisconnected() {
+		if (running) {
+			disconnects.increment();
+		}
+	}
+	
+	void onException(Throwable cause) {
+		if (!running) {
+			//the connections are being closed forcefully
+			return;
+		}
+		
+		exceptions.increment();
+		if (!exceptionPrinted.getAndSet(true)) {
+			System.out.println("First exception (further ones are only counted):");
+			cause.printStackTrace(System.out);
+		}
+	}
+	
+	
+	
+	private void rampUp(Transport transport, EventLoopGroup clientGroup) throws InterruptedException {
+		int connections = settings.getConnections();
+		long intervalNanos = TimeUnit.SECONDS.toNanos(settings.getRampUpSeconds()) / Math.max(1, connections);
+		int progressStep = Math.max(1, connections / 10);
+		LongAdder failed = new LongAdder();
+		
+		//connecting is synchronous: a few threads make sure a slow connection attempt doesn't delay the others
+		ExecutorService connectors = Executors.newFixedThreadPool(CONNECTOR_THREADS);
+		long start = System.nanoTime();
+		for (int i = 0; i < connections; i++) {
+			long wait = start + i * intervalNanos - System.nanoTime();
+			if (wait > 0) {
+				TimeUnit.NANOSECONDS.sleep(wait);
+			}
+			
+			Client<byte[]> client = newClient(transport, clientGroup, i);
+			connectors.execute(() -> {
+				try {
+					if (!client.connect(HOST, settings.getPort(), CONNECT_TIMEOUT_MILLIS)) {
+						failed.increment();
+					}
+				} catch (Exception e) {
+					failed.increment();
+					onException(e);
+				}
+			});
+			
+			if ((i + 1) % progressStep == 0) {
+				System.out.printf("Ramp-up: %d/%d connections started%n", i + 1, connections);
+			}
+		}
+		
+		connectors.shutdown();
+		connectors.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		System.out.printf("Ramp-up finished in %.1f s, %d connections failed%n",
+				(System.nanoTime() - start) / 1e9, failed.sum());
+	}
+	
+	private Client<byte[]> newClient(Transport transport, EventLoopGroup clientGroup, int index) {
+		Client<byte[]> client = new Client<>(Payloads.BUFFER_SERIALIZER);
+		client.setTransport(transport);
+		client.setSharedWorkerGroup(clientGroup);
+		client.setSocketOptions(new SocketOptions().setTcpNoDelay(true));
+		InetSocketAddress localAddress = new InetSocketAddress("127.0.0." + (1 + index / CONNECTIONS_PER_ADDRESS), 0);
+		client.onConfigured(bootstrap -> bootstrap.localAddress(localAddress));
+		new LoadConnection(this, client);
+		return client;
+	}
+	
+	private void measure() throws InterruptedException {
+		Histogram histogram = new Histogram();
+		latencies = histogram;
+		long startResponses = responses.sum();
+		long start = System.nanoTime();
+		
+		long previousResponses = startResponses;
+		for (long second = 1; second <= settings.getDurationSeconds(); second++) {
+			long wait = start + TimeUnit.SECONDS.toNanos(second) - System.nanoTime();
+			if (wait > 0) {
+				TimeUnit.NANOSECONDS.sleep(wait);
+			}
+			long currentResponses = responses.sum();
+			System.out.printf("[%3d s] %d msg/s%n", second, currentResponses - previousResponses);
+			previousResponses = currentResponses;
+		}
+		
+		running = false;
+		double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+		long total = responses.sum() - startResponses;
+		System.out.println();
+		System.out.printf("Steady state: %.1f s, %d responses, %.0f msg/s%n", elapsedSeconds, total, total / elapsedSeconds);
+		System.out.printf("Latency: mean %.1f us, max %.1f us%n", histogram.getMean() / 1000, histogram.getMax() / 1000.0);
+		System.out.println("Latency distribution (upper bounds of power of two buckets):");
+		for (double percentile : PERCENTILES) {
+			System.out.printf("  p%-6s <= %.1f us%n", percentile, histogram.getPercentile(percentile) / 1000.0);
+		}
+		System.out.printf("Errors: %d exceptions, %d unexpected disconnects%n", exceptions.sum(), disconnects.sum());
+	}
+}
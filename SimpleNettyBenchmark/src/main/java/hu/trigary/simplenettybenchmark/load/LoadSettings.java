@@ -0,0 +1,143 @@
+package hu.trigary.simplenettybenchmark.load;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The settings of a load generator run, parsed from "--name=value" command line arguments.
+ */
+public class LoadSettings {
+	private final int connections;
+	private final int threads;
+	private final int serverThreads;
+	private final int size;
+	private final long thinkMillis;
+	private final long rampUpSeconds;
+	private final long durationSeconds;
+	private final int port;
+	
+	private LoadSettings(Map<String, String> values) {
+		int cores = Runtime.getRuntime().availableProcessors();
+		connections = getInt(values, "connections", 1000);
+		threads = getInt(values, "threads", Math.max(1, cores / 2));
+		serverThreads = getInt(values, "server-threads", Math.max(1, cores / 2));
+		size = getInt(values, "size", 64);
+		thinkMillis = getInt(values, "think", 100);
+		rampUpSeconds = getInt(values, "ramp-up", 10);
+		durationSeconds = getInt(values, "duration", 30);
+		port = getInt(values, "port", 8820);
+		
+		if (!values.isEmpty()) {
+			throw new IllegalArgumentException("Unknown settings: " + values.keySet());
+		}
+	}
+	
+	/**
+	 * Parses the specified command line arguments.
+	 *
+	 * @param args the arguments in the "--name=value" format
+	 * @return the parsed settings
+	 * @throws IllegalArgumentException if an argument is malformed or unknown
+	 */
+	public static LoadSettings parse(String[] args) {
+		Map<String, String> values = new HashMap<>();
+		for (String arg : args) {
+			int separator = arg.indexOf('=');
+			if (!arg.startsWith("--") || separator < 0) {
+				throw new IllegalArgumentException("Arguments must be in the --name=value format: " + arg);
+			}
+			values.put(arg.substring(2, separator), arg.substring(separator + 1));
+		}
+		return new LoadSettings(values);
+	}
+	
+	
+	
+	/**
+	 * Gets the amount of simulated clients.
+	 *
+	 * @return the amount of connections to open
+	 */
+	public int getConnections() {
+		return connections;
+	}
+	
+	/**
+	 * Gets the amount of event loop threads shared by all simulated clients.
+	 *
+	 * @return the amount of client threads
+	 */
+	public int getThreads() {
+		return threads;
+	}
+	
+	/**
+	 * Gets the amount of the server's worker threads.
+	 *
+	 * @return the amount of server threads
+	 */
+	public int getServerThreads() {
+		return serverThreads;
+	}
+	
+	/**
+	 * Gets the size of the messages sent by the clients.
+	 *
+	 * @return the message size in bytes
+	 */
+	public int getSize() {
+		return size;
+	}
+	
+	/**
+	 * Gets the mean of the exponentially distributed pause between receiving a response and sending
+	 * the next message. Each connection sends at most 1000 / think messages per second.
+	 *
+	 * @return the mean think time in millis
+	 */
+	public long getThinkMillis() {
+		return thinkMillis;
+	}
+	
+	/**
+	 * Gets the time over which the connections are opened, evenly spaced.
+	 *
+	 * @return the ramp-up time in seconds
+	 */
+	public long getRampUpSeconds() {
+		return rampUpSeconds;
+	}
+	
+	/**
+	 * Gets the length of the steady state, which begins once all connections have been opened.
+	 * Only the steady state is included in the printed results.
+	 *
+	 * @return the measured duration in seconds
+	 */
+	public long getDurationSeconds() {
+		return durationSeconds;
+	}
+	
+	/**
+	 * Gets the port the server is bound to on the loopback interface.
+	 *
+	 * @return the port of the server
+	 */
+	public int getPort() {
+		return port;
+	}
+	
+	@Override
+	public String toString() {
+		return "connections=" + connections + " threads=" + threads + " server-threads=" + serverThreads
+				+ " size=" + size + " think=" + thinkMillis + "ms ramp-up=" + rampUpSeconds
+				+ "s duration=" + durationSeconds + "s port=" + port;
+	}
+	
+	
+	
+	private static int getInt(Map<String, String> values, String name, int defaultValue) {
+		String value = values.remove(name);
+		return value == null ? defaultValue : Integer.parseInt(value);
+	}
+}
@@ -16,11 +16,12 @@ import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
 
 import javax.net.ssl.SSLException;
 import java.util.Scanner;
+import java.util.concurrent.ExecutionException;
 
 public class ExampleClient extends Client<Packet> {
 	public static void startClient(Scanner scanner, String host, int port) throws InterruptedException {
 		System.out.println("Starting client...");
-		ExampleClient client = new ExampleClient(scanner, host, port);
+		ExampleClient client = new ExampleClient(host, port);
 		if (!client.connect(host, port, 5000)) {
 			System.out.println("Connection timed out, uninitializing...");
 			client.uninitialize();
@@ -29,9 +30,8 @@ public class ExampleClient extends Client<Packet> {
 		}
 		
 		System.out.println("Choose your username:");
-		client.send(new LoginActionPacket(scanner.nextLine()));
-		synchronized (client) {
-			client.wait();
+		while (!client.login(scanner.nextLine())) {
+			System.out.println("That username is already taken, please enter another one:");
 		}
 		
 		System.out.println("You have logged in, you are now able to send messages.");
@@ -53,20 +53,20 @@ public class ExampleClient extends Client<Packet> {
 	
 	
 	
-	private final Scanner scanner;
 	private final String host;
 	private final int port;
-	private boolean loggedIn = false;
 	private volatile boolean stopping = false;
 	
-	public ExampleClient(Scanner scanner, String host, int port) {
+	public ExampleClient(String host, int port) {
 		super(new PacketSerializer());
-		this.scanner = scanner;
+		setRpcEnabled(true);
 		this.host = host;
 		this.port = port;
 		
 		onChannelInitialized(this::onChannelInitialized);
-		onReceived(this::onReceived);
+		onReceived(LoginEventPacket.class, this::onLogin);
+		onReceived(MessageEventPacket.class, this::onMessage);
+		onReceived(DisconnectEventPacket.class, this::onDisconnect);
 		onDisconnected(this::onDisconnected);
 	}
 	
@@ -81,34 +81,26 @@ public class ExampleClient extends Client<Packet> {
 		}
 	}
 	
-	private void onReceived(Packet data) {
-		if (!loggedIn) {
-			if (((LoginResponsePacket) data).isSuccess()) {
-				loggedIn = true;
-				synchronized (this) {
-					notify();
-				}
-			} else {
-				System.out.println("That username is already taken, please enter another one:");
-				send(new LoginActionPacket(scanner.nextLine()));
-			}
-			return;
-		}
-		
-		switch (data.getType()) {
-			case EVENT_LOGIN:
-				System.out.println("[LOGIN] " + ((LoginEventPacket) data).getUser() + " has logged in.");
-				break;
-			case EVENT_MESSAGE:
-				MessageEventPacket messagePacket = (MessageEventPacket) data;
-				System.out.println("[MESSAGE] " + messagePacket.getUser() + " > " + messagePacket.getMessage());
-				break;
-			case EVENT_DISCONNECT:
-				System.out.println("[DISCONNECT] " + ((DisconnectEventPacket) data).getUser() + " has disconnected.");
-				break;
+	private boolean login(String user) throws InterruptedException {
+		try {
+			return ((LoginResponsePacket) request(new LoginActionPacket(user)).get()).isSuccess();
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
 		}
 	}
 	
+	private void onLogin(LoginEventPacket data) {
+		System.out.println("[LOGIN] " + data.getUser() + " has logged in.");
+	}
+	
+	private void onMessage(MessageEventPacket data) {
+		System.out.println("[MESSAGE] " + data.getUser() + " > " + data.getMessage());
+	}
+	
+	private void onDisconnect(DisconnectEventPacket data) {
+		System.out.println("[DISCONNECT] " + data.getUser() + " has disconnected.");
+	}
+	
 	private void onDisconnected() {
 		if (!stopping) {
 			System.out.println("Lost connection to the server.");
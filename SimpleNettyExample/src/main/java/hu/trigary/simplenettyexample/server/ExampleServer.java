@@ -16,9 +16,9 @@ import io.netty.handler.ssl.util.SelfSignedCertificate;
 
 import javax.net.ssl.SSLException;
 import java.security.cert.CertificateException;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.HashSet;
 import java.util.Scanner;
+import java.util.Set;
 
 public class ExampleServer extends Server<ExampleServerClient, Packet> {
 	public static void startServer(Scanner scanner, int port) throws InterruptedException {
@@ -42,13 +42,16 @@ public class ExampleServer extends Server<ExampleServerClient, Packet> {
 	
 	
 	
-	private final Map<String, ExampleServerClient> clients = new HashMap<>();
+	private static final String CHAT_GROUP = "chat";
+	private final Set<String> users = new HashSet<>();
 	
 	public ExampleServer() {
 		super(new PacketSerializer(), ExampleServerClient::new);
+		setRpcEnabled(true);
 		onChannelInitialized(this::onChannelInitialized);
 		onConnected(this::onConnected);
-		onReceived(this::onReceived);
+		onReceived(MessageActionPacket.class, this::onMessage);
+		onRequest(this::onRequest);
 		onDisconnected(this::onDisconnected);
 	}
 	
@@ -68,40 +71,40 @@ public class ExampleServer extends Server<ExampleServerClient, Packet> {
 		System.out.println("A new client connected.");
 	}
 	
-	private void onReceived(ExampleServerClient client, Packet data) {
+	private void onMessage(ExampleServerClient client, MessageActionPacket data) {
 		System.out.println("Received packet of type: " + data.getType());
 		
-		synchronized (clients) {
-			if (client.isLoggedIn()) {
-				if (data.getType() == Packet.Type.ACTION_MESSAGE) {
-					String message = ((MessageActionPacket) data).getMessage();
-					clients.remove(client.getUser());
-					sendTo(new MessageEventPacket(client.getUser(), message), clients.values());
-					clients.put(client.getUser(), client);
-				}
-			} else {
-				if (data.getType() == Packet.Type.ACTION_LOGIN) {
-					LoginActionPacket loginPacket = (LoginActionPacket) data;
-					if (clients.containsKey(loginPacket.getUser())) {
-						client.send(new LoginResponsePacket(false));
-					} else {
-						client.setUser(loginPacket.getUser());
-						sendTo(new LoginEventPacket(client.getUser()), clients.values());
-						clients.put(client.getUser(), client);
-						client.send(new LoginResponsePacket(true));
-					}
-				}
+		if (client.isLoggedIn()) {
+			sendToGroupExcept(CHAT_GROUP, new MessageEventPacket(client.getUser(), data.getMessage()), client);
+		}
+	}
+	
+	private Packet onRequest(ExampleServerClient client, Packet data) {
+		if (client.isLoggedIn() || data.getType() != Packet.Type.ACTION_LOGIN) {
+			throw new IllegalStateException("Unexpected request of type: " + data.getType());
+		}
+		
+		LoginActionPacket loginPacket = (LoginActionPacket) data;
+		synchronized (users) {
+			if (!users.add(loginPacket.getUser())) {
+				return new LoginResponsePacket(false);
 			}
 		}
+		
+		client.setUser(loginPacket.getUser());
+		sendToGroup(CHAT_GROUP, new LoginEventPacket(client.getUser()));
+		joinGroup(CHAT_GROUP, client);
+		return new LoginResponsePacket(true);
 	}
 	
 	private void onDisconnected(ExampleServerClient client) {
 		System.out.println("A client disconnected.");
-		synchronized (clients) {
-			if (client.isLoggedIn()) {
-				clients.remove(client.getUser());
-				sendTo(new DisconnectEventPacket(client.getUser()), clients.values());
+		if (client.isLoggedIn()) {
+			//the client has already been removed from the chat group
+			synchronized (users) {
+				users.remove(client.getUser());
 			}
+			sendToGroup(CHAT_GROUP, new DisconnectEventPacket(client.getUser()));
 		}
 	}
 }
@@ -0,0 +1,813 @@
+package hu.trigary.simplenetty;
+
+import hu.trigary.simplenetty.client.Client;
+import hu.trigary.simplenetty.executor.SerialExecutor;
+import hu.trigary.simplenetty.metrics.ConnectionMetrics;
+import hu.trigary.simplenetty.metrics.EndpointMetrics;
+import hu.trigary.simplenetty.metrics.MetricsHandler;
+import hu.trigary.simplenetty.pipeline.AdaptiveFlushHandler;
+import hu.trigary.simplenetty.pipeline.HeartbeatHandler;
+import hu.trigary.simplenetty.pipeline.HeartbeatMonitor;
+import hu.trigary.simplenetty.pipeline.InboundBudget;
+import hu.trigary.simplenetty.pipeline.SlowConsumerHandler;
+import hu.trigary.simplenetty.pipeline.SlowConsumerPolicy;
+import hu.trigary.simplenetty.rpc.RpcSession;
+import hu.trigary.simplenetty.serialization.Compression;
+import hu.trigary.simplenetty.serialization.CompressionCodec;
+import hu.trigary.simplenetty.serialization.ContainerCodec;
+import hu.trigary.simplenetty.serialization.DataSerializer;
+import hu.trigary.simplenetty.serialization.Envelope;
+import hu.trigary.simplenetty.serialization.FrameDecoder;
+import hu.trigary.simplenetty.serialization.FrameEncoder;
+import hu.trigary.simplenetty.serialization.FrameFormat;
+import hu.trigary.simplenetty.serialization.MessageRegistry;
+import hu.trigary.simplenetty.serialization.PacketDecoder;
+import hu.trigary.simplenetty.serialization.PacketEncoder;
+import hu.trigary.simplenetty.serialization.TypedData;
+import hu.trigary.simplenetty.server.Server;
+import hu.trigary.simplenetty.stream.ReceivedStream;
+import hu.trigary.simplenetty.stream.StreamHandler;
+import hu.trigary.simplenetty.transport.SocketOptions;
+import hu.trigary.simplenetty.transport.Transport;
+import io.netty.bootstrap.AbstractBootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoopGroup;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * The common base of {@link Server} and {@link Client}:
+ * contains the settings which apply to both of them and creates the pipeline of the channels.
+ * The settings only affect channels which are created after the settings have been changed.
+ *
+ * @param <D> the type of the data being transmitted
+ */
+public abstract class Endpoint<D> {
+	/**
+	 * The name of the handler which counts the inbound and outbound bytes, only present if metrics are enabled.
+	 */
+	public static final String METRICS = "metrics";
+	
+	/**
+	 * The name of the handler which consolidates flushes, only present if adaptive flushing is enabled.
+	 */
+	public static final String ADAPTIVE_FLUSH = "adaptive-flush";
+	
+	/**
+	 * The name of the handler which splits the inbound bytes into frames.
+	 */
+	public static final String FRAME_DECODER = "frame-decoder";
+	
+	/**
+	 * The name of the handler which prepends the length to the outbound frames.
+	 * Writing already framed data with this handler's context skips the serialization and the framing.
+	 */
+	public static final String FRAME_ENCODER = "frame-encoder";
+	
+	/**
+	 * The name of the handler which compresses and decompresses the frames, only present if compression is enabled.
+	 */
+	public static final String COMPRESSION = "compression";
+	
+	/**
+	 * The name of the handler which packs the outbound messages into container frames and unpacks the inbound ones,
+	 * only present if container frames are enabled.
+	 * Writing already serialized data with the packet encoder's context skips the serialization in this case.
+	 */
+	public static final String CONTAINER = "container";
+	
+	/**
+	 * The name of the handler which sends and receives the chunks of streams, only present if streams are enabled.
+	 */
+	public static final String STREAM = "stream";
+	
+	/**
+	 * The name of the handler which deserializes the inbound frames.
+	 */
+	public static final String PACKET_DECODER = "packet-decoder";
+	
+	/**
+	 * The name of the handler which serializes the outbound data.
+	 */
+	public static final String PACKET_ENCODER = "packet-encoder";
+	
+	/**
+	 * The name of the handler which applies the slow consumer policy, only present if a policy is set.
+	 */
+	public static final String SLOW_CONSUMER = "slow-consumer";
+	
+	/**
+	 * The name of the handler which answers and consumes the heartbeats, only present if heartbeats are enabled.
+	 */
+	public static final String HEARTBEAT = "heartbeat";
+	
+	/**
+	 * The name of the handler which calls the event listeners (onXY).
+	 */
+	public static final String HANDLER = "handler";
+	
+	/**
+	 * The default maximum length of the inbound frames: 16 MiB.
+	 */
+	public static final int DEFAULT_MAX_FRAME_SIZE = 16 * 1024 * 1024;
+	
+	private final DataSerializer<D> serializer;
+	private volatile Transport transport = Transport.getDefault();
+	private volatile SocketOptions socketOptions = new SocketOptions();
+	private volatile EventLoopGroup sharedWorkerGroup;
+	private volatile int workerThreads;
+	private volatile ThreadFactory threadFactory;
+	private volatile Executor callbackExecutor;
+	private volatile int flushMaxPending;
+	private volatile long flushMaxDelayMicros;
+	private volatile int containerMaxMessages;
+	private volatile int containerMaxBytes;
+	private volatile FrameFormat frameFormat = FrameFormat.FIXED_INT;
+	private volatile Compression compression;
+	private volatile int maxFrameSize = DEFAULT_MAX_FRAME_SIZE;
+	private volatile InboundBudget inboundBudget;
+	private volatile SlowConsumerPolicy slowConsumerPolicy;
+	private volatile boolean rpcEnabled;
+	private volatile HeartbeatMonitor heartbeatMonitor;
+	private volatile int streamWindow;
+	private volatile EndpointMetrics metrics;
+	private volatile long requestTimeoutMillis = 30000;
+	private volatile Object[] typedListeners;
+	
+	/**
+	 * Create a new instance with the specified {@link DataSerializer}.
+	 *
+	 * @param serializer the serializer and deserializer of the transmitted data
+	 */
+	protected Endpoint(DataSerializer<D> serializer) {
+		this.serializer = serializer;
+	}
+	
+	
+	
+	/**
+	 * Sets the transport implementation to use.
+	 * The default is {@link Transport#getDefault()}: epoll if it's available, otherwise NIO.
+	 * Changing the transport only takes effect the next time the {@link EventLoopGroup}s are created.
+	 *
+	 * @param transport the transport to use
+	 * @throws IllegalArgumentException if the specified transport is not available on the current platform
+	 */
+	public void setTransport(Transport transport) {
+		if (!transport.isAvailable()) {
+			throw new IllegalArgumentException("The specified transport is not available: " + transport);
+		}
+		this.transport = transport;
+	}
+	
+	/**
+	 * Gets the transport implementation in use.
+	 *
+	 * @return the transport in use
+	 */
+	public Transport getTransport() {
+		return transport;
+	}
+	
+	/**
+	 * Sets an externally owned {@link EventLoopGroup} which should handle the connections,
+	 * allowing multiple servers and clients to share the same threads.
+	 * The group must be compatible with the used transport, eg. created by {@link Transport#newEventLoopGroup(int, ThreadFactory)}.
+	 * Shared groups are never shut down by this library, that is the responsibility of their owner.
+	 * Changing the group only takes effect the next time the {@link EventLoopGroup}s are created.
+	 *
+	 * @param sharedWorkerGroup the group to use or null to create and own a new group
+	 */
+	public void setSharedWorkerGroup(EventLoopGroup sharedWorkerGroup) {
+		this.sharedWorkerGroup = sharedWorkerGroup;
+	}
+	
+	/**
+	 * Sets the amount of threads the {@link EventLoopGroup} handling the connections should have.
+	 * Has no effect if a shared worker group is set.
+	 * Changing the amount only takes effect the next time the {@link EventLoopGroup}s are created.
+	 *
+	 * @param workerThreads the amount of threads, 0 to use Netty's default (twice the amount of cores)
+	 */
+	public void setWorkerThreads(int workerThreads) {
+		if (workerThreads < 0) {
+			throw new IllegalArgumentException("The amount of worker threads mustn't be negative");
+		}
+		this.workerThreads = workerThreads;
+	}
+	
+	/**
+	 * Sets the factory which creates the threads of the {@link EventLoopGroup}s owned by this instance.
+	 * Netty's {@link io.netty.util.concurrent.DefaultThreadFactory} can be used to give the threads a name.
+	 * Changing the factory only takes effect the next time the {@link EventLoopGroup}s are created.
+	 *
+	 * @param threadFactory the factory to use or null to use Netty's default
+	 */
+	public void setThreadFactory(ThreadFactory threadFactory) {
+		this.threadFactory = threadFactory;
+	}
+	
+	/**
+	 * Sets the low-level options of the sockets leading between the server and its clients.
+	 * The options are applied when the bootstrap is configured: before {@code onConfigured} is called.
+	 *
+	 * @param socketOptions the options to apply
+	 */
+	public void setSocketOptions(SocketOptions socketOptions) {
+		this.socketOptions = socketOptions;
+	}
+	
+	/**
+	 * Gets the low-level options of the sockets leading between the server and its clients.
+	 * The returned instance can be modified directly.
+	 *
+	 * @return the socket options in use
+	 */
+	public SocketOptions getSocketOptions() {
+		return socketOptions;
+	}
+	
+	/**
+	 * Sets the executor which should execute the event listeners (onXY) instead of the I/O threads.
+	 * This way slow listeners (eg. ones doing database lookups) don't stall the other connections
+	 * which are handled by the same I/O thread. The events of a single connection are still handled
+	 * one after the other, in order, but events of different connections may be handled concurrently.
+	 * Exceptions thrown by the listeners are passed to the exception listener.
+	 * {@link hu.trigary.simplenetty.executor.CallbackExecutors} contains suitable executors, eg. virtual thread based ones.
+	 * Changing the executor only affects connections which are created afterwards.
+	 *
+	 * @param callbackExecutor the executor to use or null to execute the event listeners on the I/O threads
+	 */
+	public void setCallbackExecutor(Executor callbackExecutor) {
+		this.callbackExecutor = callbackExecutor;
+	}
+	
+	/**
+	 * Enables adaptive flushing: instead of flushing each sent data separately, flushes requested while
+	 * the channel is being read are executed once the read cycle is complete, while other flushes are
+	 * delayed until either the specified amount of them have been requested or the specified time has passed.
+	 * This reduces the amount of syscalls at the cost of some added latency.
+	 *
+	 * @param maxPendingFlushes the amount of requested flushes after which the flush is executed
+	 * @param maxDelayMicros the maximum amount of microseconds a flush may be delayed by
+	 * @see AdaptiveFlushHandler
+	 */
+	public void enableAdaptiveFlush(int maxPendingFlushes, long maxDelayMicros) {
+		if (maxPendingFlushes <= 0 || maxDelayMicros <= 0) {
+			throw new IllegalArgumentException("The adaptive flush limits must be positive");
+		}
+		flushMaxPending = maxPendingFlushes;
+		flushMaxDelayMicros = maxDelayMicros;
+	}
+	
+	/**
+	 * Disables adaptive flushing: all sent data gets flushed immediately, unless it was sent in a batch.
+	 * This is the default behaviour.
+	 */
+	public void disableAdaptiveFlush() {
+		flushMaxPending = 0;
+	}
+	
+	/**
+	 * Enables container frames: consecutive messages are packed into a single frame until a flush is requested
+	 * or the specified limits are reached, reducing the per-frame overhead of bursts of small messages.
+	 * Both the server and the client must use the same setting.
+	 * Only takes effect for the connections created after this call.
+	 *
+	 * @param maxMessages the maximum amount of messages in a single frame
+	 * @param maxBytes the maximum size of a single frame in bytes, unless it only contains a single message
+	 * @see ContainerCodec
+	 */
+	public void enableContainerFrames(int maxMessages, int maxBytes) {
+		if (maxMessages <= 0 || maxBytes <= 0) {
+			throw new IllegalArgumentException("The container limits must be positive");
+		}
+		containerMaxBytes = maxBytes;
+		containerMaxMessages = maxMessages;
+	}
+	
+	/**
+	 * Disables container frames: each message is sent in a frame of its own. This is the default behaviour.
+	 */
+	public void disableContainerFrames() {
+		containerMaxMessages = 0;
+	}
+	
+	/**
+	 * Enables heartbeats, which detect dead connections (eg. half-open ones): if no data has been received
+	 * through a connection for the specified interval, a ping is sent, which the other side answers with a pong.
+	 * If no data has been received for the specified amount of intervals, the connection is closed.
+	 * Heartbeats are sent as compact control frames, the {@link DataSerializer} is not involved.
+	 * Both the server and the client must enable heartbeats. Only takes effect for the connections created after this call.
+	 *
+	 * @param intervalMillis the time in milliseconds without received data after which a ping is sent
+	 * @param maxMissed the amount of intervals without received data after which the connection is closed
+	 * @see HeartbeatMonitor
+	 */
+	public void enableHeartbeats(long intervalMillis, int maxMissed) {
+		heartbeatMonitor = new HeartbeatMonitor(intervalMillis, maxMissed);
+	}
+	
+	/**
+	 * Disables heartbeats: dead connections are only detected by TCP's keepalive. This is the default behaviour.
+	 */
+	public void disableHeartbeats() {
+		heartbeatMonitor = null;
+	}
+	
+	/**
+	 * Enables streams: payloads of any size, which are sent in chunks, interleaved with the other messages,
+	 * and are received as {@link ReceivedStream} instances. Each received stream may buffer at most
+	 * the specified amount of bytes: the sender waits until the receiver consumes the buffered data.
+	 * Both the server and the client must enable streams. Only takes effect for the connections created after this call.
+	 *
+	 * @param windowBytes the maximum amount of buffered bytes per received stream,
+	 * at least {@link StreamHandler#INITIAL_WINDOW}
+	 * @see StreamHandler
+	 */
+	public void enableStreams(int windowBytes) {
+		if (windowBytes < StreamHandler.INITIAL_WINDOW) {
+			throw new IllegalArgumentException("The stream window must be at least " + StreamHandler.INITIAL_WINDOW + " bytes");
+		}
+		streamWindow = windowBytes;
+	}
+	
+	/**
+	 * Disables streams. This is the default behaviour.
+	 */
+	public void disableStreams() {
+		streamWindow = 0;
+	}
+	
+	/**
+	 * Gets the maximum amount of buffered bytes per received stream.
+	 *
+	 * @return the stream window in bytes or 0, if streams are disabled
+	 */
+	public int getStreamWindow() {
+		return streamWindow;
+	}
+	
+	
+	
+	/**
+	 * Sets the format of the length prefix of the frames.
+	 * The default is {@link FrameFormat#FIXED_INT}, which is compatible with the older versions of this library.
+	 * {@link FrameFormat#VARINT} saves up to 3 bytes per frame. Both the server and the client must use the same format.
+	 *
+	 * @param frameFormat the format to use
+	 */
+	public void setFrameFormat(FrameFormat frameFormat) {
+		this.frameFormat = frameFormat;
+	}
+	
+	/**
+	 * Gets the format of the length prefix of the frames.
+	 *
+	 * @return the format in use
+	 */
+	public FrameFormat getFrameFormat() {
+		return frameFormat;
+	}
+	
+	/**
+	 * Sets the compression settings of the frames.
+	 * Both the server and the client must use the same settings.
+	 *
+	 * @param compression the settings to use or null to disable compression, which is the default
+	 * @see Compression
+	 */
+	public void setCompression(Compression compression) {
+		this.compression = compression;
+	}
+	
+	/**
+	 * Gets the compression settings of the frames.
+	 *
+	 * @return the settings in use or null, if compression is disabled
+	 */
+	public Compression getCompression() {
+		return compression;
+	}
+	
+	/**
+	 * Sets the maximum length of the inbound frames in bytes, {@link #DEFAULT_MAX_FRAME_SIZE} by default.
+	 * Longer frames are rejected as soon as their header is read, without buffering them:
+	 * the connection is closed and the exception listener is called with a
+	 * {@link io.netty.handler.codec.TooLongFrameException}.
+	 * If compression is enabled, the uncompressed length of the frames is limited as well.
+	 * Only takes effect for the connections created after this call.
+	 *
+	 * @param maxFrameSize the maximum length of the frames
+	 */
+	public void setMaxFrameSize(int maxFrameSize) {
+		if (maxFrameSize <= 0) {
+			throw new IllegalArgumentException("The maximum frame size must be positive");
+		}
+		this.maxFrameSize = maxFrameSize;
+	}
+	
+	/**
+	 * Gets the maximum length of the inbound frames in bytes.
+	 *
+	 * @return the maximum length of the frames
+	 */
+	public int getMaxFrameSize() {
+		return maxFrameSize;
+	}
+	
+	/**
+	 * Sets the budget which limits the memory the inbound frames may take up.
+	 * The same budget can be used by multiple servers and clients to have a shared global limit.
+	 * Only takes effect for the connections created after this call.
+	 *
+	 * @param inboundBudget the budget to use or null to disable the limit, which is the default
+	 * @see InboundBudget
+	 */
+	public void setInboundBudget(InboundBudget inboundBudget) {
+		this.inboundBudget = inboundBudget;
+	}
+	
+	/**
+	 * Gets the budget which limits the memory the inbound frames may take up.
+	 *
+	 * @return the budget in use or null, if there is no limit
+	 */
+	public InboundBudget getInboundBudget() {
+		return inboundBudget;
+	}
+	
+	/**
+	 * Sets what should happen to the outbound data while the channel of a connection isn't writable,
+	 * meaning the amount of data waiting to be transmitted exceeds the high water mark of the write buffer
+	 * (see {@link SocketOptions#setWriteBufferWaterMark(Integer, Integer)}).
+	 * The policy applies to all send methods, including the ones which send to multiple clients.
+	 * Only takes effect for the connections created after this call.
+	 *
+	 * @param slowConsumerPolicy the policy to use or null to queue the data without limits, which is the default
+	 * @see SlowConsumerPolicy
+	 */
+	public void setSlowConsumerPolicy(SlowConsumerPolicy slowConsumerPolicy) {
+		this.slowConsumerPolicy = slowConsumerPolicy;
+	}
+	
+	/**
+	 * Gets what should happen to the outbound data while the channel of a connection isn't writable.
+	 *
+	 * @return the policy in use or null, if the data is queued without limits
+	 */
+	public SlowConsumerPolicy getSlowConsumerPolicy() {
+		return slowConsumerPolicy;
+	}
+	
+	/**
+	 * Sets whether requests (which are answered with responses) can be sent, disabled by default.
+	 * Enabling requests adds a single byte to every frame, marking its {@link Envelope} kind.
+	 * Both the server and the client must use the same setting.
+	 * Only takes effect for the connections created after this call.
+	 *
+	 * @param rpcEnabled whether requests should be enabled
+	 */
+	public void setRpcEnabled(boolean rpcEnabled) {
+		this.rpcEnabled = rpcEnabled;
+	}
+	
+	/**
+	 * Gets whether requests (which are answered with responses) can be sent.
+	 *
+	 * @return true if requests are enabled
+	 */
+	public boolean isRpcEnabled() {
+		return rpcEnabled;
+	}
+	
+	/**
+	 * Sets the time in milliseconds after which requests without a response fail, 30 seconds by default.
+	 * Only takes effect for the connections created after this call.
+	 *
+	 * @param requestTimeoutMillis the timeout of the requests
+	 */
+	public void setRequestTimeout(long requestTimeoutMillis) {
+		if (requestTimeoutMillis <= 0) {
+			throw new IllegalArgumentException("The timeout must be positive");
+		}
+		this.requestTimeoutMillis = requestTimeoutMillis;
+	}
+	
+	/**
+	 * Gets the time in milliseconds after which requests without a response fail.
+	 *
+	 * @return the timeout of the requests
+	 */
+	public long getRequestTimeout() {
+		return requestTimeoutMillis;
+	}
+	
+	/**
+	 * Enables collecting metrics, eg. the amount of sent and received messages and bytes.
+	 * Does nothing if metrics are already enabled. Only takes effect for the connections created after this call.
+	 *
+	 * @return the metrics of this instance
+	 * @see EndpointMetrics
+	 */
+	public synchronized EndpointMetrics enableMetrics() {
+		if (metrics == null) {
+			metrics = new EndpointMetrics();
+		}
+		return metrics;
+	}
+	
+	/**
+	 * Gets the metrics of this instance.
+	 *
+	 * @return the metrics or null, if collecting metrics is disabled, which is the default
+	 */
+	public EndpointMetrics getMetrics() {
+		return metrics;
+	}
+	
+	
+	
+	/**
+	 * Gets the serializer and deserializer of the transmitted data.
+	 *
+	 * @return the serializer of this instance
+	 */
+	public DataSerializer<D> getSerializer() {
+		return serializer;
+	}
+	
+	/**
+	 * Gets the externally owned {@link EventLoopGroup} which should handle the connections.
+	 *
+	 * @return the shared worker group or null, if this instance should create and own its worker group
+	 */
+	public EventLoopGroup getSharedWorkerGroup() {
+		return sharedWorkerGroup;
+	}
+	
+	/**
+	 * Creates a new {@link EventLoopGroup} which is compatible with the used transport,
+	 * uses the configured thread factory and is owned by this instance.
+	 *
+	 * @param threads the amount of threads, 0 to use Netty's default
+	 * @return the newly created group
+	 */
+	protected EventLoopGroup newEventLoopGroup(int threads) {
+		return transport.newEventLoopGroup(threads, threadFactory);
+	}
+	
+	/**
+	 * Creates a new {@link EventLoopGroup} which handles the connections and is owned by this instance.
+	 *
+	 * @return the newly created group
+	 */
+	protected EventLoopGroup newWorkerGroup() {
+		return newEventLoopGroup(workerThreads);
+	}
+	
+	/**
+	 * Shuts down the specified {@link EventLoopGroup} synchronously, unless it's externally owned.
+	 *
+	 * @param group the group to shut down, can be null
+	 * @param owned whether this instance owns the group
+	 * @throws InterruptedException if the thread gets interrupted while the group is being shut down
+	 */
+	protected static void shutdownIfOwned(EventLoopGroup group, boolean owned) throws InterruptedException {
+		if (group != null && owned) {
+			group.shutdownGracefully().sync();
+		}
+	}
+	
+	/**
+	 * Creates a new executor for the event listeners of a single connection,
+	 * which keeps the order of the events while using the configured callback executor.
+	 *
+	 * @return a new {@link SerialExecutor} or null, if the event listeners should be executed on the I/O thread
+	 */
+	protected Executor newConnectionExecutor() {
+		Executor executor = callbackExecutor;
+		return executor == null ? null : new SerialExecutor(executor);
+	}
+	
+	/**
+	 * Creates the object which keeps track of the pending requests of a new connection.
+	 *
+	 * @return the new session or null, if requests are disabled
+	 */
+	protected RpcSession<D> newRpcSession() {
+		return rpcEnabled ? new RpcSession<>(requestTimeoutMillis) : null;
+	}
+	
+	/**
+	 * Sets the receive listener of a single type registered in the {@link MessageRegistry} serializer.
+	 * The listeners are stored in an array indexed by the IDs of their types.
+	 *
+	 * @param type the registered type
+	 * @param listener the listener to call instead of the general receive listener, can be null
+	 * @throws IllegalStateException if the serializer is not a {@link MessageRegistry}
+	 * @throws IllegalArgumentException if the type is not registered
+	 */
+	protected void setTypedListener(Class<?> type, Object listener) {
+		if (!(serializer instanceof MessageRegistry)) {
+			throw new IllegalStateException("Typed receive listeners require a MessageRegistry serializer");
+		}
+		
+		MessageRegistry<D> registry = (MessageRegistry<D>) serializer;
+		int id = registry.getId(type);
+		if (id < 0 || registry.getType(id) != type) {
+			throw new IllegalArgumentException("The type is not registered: " + type.getName());
+		}
+		
+		synchronized (serializer) {
+			Object[] current = typedListeners;
+			Object[] updated = current == null ? new Object[registry.getIdCapacity()]
+					: Arrays.copyOf(current, Math.max(current.length, registry.getIdCapacity()));
+			updated[id] = listener;
+			typedListeners = updated;
+		}
+	}
+	
+	/**
+	 * Gets the receive listener of the type ID the specified message was received with.
+	 *
+	 * @param message the received message, which is {@link TypedData} if the serializer is a {@link MessageRegistry}
+	 * @return the listener set by {@link #setTypedListener(Class, Object)} or null, if there is none
+	 */
+	protected Object getTypedListener(Object message) {
+		Object[] listeners = typedListeners;
+		if (listeners == null || !(message instanceof TypedData)) {
+			return null;
+		}
+		
+		int id = ((TypedData) message).getTypeId();
+		return id < listeners.length ? listeners[id] : null;
+	}
+	
+	/**
+	 * Applies the socket options to the specified bootstrap.
+	 * In case of a {@link ServerBootstrap} they are applied to the child channels.
+	 *
+	 * @param bootstrap the bootstrap to configure
+	 */
+	protected void applySocketOptions(AbstractBootstrap<?, ?> bootstrap) {
+		for (Map.Entry<ChannelOption<?>, Object> entry : socketOptions.toChannelOptions(transport).entrySet()) {
+			//noinspection unchecked
+			ChannelOption<Object> option = (ChannelOption<Object>) entry.getKey();
+			if (bootstrap instanceof ServerBootstrap) {
+				((ServerBootstrap) bootstrap).childOption(option, entry.getValue());
+			} else {
+				bootstrap.option(option, entry.getValue());
+			}
+		}
+	}
+	
+	/**
+	 * Serializes the specified data into a new pooled buffer, which contains the whole frame:
+	 * the length prefix is included and the data is compressed, if necessary.
+	 * The returned buffer is ready to be written using the frame encoder's context, bypassing the encoders.
+	 * If container frames are enabled, only the serialized data is returned instead, which is ready to be
+	 * written using the packet encoder's context: the containers are assembled separately for each connection.
+	 *
+	 * @param data the data to serialize
+	 * @return the complete frame or the serialized data
+	 */
+	protected ByteBuf encodeFrame(D data) {
+		EndpointMetrics currentMetrics = metrics;
+		if (currentMetrics == null) {
+			return encodeFrameUnmeasured(data);
+		}
+		
+		long start = System.nanoTime();
+		ByteBuf frame = encodeFrameUnmeasured(data);
+		currentMetrics.recordSerialization(System.nanoTime() - start);
+		return frame;
+	}
+	
+	/**
+	 * Adds the handlers to the pipeline of a newly created channel.
+	 *
+	 * @param pipeline the pipeline of the channel
+	 * @param handler the handler which calls the event listeners
+	 */
+	protected void initPipeline(ChannelPipeline pipeline, ChannelHandler handler) {
+		EndpointMetrics endpointMetrics = metrics;
+		ConnectionMetrics connectionMetrics = null;
+		if (endpointMetrics != null) {
+			connectionMetrics = endpointMetrics.newConnection(pipeline.channel());
+			pipeline.addLast(METRICS, new MetricsHandler(connectionMetrics));
+		}
+		
+		int maxPending = flushMaxPending;
+		if (maxPending > 0) {
+			pipeline.addLast(ADAPTIVE_FLUSH, new AdaptiveFlushHandler(maxPending, flushMaxDelayMicros));
+		}
+		
+		FrameFormat format = frameFormat;
+		int maxSize = maxFrameSize;
+		pipeline.addLast(FRAME_DECODER, new FrameDecoder(format, maxSize, inboundBudget))
+				.addLast(FRAME_ENCODER, new FrameEncoder(format));
+		
+		Compression currentCompression = compression;
+		if (currentCompression != null) {
+			pipeline.addLast(COMPRESSION, new CompressionCodec(currentCompression, maxSize));
+		}
+		
+		int maxMessages = containerMaxMessages;
+		if (maxMessages > 0) {
+			pipeline.addLast(CONTAINER, new ContainerCodec(maxMessages, containerMaxBytes));
+		}
+		
+		int window = streamWindow;
+		if (window > 0) {
+			pipeline.addLast(STREAM, new StreamHandler(window));
+		}
+		
+		boolean envelopes = usesEnvelopes();
+		pipeline.addLast(PACKET_DECODER, new PacketDecoder<>(serializer, envelopes, connectionMetrics))
+				.addLast(PACKET_ENCODER, new PacketEncoder<>(serializer, currentCompression == null, envelopes, connectionMetrics));
+		
+		HeartbeatMonitor monitor = heartbeatMonitor;
+		if (monitor != null) {
+			pipeline.addLast(HEARTBEAT, new HeartbeatHandler(monitor));
+		}
+		
+		SlowConsumerPolicy policy = slowConsumerPolicy;
+		if (policy != null) {
+			pipeline.addLast(SLOW_CONSUMER, new SlowConsumerHandler(policy));
+		}
+		pipeline.addLast(HANDLER, handler);
+	}
+	
+	
+	
+	private boolean usesEnvelopes() {
+		return rpcEnabled || heartbeatMonitor != null || streamWindow > 0;
+	}
+	
+	private ByteBuf encodeFrameUnmeasured(D data) {
+		ByteBufAllocator allocator = ByteBufAllocator.DEFAULT;
+		if (containerMaxMessages > 0) {
+			ByteBuf serialized = allocator.ioBuffer();
+			try {
+				if (usesEnvelopes()) {
+					serialized.writeByte(Envelope.MESSAGE);
+				}
+				serializer.serialize(data, serialized);
+				return serialized;
+			} catch (Throwable t) {
+				serialized.release();
+				throw t;
+			}
+		}
+		
+		FrameFormat format = frameFormat;
+		Compression currentCompression = compression;
+		
+		//the maximum header size is reserved, the unused bytes are skipped once the length is known
+		int reserved = format.getMaxHeaderSize();
+		ByteBuf frame = currentCompression == null ? allocator.ioBuffer() : allocator.heapBuffer();
+		try {
+			frame.writeZero(reserved);
+			if (currentCompression != null) {
+				frame.writeByte(Compression.FLAG_RAW);
+			}
+			if (usesEnvelopes()) {
+				frame.writeByte(Envelope.MESSAGE);
+			}
+			serializer.serialize(data, frame);
+			
+			if (currentCompression != null) {
+				int headerSize = reserved + 1;
+				if (frame.readableBytes() - headerSize >= currentCompression.getThreshold()) {
+					ByteBuf compressed = allocator.heapBuffer(frame.readableBytes());
+					compressed.writeZero(reserved);
+					if (currentCompression.compress(frame.skipBytes(headerSize),
+							compressed, currentCompression.getThreadLocalDeflater())) {
+						frame.release();
+						frame = compressed;
+					} else {
+						compressed.release();
+						frame.readerIndex(0);
+					}
+				}
+			}
+			
+			int length = frame.readableBytes() - reserved;
+			int start = reserved - format.getHeaderSize(length);
+			format.setLength(frame, start, length);
+			return frame.readerIndex(start);
+		} catch (Throwable t) {
+			frame.release();
+			throw t;
+		}
+	}
+}
@@ -1,36 +1,66 @@
 package hu.trigary.simplenetty.client;
 
+import hu.trigary.simplenetty.Endpoint;
+import hu.trigary.simplenetty.metrics.EndpointMetrics;
+import hu.trigary.simplenetty.pipeline.SlowConsumerHandler;
+import hu.trigary.simplenetty.rpc.RpcException;
+import hu.trigary.simplenetty.rpc.RpcSession;
 import hu.trigary.simplenetty.serialization.DataSerializer;
-import hu.trigary.simplenetty.serialization.PacketDecoder;
-import hu.trigary.simplenetty.serialization.PacketEncoder;
+import hu.trigary.simplenetty.serialization.Envelope;
+import hu.trigary.simplenetty.serialization.FrameDecoder;
+import hu.trigary.simplenetty.serialization.MessageRegistry;
+import hu.trigary.simplenetty.serialization.Recyclable;
+import hu.trigary.simplenetty.serialization.TypedData;
+import hu.trigary.simplenetty.stream.ReceivedStream;
+import hu.trigary.simplenetty.stream.StreamHandler;
+import hu.trigary.simplenetty.transport.Transport;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.*;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
-import io.netty.handler.codec.LengthFieldPrepender;
 import io.netty.util.internal.PlatformDependent;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * A client which can connect to and communicate with a server.
  *
  * @param <D> the type of the data being transmitted
  */
-public class Client<D> {
-	private final DataSerializer<D> serializer;
+public class Client<D> extends Endpoint<D> {
+	private final AtomicInteger batchDepth = new AtomicInteger();
 	private Bootstrap bootstrap;
 	private EventLoopGroup workerGroup;
+	private boolean ownsWorkerGroup;
 	private volatile ChannelHandlerContext context;
+	private volatile SlowConsumerHandler slowConsumerHandler;
+	private volatile RpcSession<D> rpcSession;
+	private volatile ReconnectPolicy reconnectPolicy;
+	private volatile OutboundQueue outboundQueue;
+	private volatile boolean shouldReconnect;
+	private volatile int reconnectAttempt;
+	private volatile long connectedNanos;
+	private volatile String host;
+	private volatile int port;
 	private final AtomicBoolean initialized = new AtomicBoolean(false);
 	
 	private volatile Consumer<Bootstrap> onConfigured;
 	private volatile Consumer<SocketChannel> onChannelInitialized;
 	private volatile Runnable onConnected;
 	private volatile Consumer<D> onReceived;
+	private volatile Function<D, D> onRequest;
+	private volatile Consumer<ReceivedStream> onStream;
 	private volatile Runnable onDisconnected;
+	private volatile Consumer<Boolean> onWritabilityChanged;
 	private volatile Consumer<Throwable> onException = Throwable::printStackTrace;
 	
 	/**
@@ -39,7 +69,7 @@ public class Client<D> {
 	 * @param serializer the serializer and deserializer of the transmitted data
 	 */
 	public Client(DataSerializer<D> serializer) {
-		this.serializer = serializer;
+		super(serializer);
 	}
 	
 	
@@ -74,6 +104,7 @@ public class Client<D> {
 	
 	/**
 	 * Called when data has been received from the server.
+	 * {@link Recyclable} data is recycled after the code returns, unless it has been retained.
 	 *
 	 * @param onReceived the code to execute, can be null
 	 */
@@ -81,6 +112,48 @@ public class Client<D> {
 		this.onReceived = onReceived;
 	}
 	
+	/**
+	 * Called when data of the specified type has been received from the server, instead of the general receive listener.
+	 * The serializer must be a {@link MessageRegistry} and the type must be registered in it.
+	 * The listener is looked up using the type ID the data was received with, which is read from the frame.
+	 * {@link Recyclable} data is recycled after the code returns, unless it has been retained.
+	 *
+	 * @param type the registered type of the data
+	 * @param onReceived the code to execute, can be null
+	 * @param <T> the registered type of the data
+	 * @throws IllegalStateException if the serializer is not a {@link MessageRegistry}
+	 * @throws IllegalArgumentException if the type is not registered
+	 */
+	public <T extends D> void onReceived(Class<T> type, Consumer<T> onReceived) {
+		setTypedListener(type, onReceived);
+	}
+	
+	/**
+	 * Called when a request has been received from the server, the returned data is sent back as the response.
+	 * If the code throws an exception, the server's request fails with an {@link RpcException}
+	 * and the exception listener is called. Only the messages of thrown {@link RpcException}s are sent to the
+	 * remote side, other exceptions are reported as {@link RpcException#DEFAULT_MESSAGE}. Requests must be enabled using {@link #setRpcEnabled(boolean)}.
+	 *
+	 * @param onRequest the code to execute, which must return a non-null response, can be null
+	 * @see hu.trigary.simplenetty.server.ServerClient#request(Object)
+	 */
+	public void onRequest(Function<D, D> onRequest) {
+		this.onRequest = onRequest;
+	}
+	
+	/**
+	 * Called when a stream has started arriving from the server.
+	 * The code must start consuming the stream (possibly on another thread) or cancel it.
+	 * If no listener is set, the received streams are cancelled.
+	 * Streams must be enabled using {@link #enableStreams(int)}.
+	 *
+	 * @param onStream the code to execute, can be null
+	 * @see hu.trigary.simplenetty.server.ServerClient#sendStream(InputStream)
+	 */
+	public void onStream(Consumer<ReceivedStream> onStream) {
+		this.onStream = onStream;
+	}
+	
 	/**
 	 * Called when this client gets disconnected from the server.
 	 *
@@ -90,6 +163,18 @@ public class Client<D> {
 		this.onDisconnected = onDisconnected;
 	}
 	
+	/**
+	 * Called when the channel becomes unwritable or writable again, with its new writability.
+	 * The channel is unwritable while the amount of data waiting to be transmitted to the server
+	 * exceeds the high water mark of the write buffer.
+	 *
+	 * @param onWritabilityChanged the code to execute, can be null
+	 * @see hu.trigary.simplenetty.transport.SocketOptions#setWriteBufferWaterMark(Integer, Integer)
+	 */
+	public void onWritabilityChanged(Consumer<Boolean> onWritabilityChanged) {
+		this.onWritabilityChanged = onWritabilityChanged;
+	}
+	
 	/**
 	 * Called when an uncaught exception occurs in the pipeline.
 	 *
@@ -101,6 +186,60 @@ public class Client<D> {
 	
 	
 	
+	/**
+	 * Sets how the client should reconnect after its connection has been lost.
+	 * Reconnecting stops once {@link #disconnect()} or {@link #uninitialize()} is called.
+	 * A failed {@link #connect(String, int, long)} does not trigger reconnecting:
+	 * only the loss of an established connection does. Null disables reconnecting, which is the default.
+	 * The attempts only start over from the initial delay if the lost connection was up for at least
+	 * the maximum delay of the policy, otherwise the backoff continues where it left off.
+	 * Clients in a {@link ClientPool} mustn't have a policy, the pool replaces their lost connections itself.
+	 *
+	 * @param reconnectPolicy the policy to use or null
+	 */
+	public void setReconnectPolicy(ReconnectPolicy reconnectPolicy) {
+		this.reconnectPolicy = reconnectPolicy;
+	}
+	
+	/**
+	 * Gets how the client reconnects after its connection has been lost.
+	 *
+	 * @return the policy in use or null, if reconnecting is disabled
+	 */
+	public ReconnectPolicy getReconnectPolicy() {
+		return reconnectPolicy;
+	}
+	
+	/**
+	 * Enables queueing the data which is sent while the client is not connected, instead of failing.
+	 * The queued data is sent, in order, as soon as the client (re)connects.
+	 * Only plain sends are queued, requests still fail while the client is not connected.
+	 * This method should be called before connecting: data queued in the previous queue is discarded.
+	 *
+	 * @param capacity the maximum amount of queued data, or a non-positive value to disable the queue
+	 * @param overflowPolicy what should happen when data is sent while the queue is full
+	 */
+	public void setOutboundQueue(int capacity, OverflowPolicy overflowPolicy) {
+		outboundQueue = capacity <= 0 ? null : new OutboundQueue(capacity, overflowPolicy);
+	}
+	
+	/**
+	 * Gets the amount of data waiting in the outbound queue for the client to connect.
+	 *
+	 * @return the size of the outbound queue or 0, if it's disabled
+	 */
+	public int getOutboundQueueSize() {
+		OutboundQueue queue = outboundQueue;
+		if (queue == null) {
+			return 0;
+		}
+		synchronized (queue) {
+			return queue.size();
+		}
+	}
+	
+	
+	
 	/**
 	 * Connect to the server synchronously. Once it is completed, the client is ready to send and receive data.
 	 *
@@ -111,19 +250,46 @@ public class Client<D> {
 	 * @throws InterruptedException if the thread gets interrupted while connecting
 	 */
 	public boolean connect(String host, int port, long timeoutMillis) throws InterruptedException {
+		ChannelFuture future = connectAsync(host, port);
+		if (timeoutMillis <= 0) {
+			future.sync();
+			return true;
+		}
+		
+		boolean inTime = future.await(timeoutMillis);
+		if (future.cause() != null) {
+			System.out.println("Exception...");
+			PlatformDependent.throwException(future.cause());
+		}
+		return inTime;
+	}
+	
+	/**
+	 * Connect to the server asynchronously. Once the returned future completes successfully,
+	 * the client is ready to send and receive data.
+	 *
+	 * @param host the address of the server
+	 * @param port the port of the server
+	 * @return the future of the connection attempt
+	 */
+	public ChannelFuture connectAsync(String host, int port) {
+		this.host = host;
+		this.port = port;
+		shouldReconnect = true;
+		reconnectAttempt = 0;
 		if (!initialized.getAndSet(true)) {
+			Transport transport = getTransport();
 			bootstrap = new Bootstrap();
-			workerGroup = new NioEventLoopGroup();
+			EventLoopGroup sharedWorker = getSharedWorkerGroup();
+			ownsWorkerGroup = sharedWorker == null;
+			workerGroup = ownsWorkerGroup ? newWorkerGroup() : sharedWorker;
 			
 			bootstrap.group(workerGroup)
-					.channel(NioSocketChannel.class)
+					.channel(transport.getChannelClass())
 					.handler(new ChannelInitializer<SocketChannel>() {
 						@Override
 						public void initChannel(SocketChannel channel) {
-							channel.pipeline().addLast(new PacketDecoder<>(serializer),
-									new LengthFieldPrepender(4),
-									new PacketEncoder<>(serializer),
-									new ClientChannelHandler());
+							initPipeline(channel.pipeline(), new ClientChannelHandler());
 							
 							Consumer<SocketChannel> consumer = onChannelInitialized;
 							if (consumer != null) {
@@ -132,6 +298,7 @@ public class Client<D> {
 						}
 					})
 					.option(ChannelOption.SO_KEEPALIVE, true);
+			applySocketOptions(bootstrap);
 			
 			Consumer<Bootstrap> consumer = onConfigured;
 			if (consumer != null) {
@@ -139,40 +306,75 @@ public class Client<D> {
 			}
 		}
 		
-		ChannelFuture future = bootstrap.connect(host, port);
-		if (timeoutMillis <= 0) {
-			future.sync();
-			return true;
+		ChannelFuture connected = bootstrap.connect(host, port);
+		if (connected.isDone() && !connected.isSuccess()) {
+			return connected;
 		}
 		
-		boolean inTime = future.await(timeoutMillis);
-		if (future.cause() != null) {
-			System.out.println("Exception...");
-			PlatformDependent.throwException(future.cause());
-		}
-		return inTime;
+		ChannelPromise ready = connected.channel().newPromise();
+		connected.addListener(future -> {
+			if (future.isSuccess()) {
+				//the channel only becomes active after the listeners of the connection attempt have been notified
+				connected.channel().eventLoop().execute(ready::trySuccess);
+			} else {
+				ready.tryFailure(future.cause());
+			}
+		});
+		return ready;
 	}
 	
 	/**
-	 * Synchronously disconnect from the server.
+	 * Synchronously disconnect from the server and stop reconnecting.
 	 *
 	 * @throws InterruptedException if the thread gets interrupted while disconnecting
 	 */
 	public void disconnect() throws InterruptedException {
-		context.close().sync();
+		shouldReconnect = false;
+		ChannelHandlerContext current = context;
+		if (current != null) {
+			current.close().sync();
+		}
 	}
 	
 	/**
-	 * Synchronously uninitialize the client, freeing up all resources.
+	 * Synchronously uninitialize the client, closing the connection and freeing up all resources.
+	 * A shared {@link EventLoopGroup} is not shut down.
 	 *
 	 * @throws InterruptedException if the thread gets interrupted while the {@link EventLoopGroup} is being shut down
 	 */
 	public void uninitialize() throws InterruptedException {
+		shouldReconnect = false;
+		OutboundQueue queue = outboundQueue;
+		if (queue != null) {
+			synchronized (queue) {
+				queue.clear();
+			}
+		}
+		
 		if (initialized.getAndSet(false)) {
-			workerGroup.shutdownGracefully().sync();
+			ChannelHandlerContext current = context;
+			if (current != null) {
+				current.close().sync();
+			}
+			shutdownIfOwned(workerGroup, ownsWorkerGroup);
 		}
 	}
 	
+	/**
+	 * Gets the amount of inbound bytes which are buffered, because they are part of a frame which hasn't been fully received yet.
+	 * The returned value is only an estimate, since the buffer is modified by another thread.
+	 *
+	 * @return the amount of buffered inbound bytes or 0, if the client is not connected
+	 */
+	public int getBufferedInboundBytes() {
+		ChannelHandlerContext current = context;
+		if (current == null) {
+			return 0;
+		}
+		FrameDecoder decoder = (FrameDecoder) current.pipeline().get(Endpoint.FRAME_DECODER);
+		return decoder == null ? 0 : decoder.getBufferedBytes();
+	}
+	
 	/**
 	 * Returns the connection channel's context, allowing direct interaction with Netty.
 	 * Null is returned in case the client is not connected.
@@ -187,64 +389,436 @@ public class Client<D> {
 	
 	/**
 	 * Asynchronously sends data to the server.
+	 * The data is flushed immediately, unless this method is called within a {@link #batch(Runnable)}.
 	 *
 	 * @param data the data to send
 	 */
 	public void send(D data) {
-		context.writeAndFlush(data);
+		writeOrQueue(data, batchDepth.get() == 0, null);
+	}
+	
+	/**
+	 * Asynchronously sends data to the server, but only if the channel is writable.
+	 * The data is flushed immediately, unless this method is called within a {@link #batch(Runnable)}.
+	 *
+	 * @param data the data to send
+	 * @return true if the data is being sent, false if the channel isn't writable or the client is not connected
+	 * @see #isWritable()
+	 */
+	public boolean trySend(D data) {
+		ChannelHandlerContext current = context;
+		if (current == null || !current.channel().isWritable()) {
+			return false;
+		}
+		write(current, data, batchDepth.get() == 0);
+		return true;
 	}
 	
 	/**
 	 * Asynchronously sends data to the server and closes the connection as soon as the transmission is done.
+	 * The data is flushed immediately, unless this method is called within a {@link #batch(Runnable)}.
 	 *
 	 * @param data the data to send
 	 */
 	public void sendAndClose(D data) {
-		context.writeAndFlush(data).addListener(ChannelFutureListener.CLOSE);
+		writeOrQueue(data, batchDepth.get() == 0, ChannelFutureListener.CLOSE);
 	}
 	
 	/**
 	 * Asynchronously sends data to the server and executes the specified action as soon as the transmission is done.
+	 * The data is flushed immediately, unless this method is called within a {@link #batch(Runnable)}.
 	 *
 	 * @param data the data to send
 	 * @param runnable the action to execute
 	 */
 	public void sendAndThen(D data, Runnable runnable) {
-		context.writeAndFlush(data).addListener((ChannelFutureListener) runnable);
+		writeOrQueue(data, batchDepth.get() == 0, future -> runnable.run());
+	}
+	
+	/**
+	 * Asynchronously sends a request to the server and returns the future of its response,
+	 * which is produced by the server's request listener. Any amount of requests can be pending at the same time.
+	 * The request fails if no response arrives within the request timeout.
+	 * Requests must be enabled using {@link #setRpcEnabled(boolean)}.
+	 *
+	 * @param data the data to send
+	 * @return the future of the response
+	 * @see RpcSession#request(Object, long, Function)
+	 */
+	public CompletableFuture<D> request(D data) {
+		return request(data, getRpcSessionOrThrow().getDefaultTimeoutMillis());
+	}
+	
+	/**
+	 * Asynchronously sends a request to the server and returns the future of its response,
+	 * which is produced by the server's request listener. Any amount of requests can be pending at the same time.
+	 * Requests must be enabled using {@link #setRpcEnabled(boolean)}.
+	 *
+	 * @param data the data to send
+	 * @param timeoutMillis the time in milliseconds after which the request fails if no response has arrived
+	 * @return the future of the response
+	 * @see RpcSession#request(Object, long, Function)
+	 */
+	public CompletableFuture<D> request(D data, long timeoutMillis) {
+		return getRpcSessionOrThrow().request(data, timeoutMillis, this::writeMaybeFlush);
+	}
+	
+	/**
+	 * Asynchronously sends the contents of the specified source to the server as a stream,
+	 * which is received by the server's stream listener. The source is read in chunks by a shared pool of
+	 * daemon threads, therefore it may block, the chunks are interleaved with the other sent data.
+	 * Streams must be enabled using {@link #enableStreams(int)}.
+	 *
+	 * @param source the data to send, which is closed once it has been sent
+	 * @return the future which completes once the whole stream has been written
+	 * @throws IllegalStateException if streams are disabled or the client is not connected
+	 * @see StreamHandler#send(InputStream)
+	 */
+	public CompletableFuture<Void> sendStream(InputStream source) {
+		return getStreamHandlerOrThrow().send(source);
+	}
+	
+	/**
+	 * Asynchronously sends the contents of the specified source to the server as a stream,
+	 * just like {@link #sendStream(InputStream)}, but the source is read on the specified executor,
+	 * which mustn't execute the tasks on the I/O thread of the connection.
+	 *
+	 * @param source the data to send, which is closed once it has been sent
+	 * @param reader the executor which reads the source
+	 * @return the future which completes once the whole stream has been written
+	 * @throws IllegalStateException if streams are disabled or the client is not connected
+	 * @see StreamHandler#send(InputStream, Executor)
+	 */
+	public CompletableFuture<Void> sendStream(InputStream source, Executor reader) {
+		return getStreamHandlerOrThrow().send(source, reader);
+	}
+	
+	/**
+	 * Asynchronously sends the specified range of a file to the server as a stream,
+	 * which is received by the server's stream listener, eg. using {@link ReceivedStream#transferTo(Path)}.
+	 * Unless SSL is used, the file is sent without copying its contents into the memory of the JVM.
+	 * Streams must be enabled using {@link #enableStreams(int)}.
+	 *
+	 * @param path the file to send
+	 * @param offset the index of the first byte to send
+	 * @param length the amount of bytes to send
+	 * @return the future which completes once the whole range has been written
+	 * @throws IOException if the file can't be opened
+	 * @throws IllegalStateException if streams are disabled or the client is not connected
+	 * @see StreamHandler#sendFile(Path, long, long)
+	 */
+	public CompletableFuture<Void> sendFile(Path path, long offset, long length) throws IOException {
+		return getStreamHandlerOrThrow().sendFile(path, offset, length);
+	}
+	
+	/**
+	 * Asynchronously queues data to be sent to the server without flushing it.
+	 * The data is only transmitted once {@link #flush()} is called.
+	 *
+	 * @param data the data to queue
+	 */
+	public void write(D data) {
+		writeOrQueue(data, false, null);
+	}
+	
+	/**
+	 * Gets whether the amount of data waiting to be transmitted to the server is below the high water mark.
+	 *
+	 * @return true if the channel is writable, false if it isn't or the client is not connected
+	 * @see #onWritabilityChanged(Consumer)
+	 */
+	public boolean isWritable() {
+		ChannelHandlerContext current = context;
+		return current != null && current.channel().isWritable();
+	}
+	
+	/**
+	 * Asynchronously flushes all data which has been queued to be sent to the server.
+	 * Does nothing if the client is not connected.
+	 */
+	public void flush() {
+		ChannelHandlerContext current = context;
+		if (current != null) {
+			current.flush();
+		}
+	}
+	
+	/**
+	 * Executes the specified actions in a batch: data sent during the batch
+	 * is not flushed separately, but all at once after the actions have been executed.
+	 * Batches can be nested, in which case only the outermost batch flushes.
+	 * Data sent from other threads while a batch is in progress is also flushed at the end of the batch.
+	 *
+	 * @param actions the actions which send the data
+	 */
+	public void batch(Runnable actions) {
+		batchDepth.incrementAndGet();
+		try {
+			actions.run();
+		} finally {
+			if (batchDepth.decrementAndGet() == 0) {
+				flush();
+			}
+		}
+	}
+	
+	
+	
+	private RpcSession<D> getRpcSessionOrThrow() {
+		RpcSession<D> session = rpcSession;
+		if (session == null) {
+			throw new IllegalStateException("Requests are not enabled or the client is not connected");
+		}
+		return session;
+	}
+	
+	private StreamHandler getStreamHandlerOrThrow() {
+		ChannelHandlerContext current = context;
+		if (current == null) {
+			throw new IllegalStateException("The client is not connected");
+		}
+		StreamHandler handler = (StreamHandler) current.pipeline().get(Endpoint.STREAM);
+		if (handler == null) {
+			throw new IllegalStateException("Streams are not enabled");
+		}
+		return handler;
+	}
+	
+	private ChannelFuture writeMaybeFlush(Object data) {
+		return write(context, data, batchDepth.get() == 0);
+	}
+	
+	private void writeOrQueue(Object data, boolean flush, ChannelFutureListener listener) {
+		ChannelHandlerContext current = context;
+		OutboundQueue queue = outboundQueue;
+		if (current == null && queue != null) {
+			synchronized (queue) {
+				//the queue is drained while holding the lock, right before the context is set
+				current = context;
+				if (current == null) {
+					queue.add(data, listener);
+					return;
+				}
+			}
+		}
+		
+		ChannelFuture future = write(current, data, flush);
+		if (listener != null) {
+			future.addListener(listener);
+		}
+	}
+	
+	private void scheduleReconnect(int attempt) {
+		ReconnectPolicy policy = reconnectPolicy;
+		if (policy == null || !shouldReconnect || (policy.getMaxAttempts() > 0 && attempt >= policy.getMaxAttempts())) {
+			return;
+		}
+		
+		workerGroup.schedule(() -> {
+			if (!shouldReconnect) {
+				return;
+			}
+			
+			//if this connection is lost quickly as well, the backoff continues instead of starting over
+			//it has to be set before connecting: the channel might become inactive before the listener is called
+			reconnectAttempt = attempt + 1;
+			bootstrap.connect(host, port).addListener((ChannelFuture future) -> {
+				if (!future.isSuccess()) {
+					scheduleReconnect(attempt + 1);
+					return;
+				}
+				
+				if (!shouldReconnect) {
+					//the client was disconnected while the attempt was in progress
+					future.channel().close();
+				}
+			});
+		}, policy.getDelayMillis(attempt), TimeUnit.MILLISECONDS);
+	}
+	
+	private int getNextReconnectAttempt() {
+		ReconnectPolicy policy = reconnectPolicy;
+		if (policy == null) {
+			return 0;
+		}
+		
+		//the backoff only starts over if the connection was stable, otherwise servers which accept and
+		//immediately close the connections would be flooded with reconnects every initial delay
+		long uptime = System.nanoTime() - connectedNanos;
+		return uptime >= TimeUnit.MILLISECONDS.toNanos(policy.getMaxDelayMillis()) ? 0 : reconnectAttempt;
+	}
+	
+	private ChannelFuture write(ChannelHandlerContext context, Object data, boolean flush) {
+		SlowConsumerHandler handler = slowConsumerHandler;
+		if (handler != null) {
+			return handler.write(context, data, flush);
+		}
+		return flush ? context.writeAndFlush(data) : context.write(data);
 	}
 	
 	
 	
 	private class ClientChannelHandler extends ChannelInboundHandlerAdapter {
+		private final Executor executor = newConnectionExecutor();
+		
 		@Override
 		public void channelActive(ChannelHandlerContext context) {
-			Client.this.context = context;
-			Runnable runnable = onConnected;
-			if (runnable != null) {
-				runnable.run();
+			connectedNanos = System.nanoTime();
+			slowConsumerHandler = (SlowConsumerHandler) context.pipeline().get(SLOW_CONSUMER);
+			rpcSession = newRpcSession();
+			OutboundQueue queue = outboundQueue;
+			if (queue == null) {
+				Client.this.context = context;
+			} else {
+				synchronized (queue) {
+					if (queue.size() > 0) {
+						queue.drain((data, listener) -> {
+							ChannelFuture future = write(context, data, false);
+							if (listener != null) {
+								future.addListener(listener);
+							}
+						});
+						context.flush();
+					}
+					Client.this.context = context;
+				}
 			}
+			dispatch(() -> {
+				Runnable runnable = onConnected;
+				if (runnable != null) {
+					runnable.run();
+				}
+			});
 		}
 		
 		@Override
 		public void channelRead(ChannelHandlerContext context, Object message) {
-			Consumer<D> consumer = onReceived;
-			if (consumer != null) {
-				//noinspection unchecked
-				consumer.accept((D) message);
+			if (message instanceof Envelope) {
+				Envelope envelope = (Envelope) message;
+				if (envelope.getKind() == Envelope.REQUEST) {
+					dispatch(() -> respond(context, envelope));
+				} else {
+					RpcSession<D> session = rpcSession;
+					dispatch(() -> session.complete(envelope));
+				}
+				return;
+			} else if (message instanceof ReceivedStream) {
+				ReceivedStream stream = (ReceivedStream) message;
+				dispatch(() -> receiveStream(stream));
+				return;
+			}
+			
+			if (executor == null) {
+				receive(message);
+			} else {
+				dispatch(() -> receive(message));
 			}
 		}
 		
 		@Override
 		public void channelInactive(ChannelHandlerContext context) {
 			Client.this.context = null;
-			Runnable runnable = onDisconnected;
-			if (runnable != null) {
-				runnable.run();
+			RpcSession<D> session = rpcSession;
+			if (session != null) {
+				session.close();
 			}
+			scheduleReconnect(getNextReconnectAttempt());
+			dispatch(() -> {
+				Runnable runnable = onDisconnected;
+				if (runnable != null) {
+					runnable.run();
+				}
+			});
+		}
+		
+		@Override
+		public void channelWritabilityChanged(ChannelHandlerContext context) {
+			boolean writable = context.channel().isWritable();
+			dispatch(() -> {
+				Consumer<Boolean> consumer = onWritabilityChanged;
+				if (consumer != null) {
+					consumer.accept(writable);
+				}
+			});
 		}
 		
 		@Override
 		public void exceptionCaught(ChannelHandlerContext context, Throwable cause) {
+			dispatch(() -> handleException(cause));
+		}
+		
+		
+		
+		private void dispatch(Runnable callback) {
+			if (executor == null) {
+				callback.run();
+				return;
+			}
+			
+			executor.execute(() -> {
+				try {
+					callback.run();
+				} catch (Throwable cause) {
+					handleException(cause);
+				}
+			});
+		}
+		
+		private void respond(ChannelHandlerContext context, Envelope request) {
+			Envelope response;
+			try {
+				Function<D, D> function = onRequest;
+				if (function == null) {
+					response = new Envelope(Envelope.ERROR, request.getId(), "No request handler is set");
+				} else {
+					//noinspection unchecked
+					response = new Envelope(Envelope.RESPONSE, request.getId(), function.apply((D) request.getPayload()));
+				}
+			} catch (Throwable cause) {
+				response = new Envelope(Envelope.ERROR, request.getId(), RpcException.getRemoteMessage(cause));
+				handleException(cause);
+			}
+			write(context, response, batchDepth.get() == 0);
+		}
+		
+		private void receive(Object message) {
+			Object data = message instanceof TypedData ? ((TypedData) message).getData() : message;
+			try {
+				Object listener = getTypedListener(message);
+				//noinspection unchecked
+				Consumer<D> consumer = listener == null ? onReceived : (Consumer<D>) listener;
+				if (consumer == null) {
+					return;
+				}
+				
+				EndpointMetrics metrics = getMetrics();
+				long start = metrics == null ? 0 : System.nanoTime();
+				//noinspection unchecked
+				consumer.accept((D) data);
+				if (metrics != null) {
+					metrics.recordHandlerTime(System.nanoTime() - start);
+				}
+			} finally {
+				Recyclable.recycleReceived(data);
+			}
+		}
+		
+		private void receiveStream(ReceivedStream stream) {
+			Consumer<ReceivedStream> consumer = onStream;
+			if (consumer == null) {
+				stream.cancel();
+				return;
+			}
+			
+			try {
+				consumer.accept(stream);
+			} catch (Throwable cause) {
+				stream.cancel();
+				throw cause;
+			}
+		}
+		
+		private void handleException(Throwable cause) {
 			Consumer<Throwable> consumer = onException;
 			if (consumer != null) {
 				consumer.accept(cause);
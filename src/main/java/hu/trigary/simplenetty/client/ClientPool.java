@@ -0,0 +1,334 @@
+package hu.trigary.simplenetty.client;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundBuffer;
+import io.netty.channel.EventLoopGroup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * A fixed amount of clients connected to the same server, spreading the sent data across multiple connections.
+ * This way the traffic isn't limited to a single connection and a single event loop thread,
+ * and a large message doesn't delay the messages sent after it through other connections.
+ * Data sent through different connections may arrive in a different order than it was sent in,
+ * unless it is sent with the same key, see {@link #send(Object, Object)}.
+ * <p>
+ * The pooled clients are created by the supplier, which should configure them and set their event listeners.
+ * Clients which don't have a shared {@link EventLoopGroup} set use an event loop group owned by the pool,
+ * which has as many threads as the amount of pooled clients.
+ * Connections which get closed are automatically replaced until the pool is uninitialized,
+ * therefore the pooled clients mustn't have a {@link ReconnectPolicy}: they would be reconnected twice.
+ *
+ * @param <D> the type of the data being transmitted
+ */
+public class ClientPool<D> {
+	private final AtomicInteger nextIndex = new AtomicInteger();
+	private final List<Client<D>> clients;
+	private EventLoopGroup workerGroup;
+	private volatile Selection selection = Selection.ROUND_ROBIN;
+	private volatile long replaceDelayMillis = 1000;
+	private volatile boolean running;
+	private volatile String host;
+	private volatile int port;
+	
+	/**
+	 * Create a new pool, instantiating the specified amount of clients.
+	 *
+	 * @param size the amount of connections to maintain
+	 * @param clientSupplier the supplier of the pooled clients
+	 * @throws IllegalArgumentException if a supplied client has a {@link ReconnectPolicy}
+	 */
+	public ClientPool(int size, Supplier<Client<D>> clientSupplier) {
+		if (size <= 0) {
+			throw new IllegalArgumentException("The size of the pool must be positive");
+		}
+		
+		List<Client<D>> list = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			Client<D> client = clientSupplier.get();
+			if (client.getReconnectPolicy() != null) {
+				throw new IllegalArgumentException("Pooled clients mustn't have a reconnect policy, the pool replaces them");
+			}
+			list.add(client);
+		}
+		clients = Collections.unmodifiableList(list);
+	}
+	
+	
+	
+	/**
+	 * Sets how the client is selected when data is sent without a key.
+	 * The default value is {@link Selection#ROUND_ROBIN}.
+	 *
+	 * @param selection the selection strategy to use
+	 */
+	public void setSelection(Selection selection) {
+		this.selection = selection;
+	}
+	
+	/**
+	 * Gets how the client is selected when data is sent without a key.
+	 *
+	 * @return the selection strategy in use
+	 */
+	public Selection getSelection() {
+		return selection;
+	}
+	
+	/**
+	 * Sets the time to wait before a closed connection is replaced or a failed connection attempt is retried.
+	 * The default value is 1000 milliseconds.
+	 *
+	 * @param replaceDelayMillis the delay in milliseconds
+	 */
+	public void setReplaceDelay(long replaceDelayMillis) {
+		this.replaceDelayMillis = replaceDelayMillis;
+	}
+	
+	/**
+	 * Gets the time to wait before a closed connection is replaced or a failed connection attempt is retried.
+	 *
+	 * @return the delay in milliseconds
+	 */
+	public long getReplaceDelay() {
+		return replaceDelayMillis;
+	}
+	
+	
+	
+	/**
+	 * Connect all pooled clients to the server, waiting for all connection attempts to complete.
+	 * The clients which fail to connect keep retrying in the background.
+	 *
+	 * @param host the address of the server
+	 * @param port the port of the server
+	 * @param timeoutMillis the timeout for the connections in millis, or a non-positive value for no timeout
+	 * @return true if all connections were successful
+	 * @throws InterruptedException if the thread gets interrupted while connecting
+	 * @throws IllegalStateException if a reconnect policy has been set for a pooled client
+	 */
+	public boolean connect(String host, int port, long timeoutMillis) throws InterruptedException {
+		for (Client<D> client : clients) {
+			if (client.getReconnectPolicy() != null) {
+				throw new IllegalStateException("Pooled clients mustn't have a reconnect policy, the pool replaces them");
+			}
+		}
+		
+		this.host = host;
+		this.port = port;
+		running = true;
+		
+		for (Client<D> client : clients) {
+			if (client.getSharedWorkerGroup() == null) {
+				if (workerGroup == null) {
+					workerGroup = client.getTransport().newEventLoopGroup(clients.size(), null);
+				}
+				client.setSharedWorkerGroup(workerGroup);
+			}
+		}
+		
+		List<ChannelFuture> futures = new ArrayList<>(clients.size());
+		for (Client<D> client : clients) {
+			futures.add(connect(client));
+		}
+		
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		boolean success = true;
+		for (ChannelFuture future : futures) {
+			if (timeoutMillis <= 0) {
+				future.await();
+			} else {
+				future.await(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+			}
+			success &= future.isSuccess();
+		}
+		return success;
+	}
+	
+	/**
+	 * Synchronously uninitialize all pooled clients, closing their connections and freeing up all resources.
+	 * The closed connections are not replaced. A shared {@link EventLoopGroup} is not shut down.
+	 *
+	 * @throws InterruptedException if the thread gets interrupted while the {@link EventLoopGroup} is being shut down
+	 */
+	public void uninitialize() throws InterruptedException {
+		running = false;
+		for (Client<D> client : clients) {
+			client.uninitialize();
+			if (workerGroup != null && client.getSharedWorkerGroup() == workerGroup) {
+				client.setSharedWorkerGroup(null);
+			}
+		}
+		
+		if (workerGroup != null) {
+			workerGroup.shutdownGracefully().sync();
+			workerGroup = null;
+		}
+	}
+	
+	/**
+	 * Gets all pooled clients, including the ones which are currently not connected.
+	 *
+	 * @return an unmodifiable list of the pooled clients
+	 */
+	public List<Client<D>> getClients() {
+		return clients;
+	}
+	
+	/**
+	 * Gets the amount of pooled clients which are currently connected.
+	 *
+	 * @return the amount of connected clients
+	 */
+	public int getConnectedCount() {
+		int count = 0;
+		for (Client<D> client : clients) {
+			if (client.getContext() != null) {
+				count++;
+			}
+		}
+		return count;
+	}
+	
+	
+	
+	/**
+	 * Selects a connected client using the current {@link Selection} strategy.
+	 *
+	 * @return a connected client
+	 * @throws IllegalStateException if none of the clients are connected
+	 */
+	public Client<D> getClient() {
+		int start = nextIndex.getAndIncrement();
+		if (selection == Selection.ROUND_ROBIN) {
+			return getConnectedFrom(start);
+		}
+		
+		Client<D> best = null;
+		long bestPending = Long.MAX_VALUE;
+		for (int i = 0; i < clients.size(); i++) {
+			Client<D> client = clients.get(Math.floorMod(start + i, clients.size()));
+			ChannelHandlerContext context = client.getContext();
+			if (context != null) {
+				long pending = getPendingBytes(context.channel());
+				if (pending < bestPending) {
+					best = client;
+					bestPending = pending;
+				}
+			}
+		}
+		
+		if (best == null) {
+			throw new IllegalStateException("None of the pooled clients are connected");
+		}
+		return best;
+	}
+	
+	/**
+	 * Selects the client which belongs to the specified key. The same key always selects the same client
+	 * while it's connected, therefore data sent with the same key arrives in the order it was sent in.
+	 * If the client belonging to the key is not connected, another client is selected consistently.
+	 *
+	 * @param key the key to select the client by
+	 * @return a connected client
+	 * @throws IllegalStateException if none of the clients are connected
+	 */
+	public Client<D> getClient(Object key) {
+		return getConnectedFrom(key.hashCode());
+	}
+	
+	/**
+	 * Asynchronously sends data to the server through a client selected by {@link #getClient()}.
+	 *
+	 * @param data the data to send
+	 */
+	public void send(D data) {
+		getClient().send(data);
+	}
+	
+	/**
+	 * Asynchronously sends data to the server through the client selected by {@link #getClient(Object)}.
+	 * Data sent with the same key arrives in the order it was sent in, as long as the selected client stays connected.
+	 *
+	 * @param key the key to select the client by
+	 * @param data the data to send
+	 */
+	public void send(Object key, D data) {
+		getClient(key).send(data);
+	}
+	
+	/**
+	 * Asynchronously sends a request to the server through a client selected by {@link #getClient()}
+	 * and returns the future of its response.
+	 *
+	 * @param data the data to send
+	 * @return the future of the response
+	 * @see Client#request(Object)
+	 */
+	public CompletableFuture<D> request(D data) {
+		return getClient().request(data);
+	}
+	
+	
+	
+	private Client<D> getConnectedFrom(int start) {
+		for (int i = 0; i < clients.size(); i++) {
+			Client<D> client = clients.get(Math.floorMod(start + i, clients.size()));
+			if (client.getContext() != null) {
+				return client;
+			}
+		}
+		throw new IllegalStateException("None of the pooled clients are connected");
+	}
+	
+	private static long getPendingBytes(Channel channel) {
+		ChannelOutboundBuffer buffer = channel.unsafe().outboundBuffer();
+		return buffer == null ? 0 : buffer.totalPendingWriteBytes();
+	}
+	
+	private ChannelFuture connect(Client<D> client) {
+		ChannelFuture future = client.connectAsync(host, port);
+		future.addListener(result -> {
+			if (result.isSuccess()) {
+				future.channel().closeFuture().addListener(closed -> replace(client));
+			} else {
+				replace(client);
+			}
+		});
+		return future;
+	}
+	
+	private void replace(Client<D> client) {
+		if (running) {
+			client.getSharedWorkerGroup().schedule(() -> {
+				if (running) {
+					connect(client);
+				}
+			}, replaceDelayMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+	
+	
+	
+	/**
+	 * The strategies of selecting the client through which data is sent.
+	 */
+	public enum Selection {
+		/**
+		 * The connected clients are used one after the other.
+		 */
+		ROUND_ROBIN,
+		/**
+		 * The connected client with the least amount of data waiting to be transmitted is used.
+		 */
+		LEAST_PENDING_BYTES
+	}
+}
@@ -0,0 +1,87 @@
+package hu.trigary.simplenetty.client;
+
+import io.netty.channel.ChannelFutureListener;
+
+import java.util.ArrayDeque;
+import java.util.function.BiConsumer;
+
+/**
+ * A bounded queue of the data sent while a {@link Client} is disconnected.
+ * The queue is not thread-safe: it is guarded by the client.
+ */
+class OutboundQueue {
+	private final ArrayDeque<Pending> queue = new ArrayDeque<>();
+	private final int capacity;
+	private final OverflowPolicy overflowPolicy;
+	
+	OutboundQueue(int capacity, OverflowPolicy overflowPolicy) {
+		this.capacity = capacity;
+		this.overflowPolicy = overflowPolicy;
+	}
+	
+	
+	
+	/**
+	 * Adds the specified data to the queue or applies the overflow policy if the queue is full.
+	 *
+	 * @param data the data to queue
+	 * @param listener the listener to attach to the future of the write once the data is sent, can be null
+	 * @throws IllegalStateException if the queue is full and the overflow policy is {@link OverflowPolicy#FAIL}
+	 */
+	void add(Object data, ChannelFutureListener listener) {
+		if (queue.size() >= capacity) {
+			switch (overflowPolicy) {
+				case DROP_NEWEST:
+					return;
+				case DROP_OLDEST:
+					queue.poll();
+					break;
+				case FAIL:
+					throw new IllegalStateException("The outbound queue of the disconnected client is full");
+				default:
+					throw new AssertionError();
+			}
+		}
+		queue.add(new Pending(data, listener));
+	}
+	
+	/**
+	 * Removes all queued data, passing each entry to the specified consumer in the order they were queued in.
+	 *
+	 * @param consumer the consumer which sends the data
+	 */
+	void drain(BiConsumer<Object, ChannelFutureListener> consumer) {
+		Pending pending;
+		while ((pending = queue.poll()) != null) {
+			consumer.accept(pending.data, pending.listener);
+		}
+	}
+	
+	/**
+	 * Removes all queued data without sending it.
+	 */
+	void clear() {
+		queue.clear();
+	}
+	
+	/**
+	 * Gets the amount of queued entries.
+	 *
+	 * @return the size of the queue
+	 */
+	int size() {
+		return queue.size();
+	}
+	
+	
+	
+	private static class Pending {
+		final Object data;
+		final ChannelFutureListener listener;
+		
+		Pending(Object data, ChannelFutureListener listener) {
+			this.data = data;
+			this.listener = listener;
+		}
+	}
+}
@@ -0,0 +1,21 @@
+package hu.trigary.simplenetty.client;
+
+/**
+ * Specifies what should happen when data is sent while the outbound queue of a disconnected {@link Client} is full.
+ *
+ * @see Client#setOutboundQueue(int, OverflowPolicy)
+ */
+public enum OverflowPolicy {
+	/**
+	 * The data which is being sent is discarded.
+	 */
+	DROP_NEWEST,
+	/**
+	 * The oldest queued data is discarded to make room for the data which is being sent.
+	 */
+	DROP_OLDEST,
+	/**
+	 * An {@link IllegalStateException} is thrown by the method which is sending the data.
+	 */
+	FAIL
+}
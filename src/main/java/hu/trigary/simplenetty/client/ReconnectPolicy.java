@@ -0,0 +1,105 @@
+package hu.trigary.simplenetty.client;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Specifies how a {@link Client} reconnects after its connection has been lost.
+ * The delay before each attempt grows exponentially, doubling after every failed attempt until it reaches the maximum.
+ * A random part of each delay (the jitter) is subtracted from it, this way clients which lost their connections
+ * at the same time (eg. because the server restarted) don't all reconnect at the same time.
+ */
+public final class ReconnectPolicy {
+	private final long initialDelayMillis;
+	private final long maxDelayMillis;
+	private final double jitter;
+	private final int maxAttempts;
+	
+	/**
+	 * Creates a new policy which never gives up reconnecting and uses a jitter of 0.5,
+	 * meaning that each delay is randomly between half of and the full exponential delay.
+	 *
+	 * @param initialDelayMillis the delay before the first attempt in milliseconds
+	 * @param maxDelayMillis the maximum delay between two attempts in milliseconds
+	 */
+	public ReconnectPolicy(long initialDelayMillis, long maxDelayMillis) {
+		this(initialDelayMillis, maxDelayMillis, 0.5, 0);
+	}
+	
+	/**
+	 * Creates a new policy.
+	 *
+	 * @param initialDelayMillis the delay before the first attempt in milliseconds
+	 * @param maxDelayMillis the maximum delay between two attempts in milliseconds
+	 * @param jitter the maximum fraction of the delay which is randomly subtracted from it, in the range [0, 1]
+	 * @param maxAttempts the amount of failed attempts after which the client gives up, or 0 to never give up
+	 */
+	public ReconnectPolicy(long initialDelayMillis, long maxDelayMillis, double jitter, int maxAttempts) {
+		if (initialDelayMillis <= 0 || maxDelayMillis < initialDelayMillis) {
+			throw new IllegalArgumentException("The initial delay must be positive and not larger than the maximum delay");
+		}
+		if (jitter < 0 || jitter > 1) {
+			throw new IllegalArgumentException("The jitter must be in the range [0, 1]");
+		}
+		if (maxAttempts < 0) {
+			throw new IllegalArgumentException("The maximum amount of attempts mustn't be negative");
+		}
+		
+		this.initialDelayMillis = initialDelayMillis;
+		this.maxDelayMillis = maxDelayMillis;
+		this.jitter = jitter;
+		this.maxAttempts = maxAttempts;
+	}
+	
+	
+	
+	/**
+	 * Gets the delay before the first attempt, before the jitter is applied.
+	 *
+	 * @return the initial delay in milliseconds
+	 */
+	public long getInitialDelayMillis() {
+		return initialDelayMillis;
+	}
+	
+	/**
+	 * Gets the maximum delay between two attempts, before the jitter is applied.
+	 *
+	 * @return the maximum delay in milliseconds
+	 */
+	public long getMaxDelayMillis() {
+		return maxDelayMillis;
+	}
+	
+	/**
+	 * Gets the maximum fraction of the delay which is randomly subtracted from it.
+	 *
+	 * @return the jitter in the range [0, 1]
+	 */
+	public double getJitter() {
+		return jitter;
+	}
+	
+	/**
+	 * Gets the amount of failed attempts after which the client gives up.
+	 *
+	 * @return the maximum amount of attempts or 0, if the client never gives up
+	 */
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+	
+	/**
+	 * Calculates the delay before the specified attempt, including a random jitter.
+	 *
+	 * @param attempt the index of the attempt, starting from 0
+	 * @return the delay in milliseconds
+	 */
+	public long getDelayMillis(int attempt) {
+		long delay = initialDelayMillis;
+		for (int i = 0; i < attempt && delay < maxDelayMillis; i++) {
+			delay *= 2;
+		}
+		delay = Math.min(delay, maxDelayMillis);
+		return delay - (long) (delay * jitter * ThreadLocalRandom.current().nextDouble());
+	}
+}
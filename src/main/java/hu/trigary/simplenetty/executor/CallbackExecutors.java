@@ -0,0 +1,57 @@
+package hu.trigary.simplenetty.executor;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Factory methods for {@link java.util.concurrent.Executor}s which are well suited
+ * for executing the event listeners (onXY) off the I/O threads.
+ */
+public final class CallbackExecutors {
+	private CallbackExecutors() {
+	}
+	
+	
+	
+	/**
+	 * Checks whether the current JVM supports virtual threads (Java 21 or newer).
+	 *
+	 * @return true if virtual threads are supported
+	 */
+	public static boolean isVirtualThreadSupported() {
+		try {
+			Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return true;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+	
+	/**
+	 * Creates an executor which starts a new virtual thread for each task.
+	 * Blocking event listeners (eg. database lookups) are cheap this way,
+	 * since a blocked virtual thread doesn't hold on to a platform thread.
+	 *
+	 * @return a new virtual thread per task executor
+	 * @throws UnsupportedOperationException if the current JVM doesn't support virtual threads
+	 */
+	public static ExecutorService newVirtualThreadPerTaskExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (NoSuchMethodException e) {
+			throw new UnsupportedOperationException("Virtual threads require Java 21 or newer", e);
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("Unable to create a virtual thread executor", e);
+		}
+	}
+	
+	/**
+	 * Creates a virtual thread per task executor if virtual threads are supported,
+	 * otherwise a cached thread pool which creates platform threads as needed.
+	 *
+	 * @return a new executor suitable for blocking event listeners
+	 */
+	public static ExecutorService newBlockingCallbackExecutor() {
+		return isVirtualThreadSupported() ? newVirtualThreadPerTaskExecutor() : Executors.newCachedThreadPool();
+	}
+}
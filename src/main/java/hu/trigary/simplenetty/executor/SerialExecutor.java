@@ -0,0 +1,68 @@
+package hu.trigary.simplenetty.executor;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * An {@link Executor} which executes its tasks one after the other, in the order they were submitted,
+ * using an underlying (possibly multi-threaded) {@link Executor}.
+ * Submitting a task never blocks: the task is only added to a lock-free queue,
+ * which is drained by the underlying {@link Executor}. Different instances don't contend with each other,
+ * therefore one instance per connection can be used to keep the order of the connection's events.
+ */
+public class SerialExecutor implements Executor {
+	private static final int MAX_TASKS_PER_DRAIN = 64;
+	private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+	private final AtomicBoolean scheduled = new AtomicBoolean(false);
+	private final Executor executor;
+	
+	/**
+	 * Creates a new instance which uses the specified {@link Executor} to execute the tasks.
+	 *
+	 * @param executor the executor which actually executes the tasks
+	 */
+	public SerialExecutor(Executor executor) {
+		this.executor = executor;
+	}
+	
+	
+	
+	@Override
+	public void execute(Runnable task) {
+		tasks.add(task);
+		schedule();
+	}
+	
+	
+	
+	private void schedule() {
+		if (scheduled.compareAndSet(false, true)) {
+			try {
+				executor.execute(this::drain);
+			} catch (RuntimeException e) {
+				scheduled.set(false);
+				throw e;
+			}
+		}
+	}
+	
+	private void drain() {
+		try {
+			//the amount of tasks is limited so that other instances sharing the executor don't starve
+			for (int i = 0; i < MAX_TASKS_PER_DRAIN; i++) {
+				Runnable task = tasks.poll();
+				if (task == null) {
+					break;
+				}
+				task.run();
+			}
+		} finally {
+			scheduled.set(false);
+			if (!tasks.isEmpty()) {
+				schedule();
+			}
+		}
+	}
+}
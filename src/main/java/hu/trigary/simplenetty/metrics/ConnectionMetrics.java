@@ -0,0 +1,126 @@
+package hu.trigary.simplenetty.metrics;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelOutboundBuffer;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The metrics of a single connection. Everything recorded here is also recorded in the {@link EndpointMetrics}.
+ * All methods can be called from any thread.
+ */
+public class ConnectionMetrics {
+	private final LongAdder messagesReceived = new LongAdder();
+	private final LongAdder messagesSent = new LongAdder();
+	private final LongAdder bytesReceived = new LongAdder();
+	private final LongAdder bytesSent = new LongAdder();
+	private final EndpointMetrics endpoint;
+	private final Channel channel;
+	
+	ConnectionMetrics(EndpointMetrics endpoint, Channel channel) {
+		this.endpoint = endpoint;
+		this.channel = channel;
+	}
+	
+	
+	
+	/**
+	 * Records that a message has been received and deserialized.
+	 *
+	 * @param message the deserialized message
+	 * @param deserializeNanos the time the deserialization took in nanoseconds
+	 */
+	public void recordReceived(Object message, long deserializeNanos) {
+		messagesReceived.increment();
+		endpoint.recordReceived(message, deserializeNanos);
+	}
+	
+	/**
+	 * Records that a message has been serialized and is being sent.
+	 *
+	 * @param message the serialized message
+	 * @param serializeNanos the time the serialization took in nanoseconds,
+	 * or a negative value if the message was serialized elsewhere (eg. when sending to multiple clients)
+	 */
+	public void recordSent(Object message, long serializeNanos) {
+		messagesSent.increment();
+		endpoint.recordSent(message, serializeNanos);
+	}
+	
+	/**
+	 * Records that the specified amount of bytes have been received.
+	 *
+	 * @param bytes the amount of received bytes
+	 */
+	public void recordBytesReceived(int bytes) {
+		bytesReceived.add(bytes);
+		endpoint.recordBytesReceived(bytes);
+	}
+	
+	/**
+	 * Records that the specified amount of bytes are being sent.
+	 *
+	 * @param bytes the amount of sent bytes
+	 */
+	public void recordBytesSent(long bytes) {
+		bytesSent.add(bytes);
+		endpoint.recordBytesSent(bytes);
+	}
+	
+	
+	
+	/**
+	 * Gets the channel of the connection.
+	 *
+	 * @return the channel of the connection
+	 */
+	public Channel getChannel() {
+		return channel;
+	}
+	
+	/**
+	 * Gets the amount of messages which have been received.
+	 *
+	 * @return the amount of received messages
+	 */
+	public long getMessagesReceived() {
+		return messagesReceived.sum();
+	}
+	
+	/**
+	 * Gets the amount of messages which have been sent.
+	 *
+	 * @return the amount of sent messages
+	 */
+	public long getMessagesSent() {
+		return messagesSent.sum();
+	}
+	
+	/**
+	 * Gets the amount of bytes which have been received, including the frame headers but excluding eg. SSL overhead.
+	 *
+	 * @return the amount of received bytes
+	 */
+	public long getBytesReceived() {
+		return bytesReceived.sum();
+	}
+	
+	/**
+	 * Gets the amount of bytes which have been sent, including the frame headers but excluding eg. SSL overhead.
+	 *
+	 * @return the amount of sent bytes
+	 */
+	public long getBytesSent() {
+		return bytesSent.sum();
+	}
+	
+	/**
+	 * Gets the amount of bytes which are waiting to be transmitted.
+	 *
+	 * @return the amount of pending outbound bytes
+	 */
+	public long getPendingOutboundBytes() {
+		ChannelOutboundBuffer buffer = channel.unsafe().outboundBuffer();
+		return buffer == null ? 0 : buffer.totalPendingWriteBytes();
+	}
+}
@@ -0,0 +1,255 @@
+package hu.trigary.simplenetty.metrics;
+
+import io.netty.channel.Channel;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.SingleThreadEventExecutor;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The aggregated metrics of a server or a client, as well as the metrics of its current connections.
+ * The counters are based on {@link LongAdder}s, therefore they are cheap to update from many threads.
+ * All methods can be called from any thread.
+ */
+public class EndpointMetrics {
+	private final Set<ConnectionMetrics> connections = ConcurrentHashMap.newKeySet();
+	private final Collection<ConnectionMetrics> connectionsView = Collections.unmodifiableSet(connections);
+	private final ConcurrentMap<Class<?>, LongAdder> receivedByType = new ConcurrentHashMap<>();
+	private final ConcurrentMap<Class<?>, LongAdder> sentByType = new ConcurrentHashMap<>();
+	private final LongAdder messagesReceived = new LongAdder();
+	private final LongAdder messagesSent = new LongAdder();
+	private final LongAdder bytesReceived = new LongAdder();
+	private final LongAdder bytesSent = new LongAdder();
+	private final LongAdder connects = new LongAdder();
+	private final LongAdder disconnects = new LongAdder();
+	private final Histogram serializeNanos = new Histogram();
+	private final Histogram deserializeNanos = new Histogram();
+	private final Histogram handlerNanos = new Histogram();
+	
+	
+	
+	/**
+	 * Creates the metrics of a new connection, which are tracked until the channel is closed.
+	 *
+	 * @param channel the channel of the connection
+	 * @return the metrics of the connection
+	 */
+	public ConnectionMetrics newConnection(Channel channel) {
+		ConnectionMetrics connection = new ConnectionMetrics(this, channel);
+		connections.add(connection);
+		connects.increment();
+		channel.closeFuture().addListener(future -> {
+			connections.remove(connection);
+			disconnects.increment();
+		});
+		return connection;
+	}
+	
+	/**
+	 * Records the time it took to serialize a message which was sent to multiple clients.
+	 *
+	 * @param nanos the time the serialization took in nanoseconds
+	 */
+	public void recordSerialization(long nanos) {
+		serializeNanos.record(nanos);
+	}
+	
+	/**
+	 * Records the time it took to execute the listener of a received message.
+	 *
+	 * @param nanos the time the listener took in nanoseconds
+	 */
+	public void recordHandlerTime(long nanos) {
+		handlerNanos.record(nanos);
+	}
+	
+	
+	
+	/**
+	 * Gets an unmodifiable, live view of the metrics of the current connections.
+	 *
+	 * @return the metrics of the connections
+	 */
+	public Collection<ConnectionMetrics> getConnections() {
+		return connectionsView;
+	}
+	
+	/**
+	 * Gets the amount of messages which have been received.
+	 *
+	 * @return the amount of received messages
+	 */
+	public long getMessagesReceived() {
+		return messagesReceived.sum();
+	}
+	
+	/**
+	 * Gets the amount of messages which have been sent.
+	 *
+	 * @return the amount of sent messages
+	 */
+	public long getMessagesSent() {
+		return messagesSent.sum();
+	}
+	
+	/**
+	 * Gets the amount of bytes which have been received.
+	 *
+	 * @return the amount of received bytes
+	 * @see ConnectionMetrics#getBytesReceived()
+	 */
+	public long getBytesReceived() {
+		return bytesReceived.sum();
+	}
+	
+	/**
+	 * Gets the amount of bytes which have been sent.
+	 *
+	 * @return the amount of sent bytes
+	 * @see ConnectionMetrics#getBytesSent()
+	 */
+	public long getBytesSent() {
+		return bytesSent.sum();
+	}
+	
+	/**
+	 * Gets the amount of received messages per message class.
+	 *
+	 * @return a snapshot of the counts
+	 */
+	public Map<Class<?>, Long> getMessagesReceivedByType() {
+		return snapshot(receivedByType);
+	}
+	
+	/**
+	 * Gets the amount of sent messages per message class.
+	 *
+	 * @return a snapshot of the counts
+	 */
+	public Map<Class<?>, Long> getMessagesSentByType() {
+		return snapshot(sentByType);
+	}
+	
+	/**
+	 * Gets the amount of connections which have been established.
+	 *
+	 * @return the amount of connections
+	 */
+	public long getConnects() {
+		return connects.sum();
+	}
+	
+	/**
+	 * Gets the amount of connections which have been closed.
+	 *
+	 * @return the amount of disconnections
+	 */
+	public long getDisconnects() {
+		return disconnects.sum();
+	}
+	
+	/**
+	 * Gets the histogram of the time in nanoseconds the serialization of the sent messages took.
+	 *
+	 * @return the histogram of the serialization times
+	 */
+	public Histogram getSerializeNanos() {
+		return serializeNanos;
+	}
+	
+	/**
+	 * Gets the histogram of the time in nanoseconds the deserialization of the received messages took.
+	 *
+	 * @return the histogram of the deserialization times
+	 */
+	public Histogram getDeserializeNanos() {
+		return deserializeNanos;
+	}
+	
+	/**
+	 * Gets the histogram of the time in nanoseconds the listener of the received messages took.
+	 *
+	 * @return the histogram of the listener times
+	 */
+	public Histogram getHandlerNanos() {
+		return handlerNanos;
+	}
+	
+	/**
+	 * Gets the amount of bytes which are waiting to be transmitted, summed for all current connections.
+	 *
+	 * @return the amount of pending outbound bytes
+	 */
+	public long getPendingOutboundBytes() {
+		long sum = 0;
+		for (ConnectionMetrics connection : connections) {
+			sum += connection.getPendingOutboundBytes();
+		}
+		return sum;
+	}
+	
+	/**
+	 * Gets the amount of tasks waiting to be executed by the event loops of the current connections.
+	 * Only event loops which expose this information are included.
+	 *
+	 * @return the amount of pending tasks per event loop
+	 */
+	public Map<EventExecutor, Integer> getEventLoopQueueLengths() {
+		Map<EventExecutor, Integer> lengths = new HashMap<>();
+		for (ConnectionMetrics connection : connections) {
+			EventExecutor executor = connection.getChannel().eventLoop();
+			if (executor instanceof SingleThreadEventExecutor && !lengths.containsKey(executor)) {
+				lengths.put(executor, ((SingleThreadEventExecutor) executor).pendingTasks());
+			}
+		}
+		return lengths;
+	}
+	
+	
+	
+	void recordReceived(Object message, long nanos) {
+		messagesReceived.increment();
+		deserializeNanos.record(nanos);
+		increment(receivedByType, message);
+	}
+	
+	void recordSent(Object message, long nanos) {
+		messagesSent.increment();
+		if (nanos >= 0) {
+			serializeNanos.record(nanos);
+		}
+		increment(sentByType, message);
+	}
+	
+	void recordBytesReceived(int bytes) {
+		bytesReceived.add(bytes);
+	}
+	
+	void recordBytesSent(long bytes) {
+		bytesSent.add(bytes);
+	}
+	
+	
+	
+	private static void increment(ConcurrentMap<Class<?>, LongAdder> counters, Object message) {
+		Class<?> type = message.getClass();
+		LongAdder counter = counters.get(type);
+		if (counter == null) {
+			counter = counters.computeIfAbsent(type, ignored -> new LongAdder());
+		}
+		counter.increment();
+	}
+	
+	private static Map<Class<?>, Long> snapshot(Map<Class<?>, LongAdder> counters) {
+		Map<Class<?>, Long> result = new HashMap<>();
+		counters.forEach((type, counter) -> result.put(type, counter.sum()));
+		return result;
+	}
+}
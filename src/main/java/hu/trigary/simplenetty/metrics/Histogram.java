@@ -0,0 +1,106 @@
+package hu.trigary.simplenetty.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of non-negative values with power of two sized buckets.
+ * Recording a value only increments a few {@link LongAdder}s, therefore it's cheap even under contention.
+ * The percentiles are approximations: the upper bound of the bucket containing the value is returned.
+ */
+public class Histogram {
+	private static final int BUCKETS = 64;
+	private final LongAdder[] buckets = new LongAdder[BUCKETS];
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+	
+	public Histogram() {
+		for (int i = 0; i < BUCKETS; i++) {
+			buckets[i] = new LongAdder();
+		}
+	}
+	
+	
+	
+	/**
+	 * Records the specified value, negative values are treated as 0.
+	 *
+	 * @param value the value to record
+	 */
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		//bucket i contains the values in the range [2^(i-1), 2^i - 1], bucket 0 only contains 0
+		buckets[BUCKETS - Long.numberOfLeadingZeros(value)].increment();
+		count.increment();
+		sum.add(value);
+		max.accumulate(value);
+	}
+	
+	
+	
+	/**
+	 * Gets the amount of recorded values.
+	 *
+	 * @return the amount of values
+	 */
+	public long getCount() {
+		return count.sum();
+	}
+	
+	/**
+	 * Gets the sum of the recorded values.
+	 *
+	 * @return the sum of the values
+	 */
+	public long getSum() {
+		return sum.sum();
+	}
+	
+	/**
+	 * Gets the largest recorded value.
+	 *
+	 * @return the largest value or 0, if no values have been recorded
+	 */
+	public long getMax() {
+		return max.get();
+	}
+	
+	/**
+	 * Gets the average of the recorded values.
+	 *
+	 * @return the average value or 0, if no values have been recorded
+	 */
+	public double getMean() {
+		long currentCount = count.sum();
+		return currentCount == 0 ? 0 : (double) sum.sum() / currentCount;
+	}
+	
+	/**
+	 * Gets an approximation of the specified percentile of the recorded values.
+	 * The returned value is never smaller than the exact percentile and is at most twice as large.
+	 *
+	 * @param percentile the percentile to get, in the range [0, 100]
+	 * @return the approximated percentile or 0, if no values have been recorded
+	 */
+	public long getPercentile(double percentile) {
+		long[] counts = new long[BUCKETS];
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = buckets[i].sum();
+			total += counts[i];
+		}
+		
+		long target = (long) Math.ceil(total * percentile / 100);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= target && seen > 0) {
+				return i == 0 ? 0 : Math.min((1L << i) - 1, max.get());
+			}
+		}
+		return 0;
+	}
+}
@@ -0,0 +1,48 @@
+package hu.trigary.simplenetty.metrics;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.FileRegion;
+
+/**
+ * Counts the inbound and outbound bytes of a channel.
+ * Should be placed before the frame decoder, but after eg. the SSL handler.
+ */
+public class MetricsHandler extends ChannelDuplexHandler {
+	private final ConnectionMetrics metrics;
+	
+	public MetricsHandler(ConnectionMetrics metrics) {
+		this.metrics = metrics;
+	}
+	
+	
+	
+	/**
+	 * Gets the metrics of the channel this handler belongs to.
+	 *
+	 * @return the metrics of the connection
+	 */
+	public ConnectionMetrics getMetrics() {
+		return metrics;
+	}
+	
+	@Override
+	public void channelRead(ChannelHandlerContext context, Object message) {
+		if (message instanceof ByteBuf) {
+			metrics.recordBytesReceived(((ByteBuf) message).readableBytes());
+		}
+		context.fireChannelRead(message);
+	}
+	
+	@Override
+	public void write(ChannelHandlerContext context, Object message, ChannelPromise promise) {
+		if (message instanceof ByteBuf) {
+			metrics.recordBytesSent(((ByteBuf) message).readableBytes());
+		} else if (message instanceof FileRegion) {
+			metrics.recordBytesSent(((FileRegion) message).count());
+		}
+		context.write(message, promise);
+	}
+}
@@ -0,0 +1,117 @@
+package hu.trigary.simplenetty.pipeline;
+
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Consolidates the flush operations of a channel in order to reduce the amount of syscalls.
+ * Flushes requested while a read is in progress are executed once the read cycle is complete.
+ * Flushes requested outside of read cycles are delayed until either the specified amount of them
+ * have been requested or the specified amount of time has passed since the first pending one.
+ */
+public class AdaptiveFlushHandler extends ChannelDuplexHandler {
+	private final int maxPendingFlushes;
+	private final long maxDelayMicros;
+	private ChannelHandlerContext context;
+	private ScheduledFuture<?> scheduledFlush;
+	private boolean readInProgress;
+	private int pendingFlushes;
+	
+	/**
+	 * Creates a new instance with the specified limits.
+	 *
+	 * @param maxPendingFlushes the amount of requested flushes after which the flush is executed
+	 * @param maxDelayMicros the maximum amount of microseconds a flush may be delayed by
+	 */
+	public AdaptiveFlushHandler(int maxPendingFlushes, long maxDelayMicros) {
+		if (maxPendingFlushes <= 0) {
+			throw new IllegalArgumentException("The maximum pending flush count must be positive");
+		}
+		if (maxDelayMicros <= 0) {
+			throw new IllegalArgumentException("The maximum delay must be positive");
+		}
+		this.maxPendingFlushes = maxPendingFlushes;
+		this.maxDelayMicros = maxDelayMicros;
+	}
+	
+	
+	
+	@Override
+	public void handlerAdded(ChannelHandlerContext context) {
+		this.context = context;
+	}
+	
+	@Override
+	public void flush(ChannelHandlerContext context) {
+		if (++pendingFlushes >= maxPendingFlushes) {
+			flushNow();
+		} else if (!readInProgress && scheduledFlush == null) {
+			scheduledFlush = context.executor().schedule(this::flushNow, maxDelayMicros, TimeUnit.MICROSECONDS);
+		}
+	}
+	
+	@Override
+	public void channelRead(ChannelHandlerContext context, Object message) {
+		readInProgress = true;
+		context.fireChannelRead(message);
+	}
+	
+	@Override
+	public void channelReadComplete(ChannelHandlerContext context) {
+		readInProgress = false;
+		flushIfPending();
+		context.fireChannelReadComplete();
+	}
+	
+	@Override
+	public void channelWritabilityChanged(ChannelHandlerContext context) {
+		if (!context.channel().isWritable()) {
+			flushIfPending();
+		}
+		context.fireChannelWritabilityChanged();
+	}
+	
+	@Override
+	public void exceptionCaught(ChannelHandlerContext context, Throwable cause) {
+		flushIfPending();
+		context.fireExceptionCaught(cause);
+	}
+	
+	@Override
+	public void disconnect(ChannelHandlerContext context, ChannelPromise promise) {
+		flushIfPending();
+		context.disconnect(promise);
+	}
+	
+	@Override
+	public void close(ChannelHandlerContext context, ChannelPromise promise) {
+		flushIfPending();
+		context.close(promise);
+	}
+	
+	@Override
+	public void handlerRemoved(ChannelHandlerContext context) {
+		flushIfPending();
+	}
+	
+	
+	
+	private void flushIfPending() {
+		if (pendingFlushes > 0) {
+			flushNow();
+		}
+	}
+	
+	private void flushNow() {
+		if (scheduledFlush != null) {
+			scheduledFlush.cancel(false);
+			scheduledFlush = null;
+		}
+		pendingFlushes = 0;
+		context.flush();
+	}
+}
@@ -0,0 +1,86 @@
+package hu.trigary.simplenetty.pipeline;
+
+import hu.trigary.simplenetty.serialization.Envelope;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.timeout.ReadTimeoutException;
+
+/**
+ * Keeps track of when data was last received through the connection and answers the pings of the other side.
+ * The heartbeats are consumed by this handler: they are never passed on to the event listeners.
+ * The pings are sent and dead connections are closed by the {@link HeartbeatMonitor}:
+ * a connection is considered dead if no data has been received through it for the maximum amount of intervals,
+ * in which case a {@link ReadTimeoutException} is fired before the connection is closed.
+ * This handler must be placed after the packet decoder and the packet encoder.
+ */
+public class HeartbeatHandler extends ChannelInboundHandlerAdapter {
+	private final HeartbeatMonitor monitor;
+	private volatile ChannelHandlerContext context;
+	private volatile long lastReadNanos = System.nanoTime();
+	
+	/**
+	 * Creates a new handler which registers itself into the specified monitor once the channel is active.
+	 *
+	 * @param monitor the monitor which checks this connection
+	 */
+	public HeartbeatHandler(HeartbeatMonitor monitor) {
+		this.monitor = monitor;
+	}
+	
+	
+	
+	@Override
+	public void handlerAdded(ChannelHandlerContext context) {
+		this.context = context;
+		if (context.channel().isActive()) {
+			lastReadNanos = System.nanoTime();
+			monitor.register(this);
+		}
+	}
+	
+	@Override
+	public void handlerRemoved(ChannelHandlerContext context) {
+		monitor.unregister(this);
+	}
+	
+	@Override
+	public void channelActive(ChannelHandlerContext context) {
+		lastReadNanos = System.nanoTime();
+		monitor.register(this);
+		context.fireChannelActive();
+	}
+	
+	@Override
+	public void channelInactive(ChannelHandlerContext context) {
+		monitor.unregister(this);
+		context.fireChannelInactive();
+	}
+	
+	@Override
+	public void channelRead(ChannelHandlerContext context, Object message) {
+		lastReadNanos = System.nanoTime();
+		if (message instanceof Envelope && ((Envelope) message).isHeartbeat()) {
+			if (((Envelope) message).getKind() == Envelope.PING) {
+				context.writeAndFlush(Envelope.HEARTBEAT_PONG, context.voidPromise());
+			}
+			return;
+		}
+		context.fireChannelRead(message);
+	}
+	
+	
+	
+	void check(long now, long intervalNanos, int maxMissed) {
+		ChannelHandlerContext current = context;
+		long idle = now - lastReadNanos;
+		if (idle >= intervalNanos * maxMissed) {
+			monitor.unregister(this);
+			current.executor().execute(() -> {
+				current.fireExceptionCaught(ReadTimeoutException.INSTANCE);
+				current.close();
+			});
+		} else if (idle >= intervalNanos) {
+			current.writeAndFlush(Envelope.HEARTBEAT_PING, current.voidPromise());
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package hu.trigary.simplenetty.pipeline;
+
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Detects dead connections by periodically checking when data was last received through them.
+ * Instead of each connection scheduling its own task, a single task checks all connections of the monitor
+ * once per interval. The tasks of all monitors are driven by a single, shared {@link HashedWheelTimer},
+ * since they don't need to be precise. The task is only scheduled while connections are registered.
+ *
+ * @see HeartbeatHandler
+ */
+public class HeartbeatMonitor {
+	private static final Timer TIMER = new HashedWheelTimer(
+			new DefaultThreadFactory("simplenetty-heartbeat-timer", true), 100, TimeUnit.MILLISECONDS);
+	private final Set<HeartbeatHandler> handlers = ConcurrentHashMap.newKeySet();
+	private final AtomicBoolean scheduled = new AtomicBoolean();
+	private final long intervalMillis;
+	private final int maxMissed;
+	
+	/**
+	 * Creates a new monitor with the specified settings.
+	 *
+	 * @param intervalMillis the time in milliseconds without received data after which a ping is sent
+	 * @param maxMissed the amount of intervals without received data after which the connection is closed
+	 */
+	public HeartbeatMonitor(long intervalMillis, int maxMissed) {
+		if (intervalMillis <= 0 || maxMissed <= 0) {
+			throw new IllegalArgumentException("The heartbeat interval and the maximum amount of missed heartbeats must be positive");
+		}
+		this.intervalMillis = intervalMillis;
+		this.maxMissed = maxMissed;
+	}
+	
+	
+	
+	/**
+	 * Gets the time without received data after which a ping is sent.
+	 *
+	 * @return the interval in milliseconds
+	 */
+	public long getIntervalMillis() {
+		return intervalMillis;
+	}
+	
+	/**
+	 * Gets the amount of intervals without received data after which the connection is closed.
+	 *
+	 * @return the maximum amount of missed heartbeats
+	 */
+	public int getMaxMissed() {
+		return maxMissed;
+	}
+	
+	/**
+	 * Gets the amount of connections which are currently being monitored.
+	 *
+	 * @return the amount of registered connections
+	 */
+	public int getConnectionCount() {
+		return handlers.size();
+	}
+	
+	
+	
+	void register(HeartbeatHandler handler) {
+		if (handlers.add(handler) && scheduled.compareAndSet(false, true)) {
+			schedule();
+		}
+	}
+	
+	void unregister(HeartbeatHandler handler) {
+		handlers.remove(handler);
+	}
+	
+	
+	
+	private void schedule() {
+		TIMER.newTimeout(this::check, intervalMillis, TimeUnit.MILLISECONDS);
+	}
+	
+	private void check(Timeout timeout) {
+		long now = System.nanoTime();
+		long intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+		for (HeartbeatHandler handler : handlers) {
+			handler.check(now, intervalNanos, maxMissed);
+		}
+		
+		if (handlers.isEmpty()) {
+			scheduled.set(false);
+			//a handler might have been registered after the emptiness check
+			if (handlers.isEmpty() || !scheduled.compareAndSet(false, true)) {
+				return;
+			}
+		}
+		schedule();
+	}
+}
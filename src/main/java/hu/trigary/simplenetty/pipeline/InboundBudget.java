@@ -0,0 +1,128 @@
+package hu.trigary.simplenetty.pipeline;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the amount of memory the inbound frames which are being received may take up.
+ * When the header of a frame is read, the length of the frame is reserved from this budget
+ * and it is released once the frame has been fully received and passed on for processing.
+ * Frames longer than the per-connection limit are rejected (the connection is closed).
+ * If the global limit would be exceeded, the connection stops reading (auto-read is turned off)
+ * until enough memory is released by other connections.
+ * A single instance can be shared between multiple servers and clients.
+ */
+public class InboundBudget {
+	private final Queue<Runnable> waiters = new ConcurrentLinkedQueue<>();
+	private final AtomicLong used = new AtomicLong();
+	private final int perConnectionBytes;
+	private final long globalBytes;
+	
+	/**
+	 * Creates a new instance with the specified limits.
+	 *
+	 * @param perConnectionBytes the maximum amount of bytes a single connection may buffer
+	 * @param globalBytes the maximum amount of bytes all connections may buffer together
+	 */
+	public InboundBudget(int perConnectionBytes, long globalBytes) {
+		if (perConnectionBytes <= 0 || globalBytes <= 0) {
+			throw new IllegalArgumentException("The limits must be positive");
+		}
+		this.perConnectionBytes = perConnectionBytes;
+		this.globalBytes = globalBytes;
+	}
+	
+	
+	
+	/**
+	 * Gets the maximum amount of bytes a single connection may buffer.
+	 *
+	 * @return the per-connection limit
+	 */
+	public int getPerConnectionBytes() {
+		return perConnectionBytes;
+	}
+	
+	/**
+	 * Gets the maximum amount of bytes all connections may buffer together.
+	 *
+	 * @return the global limit
+	 */
+	public long getGlobalBytes() {
+		return globalBytes;
+	}
+	
+	/**
+	 * Gets the amount of bytes which are currently reserved by all connections.
+	 *
+	 * @return the amount of reserved bytes
+	 */
+	public long getUsedBytes() {
+		return used.get();
+	}
+	
+	
+	
+	/**
+	 * Tries to reserve the specified amount of bytes.
+	 * The reservation always succeeds if nothing is reserved, this way frames
+	 * longer than the global limit (but within the per-connection limit) can still be received.
+	 *
+	 * @param bytes the amount of bytes to reserve
+	 * @return true if the bytes have been reserved
+	 */
+	public boolean tryAcquire(int bytes) {
+		while (true) {
+			long current = used.get();
+			if (!fits(current, bytes)) {
+				return false;
+			}
+			if (used.compareAndSet(current, current + bytes)) {
+				return true;
+			}
+		}
+	}
+	
+	/**
+	 * Releases the specified amount of previously reserved bytes and wakes up a waiting connection.
+	 *
+	 * @param bytes the amount of bytes to release
+	 */
+	public void release(int bytes) {
+		used.addAndGet(-bytes);
+		signal();
+	}
+	
+	/**
+	 * Registers an action which is executed once bytes are released.
+	 * The action should try to reserve the bytes again and
+	 * call {@link #signal()} if it didn't need the released bytes after all.
+	 *
+	 * @param bytes the amount of bytes the action wants to reserve
+	 * @param retry the action to execute, should be non-blocking
+	 */
+	public void await(int bytes, Runnable retry) {
+		waiters.add(retry);
+		if (fits(used.get(), bytes)) {
+			//the bytes might have been released before the action was registered
+			signal();
+		}
+	}
+	
+	/**
+	 * Wakes up the connection which has been waiting for the longest time, if there is any.
+	 */
+	public void signal() {
+		Runnable retry = waiters.poll();
+		if (retry != null) {
+			retry.run();
+		}
+	}
+	
+	
+	
+	private boolean fits(long current, int bytes) {
+		return current == 0 || current + bytes <= globalBytes;
+	}
+}
@@ -0,0 +1,214 @@
+package hu.trigary.simplenetty.pipeline;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.ScheduledFuture;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Applies a {@link SlowConsumerPolicy} to the outbound data of a channel.
+ * Data has to be written through {@link #write(ChannelHandlerContext, Object, boolean)} for the policy to take effect.
+ * The futures of discarded data are failed with {@link #DROPPED}.
+ */
+public class SlowConsumerHandler extends ChannelInboundHandlerAdapter {
+	/**
+	 * The cause of the failure of the futures whose data was discarded.
+	 */
+	public static final IllegalStateException DROPPED = new IllegalStateException(
+			"The data was discarded, because the channel wasn't writable");
+	private final Queue<Pending> queue = new ArrayDeque<>();
+	private final SlowConsumerPolicy policy;
+	private volatile Channel channel;
+	private ChannelHandlerContext context;
+	private ScheduledFuture<?> disconnectTask;
+	
+	static {
+		DROPPED.setStackTrace(new StackTraceElement[0]);
+	}
+	
+	public SlowConsumerHandler(SlowConsumerPolicy policy) {
+		this.policy = policy;
+	}
+	
+	
+	
+	/**
+	 * Writes the specified message using the specified context, unless the policy decides otherwise.
+	 * This method can be called from any thread.
+	 *
+	 * @param target the context to write the message with
+	 * @param message the message to write
+	 * @param flush whether the message should be flushed
+	 * @return the future of the write operation
+	 */
+	public ChannelFuture write(ChannelHandlerContext target, Object message, boolean flush) {
+		switch (policy.getAction()) {
+			case DROP_NEWEST:
+				if (!channel.isWritable()) {
+					return drop(target, message);
+				}
+				break;
+			case DROP_OLDEST:
+				Pending dropped = null;
+				ChannelPromise promise;
+				synchronized (queue) {
+					if (queue.isEmpty() && channel.isWritable()) {
+						//written while holding the lock, so that it can't overtake the queued messages
+						return flush ? target.writeAndFlush(message) : target.write(message);
+					}
+					
+					promise = target.newPromise();
+					queue.add(new Pending(target, message, promise));
+					if (queue.size() > policy.getMaxQueuedMessages()) {
+						dropped = queue.poll();
+					}
+				}
+				
+				if (dropped != null) {
+					ReferenceCountUtil.release(dropped.message);
+					dropped.promise.tryFailure(DROPPED);
+				}
+				if (channel.isWritable()) {
+					channel.eventLoop().execute(this::drain);
+				}
+				return promise;
+			case BLOCK:
+				if (!channel.isWritable() && !awaitWritable(target)) {
+					return drop(target, message);
+				}
+				break;
+			default:
+				//DISCONNECT is handled when the writability changes
+				break;
+		}
+		return flush ? target.writeAndFlush(message) : target.write(message);
+	}
+	
+	
+	
+	@Override
+	public void handlerAdded(ChannelHandlerContext context) {
+		this.context = context;
+		channel = context.channel();
+	}
+	
+	@Override
+	public void channelWritabilityChanged(ChannelHandlerContext context) {
+		boolean writable = context.channel().isWritable();
+		switch (policy.getAction()) {
+			case DROP_OLDEST:
+				if (writable) {
+					drain();
+				}
+				break;
+			case DISCONNECT:
+				if (writable) {
+					cancelDisconnect();
+				} else if (disconnectTask == null) {
+					disconnectTask = context.executor().schedule(() -> {
+						disconnectTask = null;
+						if (!context.channel().isWritable()) {
+							context.close();
+						}
+					}, policy.getTimeoutMillis(), TimeUnit.MILLISECONDS);
+				}
+				break;
+			case BLOCK:
+				synchronized (queue) {
+					queue.notifyAll();
+				}
+				break;
+			default:
+				break;
+		}
+		context.fireChannelWritabilityChanged();
+	}
+	
+	@Override
+	public void channelInactive(ChannelHandlerContext context) {
+		cancelDisconnect();
+		Pending[] discarded;
+		synchronized (queue) {
+			discarded = queue.toArray(new Pending[0]);
+			queue.clear();
+			queue.notifyAll();
+		}
+		for (Pending pending : discarded) {
+			ReferenceCountUtil.release(pending.message);
+			pending.promise.tryFailure(DROPPED);
+		}
+		context.fireChannelInactive();
+	}
+	
+	
+	
+	private void drain() {
+		boolean written = false;
+		synchronized (queue) {
+			Pending pending;
+			while (channel.isWritable() && (pending = queue.poll()) != null) {
+				pending.target.write(pending.message, pending.promise);
+				written = true;
+			}
+		}
+		if (written) {
+			context.flush();
+		}
+	}
+	
+	private boolean awaitWritable(ChannelHandlerContext target) {
+		if (target.executor().inEventLoop()) {
+			return false;
+		}
+		
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(policy.getTimeoutMillis());
+		synchronized (queue) {
+			while (!channel.isWritable() && channel.isActive()) {
+				long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+				if (remaining <= 0) {
+					return false;
+				}
+				try {
+					queue.wait(remaining);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return false;
+				}
+			}
+		}
+		return channel.isWritable();
+	}
+	
+	private void cancelDisconnect() {
+		if (disconnectTask != null) {
+			disconnectTask.cancel(false);
+			disconnectTask = null;
+		}
+	}
+	
+	private static ChannelFuture drop(ChannelHandlerContext target, Object message) {
+		ReferenceCountUtil.release(message);
+		return target.newFailedFuture(DROPPED);
+	}
+	
+	
+	
+	private static class Pending {
+		final ChannelHandlerContext target;
+		final Object message;
+		final ChannelPromise promise;
+		
+		Pending(ChannelHandlerContext target, Object message, ChannelPromise promise) {
+			this.target = target;
+			this.message = message;
+			this.promise = promise;
+		}
+	}
+}
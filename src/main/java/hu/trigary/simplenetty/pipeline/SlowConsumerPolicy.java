@@ -0,0 +1,130 @@
+package hu.trigary.simplenetty.pipeline;
+
+/**
+ * Specifies what should happen to the outbound data of a connection whose channel isn't writable,
+ * meaning the amount of data waiting to be transmitted exceeds the high water mark of the write buffer.
+ * Without a policy data is queued in memory without any limits, which is the default behaviour.
+ * Instances can be created using the static factory methods of this class.
+ */
+public final class SlowConsumerPolicy {
+	private final Action action;
+	private final int maxQueuedMessages;
+	private final long timeoutMillis;
+	
+	private SlowConsumerPolicy(Action action, int maxQueuedMessages, long timeoutMillis) {
+		this.action = action;
+		this.maxQueuedMessages = maxQueuedMessages;
+		this.timeoutMillis = timeoutMillis;
+	}
+	
+	
+	
+	/**
+	 * Creates a policy which discards the data which is being sent while the channel isn't writable.
+	 *
+	 * @return the created policy
+	 */
+	public static SlowConsumerPolicy dropNewest() {
+		return new SlowConsumerPolicy(Action.DROP_NEWEST, 0, 0);
+	}
+	
+	/**
+	 * Creates a policy which holds back the data which is being sent while the channel isn't writable
+	 * and sends it once the channel becomes writable again. If more than the specified amount of messages are held back,
+	 * the oldest ones are discarded. This way the client receives the most recent data once it catches up.
+	 *
+	 * @param maxQueuedMessages the maximum amount of messages to hold back
+	 * @return the created policy
+	 */
+	public static SlowConsumerPolicy dropOldest(int maxQueuedMessages) {
+		if (maxQueuedMessages <= 0) {
+			throw new IllegalArgumentException("The maximum amount of queued messages must be positive");
+		}
+		return new SlowConsumerPolicy(Action.DROP_OLDEST, maxQueuedMessages, 0);
+	}
+	
+	/**
+	 * Creates a policy which closes the connection if its channel stays unwritable for the specified amount of time.
+	 * Data is not discarded before the connection is closed.
+	 *
+	 * @param timeoutMillis the time in milliseconds after which the connection is closed
+	 * @return the created policy
+	 */
+	public static SlowConsumerPolicy disconnectAfter(long timeoutMillis) {
+		if (timeoutMillis <= 0) {
+			throw new IllegalArgumentException("The timeout must be positive");
+		}
+		return new SlowConsumerPolicy(Action.DISCONNECT, 0, timeoutMillis);
+	}
+	
+	/**
+	 * Creates a policy which blocks the thread sending the data until the channel becomes writable,
+	 * but at most for the specified amount of time, after which the data is discarded.
+	 * Event loop threads can't be blocked: data sent from them is discarded if the channel isn't writable.
+	 *
+	 * @param timeoutMillis the maximum time in milliseconds to block for
+	 * @return the created policy
+	 */
+	public static SlowConsumerPolicy block(long timeoutMillis) {
+		if (timeoutMillis <= 0) {
+			throw new IllegalArgumentException("The timeout must be positive");
+		}
+		return new SlowConsumerPolicy(Action.BLOCK, 0, timeoutMillis);
+	}
+	
+	
+	
+	/**
+	 * Gets the action this policy takes when the channel isn't writable.
+	 *
+	 * @return the action of this policy
+	 */
+	public Action getAction() {
+		return action;
+	}
+	
+	/**
+	 * Gets the maximum amount of messages to hold back, only used by {@link Action#DROP_OLDEST}.
+	 *
+	 * @return the maximum amount of queued messages
+	 */
+	public int getMaxQueuedMessages() {
+		return maxQueuedMessages;
+	}
+	
+	/**
+	 * Gets the timeout in milliseconds, only used by {@link Action#DISCONNECT} and {@link Action#BLOCK}.
+	 *
+	 * @return the timeout in milliseconds
+	 */
+	public long getTimeoutMillis() {
+		return timeoutMillis;
+	}
+	
+	
+	
+	/**
+	 * The actions a {@link SlowConsumerPolicy} can take.
+	 */
+	public enum Action {
+		/**
+		 * @see #dropNewest()
+		 */
+		DROP_NEWEST,
+		
+		/**
+		 * @see #dropOldest(int)
+		 */
+		DROP_OLDEST,
+		
+		/**
+		 * @see #disconnectAfter(long)
+		 */
+		DISCONNECT,
+		
+		/**
+		 * @see #block(long)
+		 */
+		BLOCK
+	}
+}
@@ -0,0 +1,33 @@
+package hu.trigary.simplenetty.rpc;
+
+/**
+ * Signals that the remote side failed to handle a request.
+ * The message of this exception is the description of the error sent by the remote side.
+ * <p>
+ * Request listeners can also throw this exception to send its message to the remote side:
+ * the messages of other exceptions are never sent, since they might reveal internal details.
+ */
+public class RpcException extends RuntimeException {
+	/**
+	 * The description of the error which is sent if the request listener throws an exception
+	 * other than an {@link RpcException}.
+	 */
+	public static final String DEFAULT_MESSAGE = "The request failed";
+	
+	public RpcException(String message) {
+		super(message);
+	}
+	
+	
+	
+	/**
+	 * Gets the description of the error which should be sent to the remote side
+	 * when the request listener throws the specified exception.
+	 *
+	 * @param cause the exception thrown by the request listener
+	 * @return the message of the exception if it's an {@link RpcException}, otherwise {@link #DEFAULT_MESSAGE}
+	 */
+	public static String getRemoteMessage(Throwable cause) {
+		return cause instanceof RpcException && cause.getMessage() != null ? cause.getMessage() : DEFAULT_MESSAGE;
+	}
+}
@@ -0,0 +1,147 @@
+package hu.trigary.simplenetty.rpc;
+
+import hu.trigary.simplenetty.serialization.Envelope;
+import io.netty.channel.ChannelFuture;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Keeps track of the pending requests of a connection and matches them with their responses.
+ * Any amount of requests can be pending at the same time. The timeouts of all sessions
+ * are driven by a single, shared {@link HashedWheelTimer}, since they don't need to be precise.
+ *
+ * @param <D> the type of the data being transmitted
+ */
+public class RpcSession<D> {
+	private static final Timer TIMER = new HashedWheelTimer(
+			new DefaultThreadFactory("simplenetty-rpc-timer", true), 10, TimeUnit.MILLISECONDS);
+	private final ConcurrentMap<Integer, PendingRequest<D>> pending = new ConcurrentHashMap<>();
+	private final AtomicInteger nextId = new AtomicInteger();
+	private final long defaultTimeoutMillis;
+	private volatile boolean closed;
+	
+	/**
+	 * Creates a new session with the specified default timeout.
+	 *
+	 * @param defaultTimeoutMillis the timeout of the requests in milliseconds, unless specified otherwise
+	 */
+	public RpcSession(long defaultTimeoutMillis) {
+		this.defaultTimeoutMillis = defaultTimeoutMillis;
+	}
+	
+	
+	
+	/**
+	 * Gets the timeout of the requests in milliseconds, unless specified otherwise.
+	 *
+	 * @return the default timeout
+	 */
+	public long getDefaultTimeoutMillis() {
+		return defaultTimeoutMillis;
+	}
+	
+	/**
+	 * Gets the amount of requests which are waiting for their responses.
+	 *
+	 * @return the amount of pending requests
+	 */
+	public int getPendingCount() {
+		return pending.size();
+	}
+	
+	/**
+	 * Sends a request using the specified writer and returns the future of its response.
+	 * The future is completed exceptionally with a {@link TimeoutException} if the response doesn't arrive in time,
+	 * with an {@link RpcException} if the remote side failed to handle the request
+	 * or with a {@link ClosedChannelException} if the connection is closed before the response arrives.
+	 *
+	 * @param data the data to send
+	 * @param timeoutMillis the time in milliseconds to wait for the response
+	 * @param writer the function which writes the request envelope
+	 * @return the future of the response
+	 */
+	public CompletableFuture<D> request(D data, long timeoutMillis, Function<Envelope, ChannelFuture> writer) {
+		int id = nextId.incrementAndGet();
+		CompletableFuture<D> future = new CompletableFuture<>();
+		Timeout timeout = TIMER.newTimeout(ignored -> fail(id, new TimeoutException(
+				"No response has been received in " + timeoutMillis + " ms")), timeoutMillis, TimeUnit.MILLISECONDS);
+		pending.put(id, new PendingRequest<>(future, timeout));
+		if (closed) {
+			//the connection might have been closed before the request was registered
+			fail(id, new ClosedChannelException());
+			return future;
+		}
+		
+		writer.apply(new Envelope(Envelope.REQUEST, id, data)).addListener(write -> {
+			if (!write.isSuccess()) {
+				fail(id, write.cause());
+			}
+		});
+		return future;
+	}
+	
+	/**
+	 * Completes the pending request the specified response belongs to.
+	 * Responses of unknown requests (eg. ones which have timed out) are ignored.
+	 *
+	 * @param response the received envelope of kind {@link Envelope#RESPONSE} or {@link Envelope#ERROR}
+	 */
+	public void complete(Envelope response) {
+		PendingRequest<D> request = pending.remove(response.getId());
+		if (request == null) {
+			return;
+		}
+		
+		request.timeout.cancel();
+		if (response.getKind() == Envelope.RESPONSE) {
+			//noinspection unchecked
+			request.future.complete((D) response.getPayload());
+		} else {
+			request.future.completeExceptionally(new RpcException((String) response.getPayload()));
+		}
+	}
+	
+	/**
+	 * Fails all pending requests with a {@link ClosedChannelException}, as well as the ones sent in the future.
+	 * Should be called when the connection is closed.
+	 */
+	public void close() {
+		closed = true;
+		for (Integer id : pending.keySet()) {
+			fail(id, new ClosedChannelException());
+		}
+	}
+	
+	
+	
+	private void fail(int id, Throwable cause) {
+		PendingRequest<D> request = pending.remove(id);
+		if (request != null) {
+			request.timeout.cancel();
+			request.future.completeExceptionally(cause);
+		}
+	}
+	
+	
+	
+	private static class PendingRequest<D> {
+		final CompletableFuture<D> future;
+		final Timeout timeout;
+		
+		PendingRequest(CompletableFuture<D> future, Timeout timeout) {
+			this.future = future;
+			this.timeout = timeout;
+		}
+	}
+}
@@ -0,0 +1,524 @@
+package hu.trigary.simplenetty.serialization;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.handler.codec.CorruptedFrameException;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact binary serializer of plain Java objects, which reads and writes their fields directly from and into buffers.
+ * The serialized fields are the non-static, non-transient fields of the class and its superclasses.
+ * They are looked up only once, when the serializer is created: {@link MethodHandle}s adapted to the types
+ * of the fields are created for them, this way reading and writing them doesn't involve reflection or boxing.
+ * The class must have a constructor without parameters, but it may be private.
+ * <p>
+ * The fields are written in a fixed order (the fields of superclasses first, then alphabetically),
+ * without their names or any other metadata, therefore both sides must use the same version of the classes.
+ * The supported field types are:
+ * <ul>
+ * <li>primitives and their wrappers: integral numbers are written as zigzag encoded varints</li>
+ * <li>{@link String}s, written as length-prefixed UTF-8, and byte arrays</li>
+ * <li>enums, written as their ordinals</li>
+ * <li>any other class which this serializer supports: such objects are written as nested objects</li>
+ * </ul>
+ * Fields of reference types may be null. This costs nothing for strings, byte arrays and enums,
+ * and a single byte for wrappers and nested objects. Nested objects are serialized as instances of
+ * the declared type of their field, therefore subclasses and cyclic references are not supported.
+ *
+ * @param <T> the type of the serialized objects
+ */
+public class BinarySerializer<T> extends ByteBufDataSerializer<T> {
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+	private final Class<T> type;
+	private final MethodHandle constructor;
+	private final FieldCodec[] fields;
+	
+	/**
+	 * Creates a new serializer of the specified type, looking up its fields and the fields of its nested objects.
+	 *
+	 * @param type the type of the serialized objects
+	 * @throws IllegalArgumentException if the type or the type of one of its fields is not supported
+	 */
+	public BinarySerializer(Class<T> type) {
+		this(type, new HashMap<>());
+	}
+	
+	private BinarySerializer(Class<T> type, Map<Class<?>, BinarySerializer<?>> serializers) {
+		this.type = type;
+		serializers.put(type, this);
+		constructor = findConstructor(type);
+		
+		List<FieldCodec> codecs = new ArrayList<>();
+		for (Field field : findFields(type)) {
+			try {
+				codecs.add(newCodec(field, serializers));
+			} catch (IllegalAccessException e) {
+				throw new IllegalArgumentException("Unable to access field: " + field, e);
+			}
+		}
+		fields = codecs.toArray(new FieldCodec[0]);
+	}
+	
+	
+	
+	@Override
+	public void serialize(T data, ByteBuf output) {
+		try {
+			write(data, output);
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable cause) {
+			throw new IllegalStateException("Unable to serialize data of type: " + type.getName(), cause);
+		}
+	}
+	
+	@Override
+	public T deserialize(ByteBuf input) {
+		try {
+			//noinspection unchecked
+			return (T) read(input);
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable cause) {
+			throw new IllegalStateException("Unable to deserialize data of type: " + type.getName(), cause);
+		}
+	}
+	
+	@Override
+	public Class<T> getType() {
+		return type;
+	}
+	
+	
+	
+	private void write(Object instance, ByteBuf output) throws Throwable {
+		for (FieldCodec field : fields) {
+			field.write(instance, output);
+		}
+	}
+	
+	private Object read(ByteBuf input) throws Throwable {
+		Object instance = (Object) constructor.invokeExact();
+		for (FieldCodec field : fields) {
+			field.read(instance, input);
+		}
+		return instance;
+	}
+	
+	private static MethodHandle findConstructor(Class<?> type) {
+		if (type.isPrimitive() || type.isArray() || type.isInterface() || type.isEnum()
+				|| Modifier.isAbstract(type.getModifiers())) {
+			throw new IllegalArgumentException("Unsupported type: " + type.getName());
+		}
+		
+		try {
+			Constructor<?> constructor = type.getDeclaredConstructor();
+			constructor.setAccessible(true);
+			return LOOKUP.unreflectConstructor(constructor).asType(MethodType.methodType(Object.class));
+		} catch (NoSuchMethodException | IllegalAccessException e) {
+			throw new IllegalArgumentException("The type must have an accessible constructor without parameters: "
+					+ type.getName(), e);
+		}
+	}
+	
+	private static List<Field> findFields(Class<?> type) {
+		List<Class<?>> hierarchy = new ArrayList<>();
+		for (Class<?> current = type; current != Object.class; current = current.getSuperclass()) {
+			hierarchy.add(0, current);
+		}
+		
+		List<Field> result = new ArrayList<>();
+		for (Class<?> current : hierarchy) {
+			Field[] declared = current.getDeclaredFields();
+			Arrays.sort(declared, Comparator.comparing(Field::getName));
+			for (Field field : declared) {
+				int modifiers = field.getModifiers();
+				if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers) && !field.isSynthetic()) {
+					field.setAccessible(true);
+					result.add(field);
+				}
+			}
+		}
+		return result;
+	}
+	
+	private static int encodeZigZag(int value) {
+		return (value << 1) ^ (value >> 31);
+	}
+	
+	private static int decodeZigZag(int value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+	
+	private static long encodeZigZag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+	
+	private static long decodeZigZag(long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+	
+	private static String readString(ByteBuf input, int length) {
+		//the String constructor is faster than the CharsetDecoder used by ByteBuf#toString
+		String result;
+		if (input.hasArray()) {
+			result = new String(input.array(), input.arrayOffset() + input.readerIndex(), length, StandardCharsets.UTF_8);
+		} else {
+			byte[] bytes = new byte[length];
+			input.getBytes(input.readerIndex(), bytes);
+			result = new String(bytes, StandardCharsets.UTF_8);
+		}
+		input.skipBytes(length);
+		return result;
+	}
+	
+	private static int readLengthOrNull(ByteBuf input) {
+		int value = VarInts.read(input);
+		if (value < 0 || value - 1 > input.readableBytes()) {
+			throw new CorruptedFrameException("Invalid length: " + (value - 1));
+		}
+		return value - 1;
+	}
+	
+	
+	
+	private static FieldCodec newCodec(Field field, Map<Class<?>, BinarySerializer<?>> serializers)
+			throws IllegalAccessException {
+		Class<?> type = field.getType();
+		if (type == int.class) {
+			return new FieldCodec(field, int.class) {
+				@Override
+				void write(Object instance, ByteBuf output) throws Throwable {
+					VarInts.write(output, encodeZigZag((int) getter.invokeExact(instance)));
+				}
+				
+				@Override
+				void read(Object instance, ByteBuf input) throws Throwable {
+					setter.invokeExact(instance, decodeZigZag(VarInts.read(input)));
+				}
+			};
+		} else if (type == long.class) {
+			return new FieldCodec(field, long.class) {
+				@Override
+				void write(Object instance, ByteBuf output) throws Throwable {
+					VarInts.writeLong(output, encodeZigZag((long) getter.invokeExact(instance)));
+				}
+				
+				@Override
+				void read(Object instance, ByteBuf input) throws Throwable {
+					setter.invokeExact(instance, decodeZigZag(VarInts.readLong(input)));
+				}
+			};
+		} else if (type == short.class) {
+			return new FieldCodec(field, short.class) {
+				@Override
+				void write(Object instance, ByteBuf output) throws Throwable {
+					VarInts.write(output, encodeZigZag((short) getter.invokeExact(instance)));
+				}
+				
+				@Override
+				void read(Object instance, ByteBuf input) throws Throwable {
+					setter.invokeExact(instance, (short) decodeZigZag(VarInts.read(input)));
+				}
+			};
+		} else if (type == byte.class) {
+			return new FieldCodec(field, byte.class) {
+				@Override
+				void write(Object instance, ByteBuf output) throws Throwable {
+					output.writeByte((byte) getter.invokeExact(instance));
+				}
+				
+				@Override
+				void read(Object instance, ByteBuf input) throws Throwable {
+					setter.invokeExact(instance, input.readByte());
+				}
+			};
+		} else if (type == char.class) {
+			return new FieldCodec(field, char.class) {
+				@Override
+				void write(Object instance, ByteBuf output) throws Throwable {
+					VarInts.write(output, (char) getter.invokeExact(instance));
+				}
+				
+				@Override
+				void read(Object instance, ByteBuf input) throws Throwable {
+					setter.invokeExact(instance, (char) VarInts.read(input));
+				}
+			};
+		} else if (type == boolean.class) {
+			return new FieldCodec(field, boolean.class) {
+				@Override
+				void write(Object instance, ByteBuf output) throws Throwable {
+					output.writeBoolean((boolean) getter.invokeExact(instance));
+				}
+				
+				@Override
+				void read(Object instance, ByteBuf input) throws Throwable {
+					setter.invokeExact(instance, input.readBoolean());
+				}
+			};
+		} else if (type == float.class) {
+			return new FieldCodec(field, float.class) {
+				@Override
+				void write(Object instance, ByteBuf output) throws Throwable {
+					output.writeFloat((float) getter.invokeExact(instance));
+				}
+				
+				@Override
+				void read(Object instance, ByteBuf input) throws Throwable {
+					setter.invokeExact(instance, input.readFloat());
+				}
+			};
+		} else if (type == double.class) {
+			return new FieldCodec(field, double.class) {
+				@Override
+				void write(Object instance, ByteBuf output) throws Throwable {
+					output.writeDouble((double) getter.invokeExact(instance));
+				}
+				
+				@Override
+				void read(Object instance, ByteBuf input) throws Throwable {
+					setter.invokeExact(instance, input.readDouble());
+				}
+			};
+		} else if (type == String.class) {
+			return new FieldCodec(field, Object.class) {
+				@Override
+				void write(Object instance, ByteBuf output) throws Throwable {
+					String value = (String) (Object) getter.invokeExact(instance);
+					if (value == null) {
+						output.writeByte(0);
+					} else {
+						int length = ByteBufUtil.utf8Bytes(value);
+						VarInts.write(output, length + 1);
+						ByteBufUtil.reserveAndWriteUtf8(output, value, length);
+					}
+				}
+				
+				@Override
+				void read(Object instance, ByteBuf input) throws Throwable {
+					int length = readLengthOrNull(input);
+					Object value = length < 0 ? null : readString(input, length);
+					setter.invokeExact(instance, value);
+				}
+			};
+		} else if (type == byte[].class) {
+			return new FieldCodec(field, Object.class) {
+				@Override
+				void write(Object instance, ByteBuf output) throws Throwable {
+					byte[] value = (byte[]) (Object) getter.invokeExact(instance);
+					if (value == null) {
+						output.writeByte(0);
+					} else {
+						VarInts.write(output, value.length + 1);
+						output.writeBytes(value);
+					}
+				}
+				
+				@Override
+				void read(Object instance, ByteBuf input) throws Throwable {
+					int length = readLengthOrNull(input);
+					Object value = null;
+					if (length >= 0) {
+						byte[] bytes = new byte[length];
+						input.readBytes(bytes);
+						value = bytes;
+					}
+					setter.invokeExact(instance, value);
+				}
+			};
+		} else if (type.isEnum()) {
+			Object[] constants = type.getEnumConstants();
+			return new FieldCodec(field, Object.class) {
+				@Override
+				void write(Object instance, ByteBuf output) throws Throwable {
+					Enum<?> value = (Enum<?>) (Object) getter.invokeExact(instance);
+					VarInts.write(output, value == null ? 0 : value.ordinal() + 1);
+				}
+				
+				@Override
+				void read(Object instance, ByteBuf input) throws Throwable {
+					int ordinal = VarInts.read(input) - 1;
+					if (ordinal < -1 || ordinal >= constants.length) {
+						throw new CorruptedFrameException("Invalid ordinal of enum " + type.getName() + ": " + ordinal);
+					}
+					setter.invokeExact(instance, ordinal < 0 ? null : constants[ordinal]);
+				}
+			};
+		}
+		return new NullableCodec(field, newValueCodec(type, serializers));
+	}
+	
+	private static ValueCodec newValueCodec(Class<?> type, Map<Class<?>, BinarySerializer<?>> serializers) {
+		if (type == Integer.class) {
+			return new ValueCodec() {
+				@Override
+				public void write(Object value, ByteBuf output) {
+					VarInts.write(output, encodeZigZag((Integer) value));
+				}
+				
+				@Override
+				public Object read(ByteBuf input) {
+					return decodeZigZag(VarInts.read(input));
+				}
+			};
+		} else if (type == Long.class) {
+			return new ValueCodec() {
+				@Override
+				public void write(Object value, ByteBuf output) {
+					VarInts.writeLong(output, encodeZigZag((Long) value));
+				}
+				
+				@Override
+				public Object read(ByteBuf input) {
+					return decodeZigZag(VarInts.readLong(input));
+				}
+			};
+		} else if (type == Short.class) {
+			return new ValueCodec() {
+				@Override
+				public void write(Object value, ByteBuf output) {
+					VarInts.write(output, encodeZigZag((Short) value));
+				}
+				
+				@Override
+				public Object read(ByteBuf input) {
+					return (short) decodeZigZag(VarInts.read(input));
+				}
+			};
+		} else if (type == Byte.class) {
+			return new ValueCodec() {
+				@Override
+				public void write(Object value, ByteBuf output) {
+					output.writeByte((Byte) value);
+				}
+				
+				@Override
+				public Object read(ByteBuf input) {
+					return input.readByte();
+				}
+			};
+		} else if (type == Character.class) {
+			return new ValueCodec() {
+				@Override
+				public void write(Object value, ByteBuf output) {
+					VarInts.write(output, (Character) value);
+				}
+				
+				@Override
+				public Object read(ByteBuf input) {
+					return (char) VarInts.read(input);
+				}
+			};
+		} else if (type == Boolean.class) {
+			return new ValueCodec() {
+				@Override
+				public void write(Object value, ByteBuf output) {
+					output.writeBoolean((Boolean) value);
+				}
+				
+				@Override
+				public Object read(ByteBuf input) {
+					return input.readBoolean();
+				}
+			};
+		} else if (type == Float.class) {
+			return new ValueCodec() {
+				@Override
+				public void write(Object value, ByteBuf output) {
+					output.writeFloat((Float) value);
+				}
+				
+				@Override
+				public Object read(ByteBuf input) {
+					return input.readFloat();
+				}
+			};
+		} else if (type == Double.class) {
+			return new ValueCodec() {
+				@Override
+				public void write(Object value, ByteBuf output) {
+					output.writeDouble((Double) value);
+				}
+				
+				@Override
+				public Object read(ByteBuf input) {
+					return input.readDouble();
+				}
+			};
+		}
+		
+		BinarySerializer<?> existing = serializers.get(type);
+		BinarySerializer<?> nested = existing == null ? new BinarySerializer<>(type, serializers) : existing;
+		return new ValueCodec() {
+			@Override
+			public void write(Object value, ByteBuf output) throws Throwable {
+				nested.write(value, output);
+			}
+			
+			@Override
+			public Object read(ByteBuf input) throws Throwable {
+				return nested.read(input);
+			}
+		};
+	}
+	
+	
+	
+	private abstract static class FieldCodec {
+		final MethodHandle getter;
+		final MethodHandle setter;
+		
+		FieldCodec(Field field, Class<?> erasedType) throws IllegalAccessException {
+			getter = LOOKUP.unreflectGetter(field).asType(MethodType.methodType(erasedType, Object.class));
+			setter = LOOKUP.unreflectSetter(field).asType(MethodType.methodType(void.class, Object.class, erasedType));
+		}
+		
+		abstract void write(Object instance, ByteBuf output) throws Throwable;
+		
+		abstract void read(Object instance, ByteBuf input) throws Throwable;
+	}
+	
+	private static class NullableCodec extends FieldCodec {
+		private final ValueCodec codec;
+		
+		NullableCodec(Field field, ValueCodec codec) throws IllegalAccessException {
+			super(field, Object.class);
+			this.codec = codec;
+		}
+		
+		@Override
+		void write(Object instance, ByteBuf output) throws Throwable {
+			Object value = (Object) getter.invokeExact(instance);
+			output.writeBoolean(value != null);
+			if (value != null) {
+				codec.write(value, output);
+			}
+		}
+		
+		@Override
+		void read(Object instance, ByteBuf input) throws Throwable {
+			Object value = input.readBoolean() ? codec.read(input) : null;
+			setter.invokeExact(instance, value);
+		}
+	}
+	
+	private interface ValueCodec {
+		void write(Object value, ByteBuf output) throws Throwable;
+		
+		Object read(ByteBuf input) throws Throwable;
+	}
+}
@@ -0,0 +1,36 @@
+package hu.trigary.simplenetty.serialization;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+/**
+ * A {@link DataSerializer} which works directly with Netty's {@link ByteBuf}s:
+ * it writes straight into the pooled output buffers and reads from slices of the input buffers.
+ * The byte array based methods are implemented on top of the buffer based ones.
+ * The implementation should be thread-safe.
+ *
+ * @param <D> the type of the data which can be processed
+ */
+public abstract class ByteBufDataSerializer<D> implements DataSerializer<D> {
+	@Override
+	public abstract void serialize(D data, ByteBuf output);
+	
+	@Override
+	public abstract D deserialize(ByteBuf input);
+	
+	
+	
+	@Override
+	public byte[] serialize(D data) {
+		ByteBuf buffer = Unpooled.buffer();
+		serialize(data, buffer);
+		byte[] bytes = new byte[buffer.readableBytes()];
+		buffer.readBytes(bytes);
+		return bytes;
+	}
+	
+	@Override
+	public D deserialize(byte[] bytes) {
+		return deserialize(Unpooled.wrappedBuffer(bytes));
+	}
+}
@@ -0,0 +1,250 @@
+package hu.trigary.simplenetty.serialization;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.TooLongFrameException;
+import io.netty.util.concurrent.FastThreadLocal;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * The settings of the per-frame compression and the implementation of the compression itself.
+ * Each frame starts with a flag byte marking whether the rest of the frame is compressed.
+ * Only frames whose size reaches the threshold are compressed, and only if the compression makes them smaller.
+ * Compressed frames contain the length of the uncompressed data as a varint, followed by the raw deflate data.
+ * Each frame is compressed independently, therefore compressed frames can be shared between connections.
+ * Both the server and the client must use the same settings.
+ */
+public class Compression {
+	/**
+	 * The flag marking that the rest of the frame is not compressed.
+	 */
+	public static final byte FLAG_RAW = 0;
+	
+	/**
+	 * The flag marking that the rest of the frame is compressed.
+	 */
+	public static final byte FLAG_DEFLATE = 1;
+	
+	private final FastThreadLocal<Deflater> threadLocalDeflater = new FastThreadLocal<Deflater>() {
+		@Override
+		protected Deflater initialValue() {
+			return newDeflater();
+		}
+		
+		@Override
+		protected void onRemoval(Deflater deflater) {
+			deflater.end();
+		}
+	};
+	private final int threshold;
+	private final int level;
+	private final byte[] dictionary;
+	
+	/**
+	 * Creates a new instance with the default compression level and without a preset dictionary.
+	 *
+	 * @param threshold the minimum size of the frames in bytes which should be compressed
+	 */
+	public Compression(int threshold) {
+		this(threshold, Deflater.DEFAULT_COMPRESSION, null);
+	}
+	
+	/**
+	 * Creates a new instance with the specified settings.
+	 * A preset dictionary greatly improves the compression of small, repetitive frames:
+	 * it should contain the byte sequences which are commonly found in the frames (eg. JSON keys).
+	 *
+	 * @param threshold the minimum size of the frames in bytes which should be compressed
+	 * @param level the compression level (0-9) or {@link Deflater#DEFAULT_COMPRESSION}
+	 * @param dictionary the preset dictionary or null, if no dictionary should be used
+	 */
+	public Compression(int threshold, int level, byte[] dictionary) {
+		if (threshold < 0) {
+			throw new IllegalArgumentException("The threshold mustn't be negative");
+		}
+		if ((level < 0 || level > 9) && level != Deflater.DEFAULT_COMPRESSION) {
+			throw new IllegalArgumentException("Invalid compression level: " + level);
+		}
+		this.threshold = threshold;
+		this.level = level;
+		this.dictionary = dictionary == null ? null : dictionary.clone();
+	}
+	
+	
+	
+	/**
+	 * Gets the minimum size of the frames in bytes which should be compressed.
+	 *
+	 * @return the compression threshold
+	 */
+	public int getThreshold() {
+		return threshold;
+	}
+	
+	/**
+	 * Creates a new {@link Deflater} using these settings.
+	 * The returned instance should be ended once it's no longer needed.
+	 *
+	 * @return a new {@link Deflater}
+	 */
+	public Deflater newDeflater() {
+		return new Deflater(level, true);
+	}
+	
+	/**
+	 * Creates a new {@link Inflater} using these settings.
+	 * The returned instance should be ended once it's no longer needed.
+	 *
+	 * @return a new {@link Inflater}
+	 */
+	public Inflater newInflater() {
+		return new Inflater(true);
+	}
+	
+	/**
+	 * Gets the {@link Deflater} of the current thread,
+	 * which is used when frames are compressed outside of a channel (eg. broadcasts).
+	 *
+	 * @return the {@link Deflater} of the current thread
+	 */
+	public Deflater getThreadLocalDeflater() {
+		return threadLocalDeflater.get();
+	}
+	
+	
+	
+	/**
+	 * Writes the compressed form of the input into the output, including the flag byte.
+	 * If compressing the input wouldn't make it smaller, false is returned and
+	 * the contents of the output should be discarded. The input is only consumed if true is returned.
+	 * The output should be a heap buffer, otherwise the compressed data is copied.
+	 *
+	 * @param input the data to compress
+	 * @param output the buffer to write the compressed data into
+	 * @param deflater the deflater to use
+	 * @return true if the input has been compressed
+	 */
+	public boolean compress(ByteBuf input, ByteBuf output, Deflater deflater) {
+		int length = input.readableBytes();
+		deflater.reset();
+		if (dictionary != null) {
+			deflater.setDictionary(dictionary);
+		}
+		if (input.hasArray()) {
+			deflater.setInput(input.array(), input.arrayOffset() + input.readerIndex(), length);
+		} else {
+			deflater.setInput(ByteBufUtil.getBytes(input));
+		}
+		deflater.finish();
+		
+		output.writeByte(FLAG_DEFLATE);
+		VarInts.write(output, length);
+		int limit = output.writerIndex() + length;
+		output.ensureWritable(length);
+		byte[] chunk = output.hasArray() ? null : new byte[Math.min(length, 8192)];
+		while (!deflater.finished()) {
+			int writable = limit - output.writerIndex();
+			if (writable <= 0) {
+				return false;
+			}
+			
+			if (chunk == null) {
+				int written = deflater.deflate(output.array(), output.arrayOffset() + output.writerIndex(), writable);
+				output.writerIndex(output.writerIndex() + written);
+			} else {
+				output.writeBytes(chunk, 0, deflater.deflate(chunk, 0, Math.min(writable, chunk.length)));
+			}
+		}
+		input.skipBytes(length);
+		return true;
+	}
+	
+	/**
+	 * Reads a frame (including its flag byte) and returns its uncompressed contents.
+	 * If the frame isn't compressed, a retained slice of the input is returned.
+	 * The returned buffer must be released by the caller.
+	 *
+	 * @param input the frame to read
+	 * @param allocator the allocator to allocate the uncompressed data's buffer with
+	 * @param inflater the inflater to use
+	 * @return the uncompressed contents of the frame
+	 * @throws CorruptedFrameException if the frame is malformed
+	 */
+	public ByteBuf decompress(ByteBuf input, ByteBufAllocator allocator, Inflater inflater) {
+		return decompress(input, allocator, inflater, Integer.MAX_VALUE);
+	}
+	
+	/**
+	 * Reads a frame (including its flag byte) and returns its uncompressed contents.
+	 * If the frame isn't compressed, a retained slice of the input is returned.
+	 * The returned buffer must be released by the caller.
+	 * The declared uncompressed length is checked before any memory is allocated for the uncompressed data.
+	 *
+	 * @param input the frame to read
+	 * @param allocator the allocator to allocate the uncompressed data's buffer with
+	 * @param inflater the inflater to use
+	 * @param maxLength the maximum uncompressed length in bytes
+	 * @return the uncompressed contents of the frame
+	 * @throws CorruptedFrameException if the frame is malformed
+	 * @throws TooLongFrameException if the uncompressed length exceeds the maximum
+	 */
+	public ByteBuf decompress(ByteBuf input, ByteBufAllocator allocator, Inflater inflater, int maxLength) {
+		byte flag = input.readByte();
+		if (flag == FLAG_RAW) {
+			return input.readRetainedSlice(input.readableBytes());
+		} else if (flag != FLAG_DEFLATE) {
+			throw new CorruptedFrameException("Unknown compression flag: " + flag);
+		}
+		
+		int length = VarInts.read(input);
+		if (length < 0) {
+			throw new CorruptedFrameException("Negative uncompressed length: " + length);
+		} else if (length > maxLength) {
+			throw new TooLongFrameException("Uncompressed length " + length + " exceeds the maximum of " + maxLength);
+		}
+		
+		inflater.reset();
+		if (dictionary != null) {
+			inflater.setDictionary(dictionary);
+		}
+		if (input.hasArray()) {
+			inflater.setInput(input.array(), input.arrayOffset() + input.readerIndex(), input.readableBytes());
+		} else {
+			inflater.setInput(ByteBufUtil.getBytes(input));
+		}
+		input.skipBytes(input.readableBytes());
+		
+		//the buffer grows as the data is inflated, this way the declared length can't be abused for large allocations
+		ByteBuf output = allocator.heapBuffer(Math.min(length, 8192), length);
+		try {
+			while (output.writerIndex() < length) {
+				output.ensureWritable(Math.min(length - output.writerIndex(), 8192));
+				int written = inflater.inflate(output.array(), output.arrayOffset() + output.writerIndex(), output.writableBytes());
+				if (written == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+					break;
+				}
+				output.writerIndex(output.writerIndex() + written);
+			}
+			
+			//the end of the stream might not have been processed yet if the output was filled exactly
+			if (!inflater.finished() && output.writerIndex() == length && inflater.inflate(new byte[1]) != 0) {
+				throw new CorruptedFrameException("The compressed data is longer than its declared length");
+			}
+			if (output.writerIndex() != length || !inflater.finished()) {
+				throw new CorruptedFrameException("The compressed data doesn't match its declared length");
+			}
+			return output;
+		} catch (DataFormatException e) {
+			output.release();
+			throw new CorruptedFrameException("Malformed compressed data", e);
+		} catch (RuntimeException e) {
+			output.release();
+			throw e;
+		}
+	}
+}
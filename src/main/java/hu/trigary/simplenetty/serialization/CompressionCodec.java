@@ -0,0 +1,78 @@
+package hu.trigary.simplenetty.serialization;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToMessageCodec;
+
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses the outbound frames and decompresses the inbound frames based on the specified {@link Compression}.
+ * The {@link Deflater} and {@link Inflater} instances are reused for all frames of the channel.
+ */
+public class CompressionCodec extends MessageToMessageCodec<ByteBuf, ByteBuf> {
+	private static final ByteBuf RAW_FLAG = Unpooled.unreleasableBuffer(
+			Unpooled.directBuffer(1, 1).writeByte(Compression.FLAG_RAW));
+	private final Compression compression;
+	private final int maxFrameSize;
+	private Deflater deflater;
+	private Inflater inflater;
+	
+	public CompressionCodec(Compression compression) {
+		this(compression, Integer.MAX_VALUE);
+	}
+	
+	/**
+	 * Creates a new instance with the specified settings.
+	 *
+	 * @param compression the compression settings
+	 * @param maxFrameSize the maximum uncompressed length of the inbound frames in bytes
+	 */
+	public CompressionCodec(Compression compression, int maxFrameSize) {
+		this.compression = compression;
+		this.maxFrameSize = maxFrameSize;
+	}
+	
+	
+	
+	@Override
+	protected void encode(ChannelHandlerContext context, ByteBuf data, List<Object> output) {
+		if (data.readableBytes() >= compression.getThreshold()) {
+			if (deflater == null) {
+				deflater = compression.newDeflater();
+			}
+			
+			ByteBuf compressed = context.alloc().heapBuffer(data.readableBytes());
+			if (compression.compress(data, compressed, deflater)) {
+				output.add(compressed);
+				return;
+			}
+			compressed.release();
+		}
+		
+		output.add(Unpooled.wrappedBuffer(RAW_FLAG.duplicate(), data.retain()));
+	}
+	
+	@Override
+	protected void decode(ChannelHandlerContext context, ByteBuf frame, List<Object> output) {
+		if (inflater == null) {
+			inflater = compression.newInflater();
+		}
+		output.add(compression.decompress(frame, context.alloc(), inflater, maxFrameSize));
+	}
+	
+	@Override
+	public void handlerRemoved(ChannelHandlerContext context) {
+		if (deflater != null) {
+			deflater.end();
+			deflater = null;
+		}
+		if (inflater != null) {
+			inflater.end();
+			inflater = null;
+		}
+	}
+}
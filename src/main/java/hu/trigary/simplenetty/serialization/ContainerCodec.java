@@ -0,0 +1,152 @@
+package hu.trigary.simplenetty.serialization;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.util.ReferenceCountUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Packs the consecutive outbound messages into container frames and unpacks the inbound container frames.
+ * Each message inside a container is prefixed with its length as a varint.
+ * Messages are collected until the container reaches the specified message count or size limit,
+ * or until a flush is requested, this way a burst of small messages only takes up a single frame.
+ * Messages larger than the size limit are sent in a container of their own, without copying them.
+ * The outbound messages must be serialized (they must be {@link ByteBuf}s), the inbound
+ * messages are passed on as separate {@link #channelRead(ChannelHandlerContext, Object)} calls.
+ */
+public class ContainerCodec extends ChannelDuplexHandler {
+	private final int maxMessages;
+	private final int maxBytes;
+	private ByteBuf container;
+	private List<ChannelPromise> promises;
+	
+	/**
+	 * Creates a new instance with the specified limits.
+	 *
+	 * @param maxMessages the maximum amount of messages in a single container
+	 * @param maxBytes the maximum size of a single container in bytes, unless it only contains a single message
+	 */
+	public ContainerCodec(int maxMessages, int maxBytes) {
+		this.maxMessages = maxMessages;
+		this.maxBytes = maxBytes;
+	}
+	
+	
+	
+	@Override
+	public void channelRead(ChannelHandlerContext context, Object message) {
+		if (!(message instanceof ByteBuf)) {
+			context.fireChannelRead(message);
+			return;
+		}
+		
+		ByteBuf frame = (ByteBuf) message;
+		try {
+			while (frame.isReadable()) {
+				int length = VarInts.read(frame);
+				if (length < 0 || length > frame.readableBytes()) {
+					throw new CorruptedFrameException("Invalid message length in container: " + length);
+				}
+				context.fireChannelRead(frame.readRetainedSlice(length));
+			}
+		} finally {
+			frame.release();
+		}
+	}
+	
+	@Override
+	public void write(ChannelHandlerContext context, Object message, ChannelPromise promise) {
+		if (!(message instanceof ByteBuf)) {
+			context.write(message, promise);
+			return;
+		}
+		
+		ByteBuf data = (ByteBuf) message;
+		int length = data.readableBytes();
+		int entrySize = VarInts.getSize(length) + length;
+		if (container != null && container.readableBytes() + entrySize > maxBytes) {
+			writeContainer(context);
+		}
+		
+		if (entrySize > maxBytes) {
+			ByteBuf header = context.alloc().ioBuffer(VarInts.MAX_INT_SIZE);
+			VarInts.write(header, length);
+			context.write(Unpooled.wrappedBuffer(header, data), promise);
+			return;
+		}
+		
+		try {
+			if (container == null) {
+				container = context.alloc().ioBuffer(Math.min(maxBytes, entrySize * 4));
+				promises = new ArrayList<>();
+			}
+			VarInts.write(container, length);
+			container.writeBytes(data);
+			promises.add(promise);
+		} finally {
+			data.release();
+		}
+		
+		if (promises.size() >= maxMessages) {
+			writeContainer(context);
+		}
+	}
+	
+	@Override
+	public void flush(ChannelHandlerContext context) {
+		writeContainer(context);
+		context.flush();
+	}
+	
+	@Override
+	public void close(ChannelHandlerContext context, ChannelPromise promise) {
+		discardContainer();
+		context.close(promise);
+	}
+	
+	@Override
+	public void handlerRemoved(ChannelHandlerContext context) {
+		discardContainer();
+	}
+	
+	
+	
+	private void writeContainer(ChannelHandlerContext context) {
+		if (container == null) {
+			return;
+		}
+		
+		List<ChannelPromise> completed = promises;
+		ByteBuf written = container;
+		container = null;
+		promises = null;
+		context.write(written).addListener(future -> {
+			for (ChannelPromise promise : completed) {
+				if (future.isSuccess()) {
+					promise.trySuccess();
+				} else {
+					promise.tryFailure(future.cause());
+				}
+			}
+		});
+	}
+	
+	private void discardContainer() {
+		if (container == null) {
+			return;
+		}
+		
+		ReferenceCountUtil.release(container);
+		container = null;
+		for (ChannelPromise promise : promises) {
+			promise.tryFailure(new IllegalStateException("The channel was closed before the data was flushed"));
+		}
+		promises = null;
+	}
+}
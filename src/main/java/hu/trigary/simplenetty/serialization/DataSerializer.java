@@ -1,12 +1,27 @@
 package hu.trigary.simplenetty.serialization;
 
+import io.netty.buffer.ByteBuf;
+
 /**
  * A serializer and deserializer for all the data which is sent between the server and the client.
  * The implementation should be thread-safe.
+ * <p>
+ * Only the byte array based methods have to be implemented, the {@link ByteBuf} based
+ * ones adapt to them by default. Implementations which are able to work with buffers directly
+ * should override those methods too or extend {@link ByteBufDataSerializer} instead,
+ * this way no intermediate byte arrays are allocated when data is being sent or received.
+ * The deserialized data can also be reused instead of being allocated for each received message,
+ * see {@link Recyclable}.
  *
  * @param <D> the type of the data which can be processed
  */
 public interface DataSerializer<D> {
+	/**
+	 * Serializes a single instance of the data into a new byte array.
+	 *
+	 * @param data the data to serialize
+	 * @return the serialized data
+	 */
 	byte[] serialize(D data);
 	
 	/**
@@ -17,6 +32,32 @@ public interface DataSerializer<D> {
 	 */
 	D deserialize(byte[] bytes);
 	
+	/**
+	 * Serializes a single instance of the data by writing it into the specified buffer.
+	 * The buffer mustn't be released or retained by this method.
+	 *
+	 * @param data the data to serialize
+	 * @param output the buffer to write the serialized data into
+	 */
+	default void serialize(D data, ByteBuf output) {
+		output.writeBytes(serialize(data));
+	}
+	
+	/**
+	 * Deserializes a single instance of the data from the provided buffer.
+	 * The buffer only contains the serialized data and all of its readable bytes should be consumed.
+	 * The buffer mustn't be released or retained by this method,
+	 * its contents are only valid until this method returns.
+	 *
+	 * @param input the serialized data
+	 * @return the deserialized data
+	 */
+	default D deserialize(ByteBuf input) {
+		byte[] bytes = new byte[input.readableBytes()];
+		input.readBytes(bytes);
+		return deserialize(bytes);
+	}
+	
 	/**
 	 * Returns the type of the data which can be processed.
 	 *
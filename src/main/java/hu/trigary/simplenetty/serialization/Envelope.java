@@ -0,0 +1,175 @@
+package hu.trigary.simplenetty.serialization;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.CorruptedFrameException;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Data which is transmitted along with a kind and an identifier, for example a request or its response.
+ * If envelopes are enabled, every frame starts with a kind byte: regular data is marked as {@link #MESSAGE}
+ * and is not wrapped into an instance of this class, while the other kinds are followed by a varint identifier.
+ * Heartbeats are the exception: they consist of nothing but the kind byte.
+ * Stream frames use the same kind byte, but they are handled separately.
+ */
+public final class Envelope {
+	/**
+	 * The kind of regular data, which isn't wrapped into an envelope.
+	 */
+	public static final byte MESSAGE = 0;
+	
+	/**
+	 * The kind of requests, whose identifier is unique among the pending requests of the connection.
+	 */
+	public static final byte REQUEST = 1;
+	
+	/**
+	 * The kind of successful responses, whose identifier is the identifier of the request.
+	 */
+	public static final byte RESPONSE = 2;
+	
+	/**
+	 * The kind of failed responses, whose identifier is the identifier of the request
+	 * and whose payload is the description of the error as a string.
+	 */
+	public static final byte ERROR = 3;
+	
+	/**
+	 * The kind of heartbeat requests, which carry neither an identifier nor a payload.
+	 */
+	public static final byte PING = 4;
+	
+	/**
+	 * The kind of heartbeat responses, which carry neither an identifier nor a payload.
+	 */
+	public static final byte PONG = 5;
+	
+	/**
+	 * The kind of stream chunks, whose identifier is the identifier of the stream and whose payload is raw bytes.
+	 * Stream frames are handled by the {@link hu.trigary.simplenetty.stream.StreamHandler}:
+	 * they are never decoded into envelopes.
+	 */
+	public static final byte STREAM_DATA = 6;
+	
+	/**
+	 * The kind of the frame which marks the successful end of a stream.
+	 */
+	public static final byte STREAM_END = 7;
+	
+	/**
+	 * The kind of the frame which marks the failure of a stream, sent by its sender.
+	 */
+	public static final byte STREAM_ABORT = 8;
+	
+	/**
+	 * The kind of the frame which allows the sender of a stream to send more bytes,
+	 * the amount of which follows the identifier as a varint.
+	 */
+	public static final byte STREAM_CREDIT = 9;
+	
+	/**
+	 * The kind of the frame which stops a stream, sent by its receiver.
+	 */
+	public static final byte STREAM_CANCEL = 10;
+	
+	/**
+	 * The envelope of kind {@link #PING}, heartbeats don't need separate instances.
+	 */
+	public static final Envelope HEARTBEAT_PING = new Envelope(PING, 0, null);
+	
+	/**
+	 * The envelope of kind {@link #PONG}, heartbeats don't need separate instances.
+	 */
+	public static final Envelope HEARTBEAT_PONG = new Envelope(PONG, 0, null);
+	
+	private final byte kind;
+	private final int id;
+	private final Object payload;
+	
+	/**
+	 * Creates a new instance with the specified values.
+	 *
+	 * @param kind the kind of the envelope
+	 * @param id the identifier of the envelope
+	 * @param payload the data, or the error description in case of {@link #ERROR}
+	 */
+	public Envelope(byte kind, int id, Object payload) {
+		this.kind = kind;
+		this.id = id;
+		this.payload = payload;
+	}
+	
+	
+	
+	/**
+	 * Gets the kind of this envelope.
+	 *
+	 * @return the kind of this envelope
+	 */
+	public byte getKind() {
+		return kind;
+	}
+	
+	/**
+	 * Gets the identifier of this envelope.
+	 *
+	 * @return the identifier of this envelope
+	 */
+	public int getId() {
+		return id;
+	}
+	
+	/**
+	 * Gets the data this envelope carries, or the error description in case of {@link #ERROR}.
+	 *
+	 * @return the payload of this envelope
+	 */
+	public Object getPayload() {
+		return payload;
+	}
+	
+	/**
+	 * Gets whether this envelope is a heartbeat, which isn't passed on to the event listeners.
+	 *
+	 * @return true if this envelope is of kind {@link #PING} or {@link #PONG}
+	 */
+	public boolean isHeartbeat() {
+		return kind == PING || kind == PONG;
+	}
+	
+	
+	
+	<D> void encode(DataSerializer<D> serializer, ByteBuf output) {
+		output.writeByte(kind);
+		if (isHeartbeat()) {
+			return;
+		}
+		
+		VarInts.write(output, id);
+		if (kind == ERROR) {
+			output.writeCharSequence((String) payload, StandardCharsets.UTF_8);
+		} else {
+			//noinspection unchecked
+			serializer.serialize((D) payload, output);
+		}
+	}
+	
+	static Object decode(DataSerializer<?> serializer, ByteBuf input) {
+		byte kind = input.readByte();
+		if (kind == MESSAGE) {
+			return PacketDecoder.decodeMessage(serializer, input);
+		} else if (kind == PING) {
+			return HEARTBEAT_PING;
+		} else if (kind == PONG) {
+			return HEARTBEAT_PONG;
+		} else if (kind < REQUEST || kind > ERROR) {
+			throw new CorruptedFrameException("Unknown envelope kind: " + kind);
+		}
+		
+		int id = VarInts.read(input);
+		Object payload = kind == ERROR
+				? input.readCharSequence(input.readableBytes(), StandardCharsets.UTF_8).toString()
+				: serializer.deserialize(input);
+		return new Envelope(kind, id, payload);
+	}
+}
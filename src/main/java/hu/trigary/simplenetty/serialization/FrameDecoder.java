@@ -0,0 +1,135 @@
+package hu.trigary.simplenetty.serialization;
+
+import hu.trigary.simplenetty.pipeline.InboundBudget;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.TooLongFrameException;
+
+import java.util.List;
+
+/**
+ * Splits the inbound bytes into frames based on their length prefix in the specified {@link FrameFormat}.
+ * The frames are passed on as retained slices of the inbound bytes, no copies are made.
+ * Frames longer than the maximum frame size are rejected as soon as their header is read:
+ * the connection is closed and a {@link TooLongFrameException} is thrown.
+ * If an {@link InboundBudget} is specified, the frames' lengths are reserved from it while they are being received.
+ */
+public class FrameDecoder extends ByteToMessageDecoder {
+	private final FrameFormat format;
+	private final int maxFrameSize;
+	private final InboundBudget budget;
+	private ChannelHandlerContext context;
+	private int size = -1;
+	private boolean reserved;
+	private boolean waiting;
+	
+	public FrameDecoder() {
+		this(FrameFormat.FIXED_INT);
+	}
+	
+	public FrameDecoder(FrameFormat format) {
+		this(format, Integer.MAX_VALUE, null);
+	}
+	
+	/**
+	 * Creates a new instance with the specified settings.
+	 *
+	 * @param format the format of the frames' headers
+	 * @param maxFrameSize the maximum length of the frames in bytes
+	 * @param budget the budget to reserve the frames' lengths from, can be null
+	 */
+	public FrameDecoder(FrameFormat format, int maxFrameSize, InboundBudget budget) {
+		this.format = format;
+		this.maxFrameSize = budget == null ? maxFrameSize : Math.min(maxFrameSize, budget.getPerConnectionBytes());
+		this.budget = budget;
+	}
+	
+	
+	
+	/**
+	 * Gets the amount of bytes this decoder is currently buffering.
+	 * This method can be called from any thread, but the returned value is only an estimate in that case.
+	 *
+	 * @return the amount of buffered bytes
+	 */
+	public int getBufferedBytes() {
+		return actualReadableBytes();
+	}
+	
+	@Override
+	public void handlerAdded(ChannelHandlerContext context) {
+		this.context = context;
+	}
+	
+	@Override
+	protected void decode(ChannelHandlerContext context, ByteBuf inputBuffer, List<Object> output) throws TooLongFrameException {
+		if (size == -1) {
+			int length = format.tryReadLength(inputBuffer);
+			if (length == -1) {
+				return;
+			}
+			
+			if (length > maxFrameSize) {
+				inputBuffer.skipBytes(inputBuffer.readableBytes());
+				context.close();
+				throw new TooLongFrameException("Frame length " + length + " exceeds the maximum of " + maxFrameSize);
+			}
+			
+			size = length;
+			if (budget != null) {
+				reserved = budget.tryAcquire(size);
+				if (!reserved && !waiting) {
+					waiting = true;
+					context.channel().config().setAutoRead(false);
+					budget.await(size, () -> context.executor().execute(this::retryReservation));
+				}
+			}
+		}
+		
+		if (inputBuffer.readableBytes() >= size) {
+			output.add(inputBuffer.readRetainedSlice(size));
+			releaseReservation();
+			size = -1;
+		}
+	}
+	
+	@Override
+	protected void handlerRemoved0(ChannelHandlerContext context) {
+		releaseReservation();
+	}
+	
+	
+	
+	private void retryReservation() {
+		if (!waiting) {
+			return;
+		}
+		
+		if (!context.channel().isActive()) {
+			waiting = false;
+			budget.signal();
+			return;
+		}
+		
+		if (size != -1 && !reserved) {
+			if (!budget.tryAcquire(size)) {
+				budget.await(size, () -> context.executor().execute(this::retryReservation));
+				return;
+			}
+			reserved = true;
+		}
+		
+		waiting = false;
+		context.channel().config().setAutoRead(true);
+		//there might be more budget available for the other connections
+		budget.signal();
+	}
+	
+	private void releaseReservation() {
+		if (reserved) {
+			reserved = false;
+			budget.release(size);
+		}
+	}
+}
@@ -0,0 +1,44 @@
+package hu.trigary.simplenetty.serialization;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToMessageEncoder;
+
+import java.util.List;
+
+/**
+ * Prepends the length of the outbound frames in the specified {@link FrameFormat}.
+ * The contents of the frames are not copied, the header is written separately.
+ */
+public class FrameEncoder extends MessageToMessageEncoder<ByteBuf> {
+	private final FrameFormat format;
+	
+	public FrameEncoder() {
+		this(FrameFormat.FIXED_INT);
+	}
+	
+	public FrameEncoder(FrameFormat format) {
+		this.format = format;
+	}
+	
+	/**
+	 * Gets the format of the length prefix this encoder writes.
+	 *
+	 * @return the format of the frames
+	 */
+	public FrameFormat getFormat() {
+		return format;
+	}
+	
+	
+	
+	@Override
+	protected void encode(ChannelHandlerContext context, ByteBuf frame, List<Object> output) {
+		int length = frame.readableBytes();
+		int headerSize = format.getHeaderSize(length);
+		ByteBuf header = context.alloc().ioBuffer(headerSize, headerSize);
+		format.setLength(header, 0, length);
+		output.add(header.writerIndex(headerSize));
+		output.add(frame.retain());
+	}
+}
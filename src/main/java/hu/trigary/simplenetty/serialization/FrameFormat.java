@@ -0,0 +1,109 @@
+package hu.trigary.simplenetty.serialization;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.CorruptedFrameException;
+
+/**
+ * The formats of the length prefix (header) of the frames.
+ * Both the server and the client must use the same format.
+ */
+public enum FrameFormat {
+	/**
+	 * The length is a fixed 4 byte big-endian integer.
+	 * This is the legacy format, it is compatible with all versions of this library.
+	 */
+	FIXED_INT {
+		@Override
+		public int getMaxHeaderSize() {
+			return 4;
+		}
+		
+		@Override
+		public int getHeaderSize(int length) {
+			return 4;
+		}
+		
+		@Override
+		public int setLength(ByteBuf buffer, int index, int length) {
+			buffer.setInt(index, length);
+			return 4;
+		}
+		
+		@Override
+		public int tryReadLength(ByteBuf buffer) {
+			if (buffer.readableBytes() < 4) {
+				return -1;
+			}
+			
+			int length = buffer.readInt();
+			if (length < 0) {
+				throw new CorruptedFrameException("Negative frame length: " + length);
+			}
+			return length;
+		}
+	},
+	
+	/**
+	 * The length is a variable-length integer, see {@link VarInts}.
+	 * Frames shorter than 128 bytes only have a single byte header.
+	 */
+	VARINT {
+		@Override
+		public int getMaxHeaderSize() {
+			return VarInts.MAX_INT_SIZE;
+		}
+		
+		@Override
+		public int getHeaderSize(int length) {
+			return VarInts.getSize(length);
+		}
+		
+		@Override
+		public int setLength(ByteBuf buffer, int index, int length) {
+			return VarInts.set(buffer, index, length);
+		}
+		
+		@Override
+		public int tryReadLength(ByteBuf buffer) {
+			return VarInts.tryReadNonNegative(buffer);
+		}
+	};
+	
+	
+	
+	/**
+	 * Gets the maximum size of the header in bytes.
+	 *
+	 * @return the maximum size of the header
+	 */
+	public abstract int getMaxHeaderSize();
+	
+	/**
+	 * Gets the size of the header in bytes of a frame with the specified length.
+	 *
+	 * @param length the length of the frame, excluding the header
+	 * @return the size of the header
+	 */
+	public abstract int getHeaderSize(int length);
+	
+	/**
+	 * Writes the header at the specified absolute index of the buffer.
+	 * The reader and writer indexes of the buffer are not modified.
+	 *
+	 * @param buffer the buffer to write into
+	 * @param index the index of the first byte of the header
+	 * @param length the length of the frame, excluding the header
+	 * @return the size of the header
+	 */
+	public abstract int setLength(ByteBuf buffer, int index, int length);
+	
+	/**
+	 * Reads the header from the buffer, if the whole header is readable.
+	 * The reader index is only modified if the header was read.
+	 *
+	 * @param buffer the buffer to read from
+	 * @return the length of the frame (excluding the header) or -1, if the header is not readable yet
+	 * @throws CorruptedFrameException if the header is malformed
+	 */
+	public abstract int tryReadLength(ByteBuf buffer);
+}
@@ -0,0 +1,188 @@
+package hu.trigary.simplenetty.serialization;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.CorruptedFrameException;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A serializer which supports multiple types of data, each of which is registered with a numeric ID
+ * and its own serializer. Every message starts with the varint ID of its type,
+ * which is used to look up the deserializer of the rest of the message from an array.
+ * The endpoints call the typed receive listeners by the same ID, see {@link TypedData}.
+ * Using small, consecutive IDs (eg. starting at 0) is recommended, since both the size of that array
+ * and the size of the encoded IDs depend on the largest ID.
+ * <p>
+ * Endpoints using a registry as their serializer can have separate receive listeners for each registered type,
+ * see {@link hu.trigary.simplenetty.server.Server#onReceived(Class, java.util.function.BiConsumer)}
+ * and {@link hu.trigary.simplenetty.client.Client#onReceived(Class, java.util.function.Consumer)}.
+ * All types should be registered before the registry is used by an endpoint.
+ *
+ * @param <D> the common supertype of all registered types
+ */
+public class MessageRegistry<D> extends ByteBufDataSerializer<D> {
+	/**
+	 * The largest ID which can be used when registering a type.
+	 */
+	public static final int MAX_ID = 0xFFFF;
+	private static final Entry<?> UNREGISTERED = new Entry<>(-1, null, null);
+	private final Map<Class<?>, Entry<?>> registered = new HashMap<>();
+	private final Class<D> type;
+	private volatile ClassValue<Entry<?>> entryCache = newEntryCache();
+	private volatile Entry<?>[] entries = new Entry<?>[0];
+	
+	/**
+	 * Creates a new, empty registry.
+	 *
+	 * @param type the common supertype of all registered types
+	 */
+	public MessageRegistry(Class<D> type) {
+		this.type = type;
+	}
+	
+	
+	
+	/**
+	 * Registers a type with the specified ID. Instances of subclasses of the type are also serialized
+	 * using this registration, unless their class is registered separately.
+	 *
+	 * @param id the ID of the type, between 0 and {@link #MAX_ID}
+	 * @param type the type to register
+	 * @param serializer the serializer of the type, which doesn't have to handle the ID
+	 * @param <T> the type to register
+	 * @throws IllegalArgumentException if the ID is out of range or the ID or the type is already registered
+	 */
+	public <T extends D> void register(int id, Class<T> type, DataSerializer<T> serializer) {
+		if (id < 0 || id > MAX_ID) {
+			throw new IllegalArgumentException("The ID must be between 0 and " + MAX_ID + ": " + id);
+		}
+		
+		synchronized (registered) {
+			Entry<?>[] current = entries;
+			if (id < current.length && current[id] != null) {
+				throw new IllegalArgumentException("The ID is already registered: " + id);
+			} else if (registered.containsKey(type)) {
+				throw new IllegalArgumentException("The type is already registered: " + type.getName());
+			}
+			
+			Entry<T> entry = new Entry<>(id, type, serializer);
+			registered.put(type, entry);
+			Entry<?>[] updated = Arrays.copyOf(current, Math.max(current.length, id + 1));
+			updated[id] = entry;
+			entries = updated;
+			//the subclasses of the type might have been cached as unregistered or as a superclass of the type
+			entryCache = newEntryCache();
+		}
+	}
+	
+	/**
+	 * Gets the ID the specified type is serialized with.
+	 *
+	 * @param type the type to get the ID of
+	 * @return the ID of the type or -1, if neither the type nor its superclasses are registered
+	 */
+	public int getId(Class<?> type) {
+		return entryCache.get(type).id;
+	}
+	
+	/**
+	 * Gets the type which is registered with the specified ID.
+	 *
+	 * @param id the ID to look up
+	 * @return the registered type or null, if the ID is not registered
+	 */
+	public Class<? extends D> getType(int id) {
+		Entry<?>[] current = entries;
+		//noinspection unchecked
+		return id >= 0 && id < current.length && current[id] != null ? (Class<? extends D>) current[id].type : null;
+	}
+	
+	/**
+	 * Gets the amount of IDs which can be looked up without going out of bounds: the largest registered ID plus one.
+	 *
+	 * @return the length of the array the types are stored in
+	 */
+	public int getIdCapacity() {
+		return entries.length;
+	}
+	
+	
+	
+	@Override
+	public void serialize(D data, ByteBuf output) {
+		Entry<?> entry = entryCache.get(data.getClass());
+		if (entry == UNREGISTERED) {
+			throw new IllegalArgumentException("The type of the data is not registered: " + data.getClass().getName());
+		}
+		
+		VarInts.write(output, entry.id);
+		//noinspection unchecked
+		((DataSerializer<Object>) entry.serializer).serialize(data, output);
+	}
+	
+	@Override
+	public D deserialize(ByteBuf input) {
+		int id = VarInts.read(input);
+		//noinspection unchecked
+		return (D) getEntry(id).serializer.deserialize(input);
+	}
+	
+	/**
+	 * Deserializes the data like {@link #deserialize(ByteBuf)}, but keeps the ID it was received with,
+	 * which might differ from the ID of the returned instance's class,
+	 * eg. if the serializer of a type returns instances of a subclass which is registered separately.
+	 *
+	 * @param input the serialized data, starting with the ID of its type
+	 * @return the deserialized data along with the ID it was received with
+	 */
+	public TypedData deserializeTyped(ByteBuf input) {
+		int id = VarInts.read(input);
+		return new TypedData(id, getEntry(id).serializer.deserialize(input));
+	}
+	
+	@Override
+	public Class<D> getType() {
+		return type;
+	}
+	
+	
+	
+	private Entry<?> getEntry(int id) {
+		Entry<?>[] current = entries;
+		if (id < 0 || id >= current.length || current[id] == null) {
+			throw new CorruptedFrameException("Received data of unregistered type ID: " + id);
+		}
+		return current[id];
+	}
+	
+	private ClassValue<Entry<?>> newEntryCache() {
+		return new ClassValue<Entry<?>>() {
+			@Override
+			protected Entry<?> computeValue(Class<?> type) {
+				synchronized (registered) {
+					for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+						Entry<?> entry = registered.get(current);
+						if (entry != null) {
+							return entry;
+						}
+					}
+				}
+				return UNREGISTERED;
+			}
+		};
+	}
+	
+	private static class Entry<T> {
+		final int id;
+		final Class<T> type;
+		final DataSerializer<T> serializer;
+		
+		Entry(int id, Class<T> type, DataSerializer<T> serializer) {
+			this.id = id;
+			this.type = type;
+			this.serializer = serializer;
+		}
+	}
+}
@@ -1,39 +1,86 @@
 package hu.trigary.simplenetty.serialization;
 
+import hu.trigary.simplenetty.metrics.ConnectionMetrics;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.MessageToMessageDecoder;
 
 import java.util.List;
 
 /**
- * Connects the {@link DataSerializer} to Netty's {@link ByteToMessageDecoder}.
+ * Connects the {@link DataSerializer} to Netty's {@link MessageToMessageDecoder}:
+ * deserializes the frames which have been split by the {@link FrameDecoder}.
+ * If envelopes are enabled, frames of kind {@link Envelope#MESSAGE} are passed on as regular data
+ * and frames of other kinds are passed on as {@link Envelope}s.
+ * If the serializer is a {@link MessageRegistry}, regular data is passed on as {@link TypedData}.
  */
-public class PacketDecoder<D> extends ByteToMessageDecoder {
+public class PacketDecoder<D> extends MessageToMessageDecoder<ByteBuf> {
 	private final DataSerializer<D> serializer;
-	private int size = -1;
+	private final boolean envelopes;
+	private final ConnectionMetrics metrics;
 	
 	public PacketDecoder(DataSerializer<D> serializer) {
+		this(serializer, false);
+	}
+	
+	public PacketDecoder(DataSerializer<D> serializer, boolean envelopes) {
+		this(serializer, envelopes, null);
+	}
+	
+	/**
+	 * Creates a new instance with the specified settings.
+	 *
+	 * @param serializer the deserializer of the data
+	 * @param envelopes whether every frame starts with an {@link Envelope} kind
+	 * @param metrics the metrics to record the deserialized messages in, can be null
+	 */
+	public PacketDecoder(DataSerializer<D> serializer, boolean envelopes, ConnectionMetrics metrics) {
 		this.serializer = serializer;
+		this.envelopes = envelopes;
+		this.metrics = metrics;
 	}
 	
 	
 	
 	@Override
-	protected void decode(ChannelHandlerContext context, ByteBuf inputBuffer, List<Object> output) {
-		if (size == -1) {
-			if (inputBuffer.readableBytes() < 4) {
-				return;
-			}
-			
-			size = inputBuffer.readInt();
+	protected void decode(ChannelHandlerContext context, ByteBuf frame, List<Object> output) {
+		if (metrics == null) {
+			output.add(decode(frame));
+			return;
 		}
 		
-		if (inputBuffer.readableBytes() >= size) {
-			byte[] bytes = new byte[size];
-			inputBuffer.readBytes(bytes);
-			output.add(serializer.deserialize(bytes));
-			size = -1;
+		long start = System.nanoTime();
+		Object data = decode(frame);
+		if (data instanceof Envelope && ((Envelope) data).isHeartbeat()) {
+			output.add(data);
+			return;
+		}
+		metrics.recordReceived(unwrap(data), System.nanoTime() - start);
+		output.add(data);
+	}
+	
+	
+	
+	private Object decode(ByteBuf frame) {
+		Object data = envelopes ? Envelope.decode(serializer, frame) : decodeMessage(serializer, frame);
+		Object payload = unwrap(data);
+		if (payload instanceof Recyclable) {
+			//the instance might have been taken from a pool: it was recycled when it was last used
+			((Recyclable) payload).reuse();
 		}
+		return data;
+	}
+	
+	private static Object unwrap(Object data) {
+		if (data instanceof Envelope) {
+			return ((Envelope) data).getPayload();
+		}
+		return data instanceof TypedData ? ((TypedData) data).getData() : data;
+	}
+	
+	static Object decodeMessage(DataSerializer<?> serializer, ByteBuf input) {
+		//the ID read from the frame selects the receive listener as well
+		return serializer instanceof MessageRegistry
+				? ((MessageRegistry<?>) serializer).deserializeTyped(input) : serializer.deserialize(input);
 	}
 }
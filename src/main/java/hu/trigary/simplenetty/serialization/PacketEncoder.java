@@ -1,24 +1,82 @@
 package hu.trigary.simplenetty.serialization;
 
+import hu.trigary.simplenetty.metrics.ConnectionMetrics;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.MessageToByteEncoder;
 
 /**
  * Connects the {@link DataSerializer} to Netty's {@link MessageToByteEncoder}.
+ * If envelopes are enabled, {@link Envelope}s are encoded as well and regular data is marked as {@link Envelope#MESSAGE}.
  */
-public class PacketEncoder<D> extends MessageToByteEncoder<D> {
+public class PacketEncoder<D> extends MessageToByteEncoder<Object> {
 	private final DataSerializer<D> serializer;
+	private final boolean envelopes;
+	private final ConnectionMetrics metrics;
 	
 	public PacketEncoder(DataSerializer<D> serializer) {
-		super(serializer.getType());
+		this(serializer, true);
+	}
+	
+	public PacketEncoder(DataSerializer<D> serializer, boolean preferDirect) {
+		this(serializer, preferDirect, false);
+	}
+	
+	public PacketEncoder(DataSerializer<D> serializer, boolean preferDirect, boolean envelopes) {
+		this(serializer, preferDirect, envelopes, null);
+	}
+	
+	/**
+	 * Creates a new instance which serializes into direct or heap buffers.
+	 * Heap buffers should be preferred if the serialized data is processed further (eg. compressed).
+	 *
+	 * @param serializer the serializer of the data
+	 * @param preferDirect whether direct buffers should be used
+	 * @param envelopes whether every frame should start with an {@link Envelope} kind
+	 * @param metrics the metrics to record the serialized messages in, can be null
+	 */
+	public PacketEncoder(DataSerializer<D> serializer, boolean preferDirect, boolean envelopes, ConnectionMetrics metrics) {
+		super(preferDirect);
 		this.serializer = serializer;
+		this.envelopes = envelopes;
+		this.metrics = metrics;
 	}
 	
 	
 	
 	@Override
-	protected void encode(ChannelHandlerContext context, D data, ByteBuf outputBuffer) {
-		outputBuffer.writeBytes(serializer.serialize(data));
+	public boolean acceptOutboundMessage(Object message) {
+		return serializer.getType().isInstance(message) || (envelopes && message instanceof Envelope);
+	}
+	
+	@Override
+	protected void encode(ChannelHandlerContext context, Object data, ByteBuf outputBuffer) {
+		if (metrics == null || isHeartbeat(data)) {
+			encode(data, outputBuffer);
+			return;
+		}
+		
+		long start = System.nanoTime();
+		encode(data, outputBuffer);
+		metrics.recordSent(data instanceof Envelope ? ((Envelope) data).getPayload() : data, System.nanoTime() - start);
+	}
+	
+	
+	
+	private static boolean isHeartbeat(Object data) {
+		return data instanceof Envelope && ((Envelope) data).isHeartbeat();
+	}
+	
+	private void encode(Object data, ByteBuf outputBuffer) {
+		if (data instanceof Envelope) {
+			((Envelope) data).encode(serializer, outputBuffer);
+			return;
+		}
+		
+		if (envelopes) {
+			outputBuffer.writeByte(Envelope.MESSAGE);
+		}
+		//noinspection unchecked
+		serializer.serialize((D) data, outputBuffer);
 	}
 }
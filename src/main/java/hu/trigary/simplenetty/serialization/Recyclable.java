@@ -0,0 +1,102 @@
+package hu.trigary.simplenetty.serialization;
+
+import io.netty.util.Recycler;
+
+/**
+ * Base class of data which can be reused instead of being garbage collected after it has been received.
+ * The {@link DataSerializer} should take the instances from a {@link Recycler}, which pools them per thread,
+ * and pass the {@link Recycler.Handle} to the constructor.
+ * This way receiving data doesn't allocate new objects once the pools have been filled.
+ * <p>
+ * Received instances are recycled automatically after the receive listener has returned.
+ * If the listener needs the instance afterwards (eg. because it processes it asynchronously),
+ * it must call {@link #retain()} and it becomes responsible for calling {@link #recycle()} once it's done.
+ * The instances received as requests or responses are not recycled automatically.
+ * Recycling is cheapest if the listeners are called on the event loop threads,
+ * since recycling from a different thread requires additional synchronization.
+ */
+public abstract class Recyclable {
+	private final Recycler.Handle<Recyclable> handle;
+	private boolean retained;
+	private boolean recycled;
+	
+	/**
+	 * Creates a new instance which is returned to its pool through the specified handle when it's recycled.
+	 *
+	 * @param handle the handle received in {@link Recycler#newObject(Recycler.Handle)},
+	 * or null if the instance shouldn't be pooled
+	 */
+	protected Recyclable(Recycler.Handle<? extends Recyclable> handle) {
+		//noinspection unchecked
+		this.handle = (Recycler.Handle<Recyclable>) handle;
+	}
+	
+	
+	
+	/**
+	 * Marks this instance as retained, preventing it from being recycled automatically after it has been received.
+	 * The caller must call {@link #recycle()} once the instance is no longer needed,
+	 * otherwise it's simply garbage collected instead of being reused.
+	 */
+	public final void retain() {
+		retained = true;
+	}
+	
+	/**
+	 * Checks whether this instance has been retained since it was taken from its pool.
+	 *
+	 * @return true if this instance is not recycled automatically
+	 */
+	public final boolean isRetained() {
+		return retained;
+	}
+	
+	/**
+	 * Clears this instance and returns it to its pool.
+	 * The instance mustn't be used after this method has been called.
+	 * A receive listener may call this method without calling {@link #retain()}:
+	 * the instance is not recycled again after the listener has returned.
+	 */
+	public final void recycle() {
+		retained = false;
+		recycled = true;
+		clear();
+		if (handle != null) {
+			handle.recycle(this);
+		}
+	}
+	
+	/**
+	 * Resets the state of this instance before it's returned to its pool,
+	 * eg. by removing the references to other objects, so they can be garbage collected.
+	 * Does nothing by default.
+	 */
+	protected void clear() {
+		
+	}
+	
+	/**
+	 * Marks this instance as being in use again, after it has been taken from its pool and received.
+	 */
+	final void reuse() {
+		recycled = false;
+	}
+	
+	
+	
+	/**
+	 * Recycles the specified received data if it's {@link Recyclable}
+	 * and it hasn't been retained or recycled by the receive listener.
+	 * Should be called once the receive listener has returned.
+	 *
+	 * @param data the received data
+	 */
+	public static void recycleReceived(Object data) {
+		if (data instanceof Recyclable) {
+			Recyclable recyclable = (Recyclable) data;
+			if (!recyclable.retained && !recyclable.recycled) {
+				recyclable.recycle();
+			}
+		}
+	}
+}
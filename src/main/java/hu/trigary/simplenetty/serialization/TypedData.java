@@ -0,0 +1,43 @@
+package hu.trigary.simplenetty.serialization;
+
+/**
+ * Received data along with the ID of the type it was received as.
+ * If the serializer is a {@link MessageRegistry}, the {@link PacketDecoder} passes on regular data
+ * wrapped into instances of this class, so that the endpoints can call the receive listener
+ * of the ID read from the frame, instead of looking up the ID of the data's class again.
+ */
+public final class TypedData {
+	private final int typeId;
+	private final Object data;
+	
+	/**
+	 * Creates a new instance with the specified values.
+	 *
+	 * @param typeId the ID the data was received with
+	 * @param data the received data
+	 */
+	public TypedData(int typeId, Object data) {
+		this.typeId = typeId;
+		this.data = data;
+	}
+	
+	
+	
+	/**
+	 * Gets the ID of the registered type the data was received as.
+	 *
+	 * @return the ID read from the frame
+	 */
+	public int getTypeId() {
+		return typeId;
+	}
+	
+	/**
+	 * Gets the received data.
+	 *
+	 * @return the deserialized data
+	 */
+	public Object getData() {
+		return data;
+	}
+}
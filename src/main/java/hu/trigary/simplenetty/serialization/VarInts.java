@@ -0,0 +1,164 @@
+package hu.trigary.simplenetty.serialization;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.CorruptedFrameException;
+
+/**
+ * Utility methods for reading and writing variable-length integers:
+ * 7 bits of the value are stored in each byte, the most significant bit marks whether more bytes follow.
+ * Non-negative values below 128 only take up a single byte.
+ */
+public final class VarInts {
+	/**
+	 * The maximum amount of bytes an int takes up when encoded as a varint.
+	 */
+	public static final int MAX_INT_SIZE = 5;
+	
+	/**
+	 * The maximum amount of bytes a long takes up when encoded as a varint.
+	 */
+	public static final int MAX_LONG_SIZE = 10;
+	
+	private VarInts() {
+	}
+	
+	
+	
+	/**
+	 * Gets the amount of bytes the specified value takes up when encoded as a varint.
+	 *
+	 * @param value the value to encode
+	 * @return the size of the encoded value in bytes
+	 */
+	public static int getSize(int value) {
+		if ((value & 0xFFFFFF80) == 0) {
+			return 1;
+		} else if ((value & 0xFFFFC000) == 0) {
+			return 2;
+		} else if ((value & 0xFFE00000) == 0) {
+			return 3;
+		} else if ((value & 0xF0000000) == 0) {
+			return 4;
+		}
+		return 5;
+	}
+	
+	/**
+	 * Writes the specified value as a varint into the specified buffer.
+	 *
+	 * @param buffer the buffer to write into
+	 * @param value the value to write
+	 */
+	public static void write(ByteBuf buffer, int value) {
+		while ((value & 0xFFFFFF80) != 0) {
+			buffer.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		buffer.writeByte(value);
+	}
+	
+	/**
+	 * Writes the specified long value as a varint into the specified buffer.
+	 *
+	 * @param buffer the buffer to write into
+	 * @param value the value to write
+	 */
+	public static void writeLong(ByteBuf buffer, long value) {
+		while ((value & 0xFFFFFFFFFFFFFF80L) != 0) {
+			buffer.writeByte((int) (value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		buffer.writeByte((int) value);
+	}
+	
+	/**
+	 * Writes the specified value as a varint into the specified buffer at the specified absolute index.
+	 * The reader and writer indexes of the buffer are not modified.
+	 *
+	 * @param buffer the buffer to write into
+	 * @param index the index of the first byte of the varint
+	 * @param value the value to write
+	 * @return the amount of bytes written
+	 */
+	public static int set(ByteBuf buffer, int index, int value) {
+		int start = index;
+		while ((value & 0xFFFFFF80) != 0) {
+			buffer.setByte(index++, (value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		buffer.setByte(index++, value);
+		return index - start;
+	}
+	
+	/**
+	 * Reads a varint from the specified buffer.
+	 * The whole varint must be readable.
+	 *
+	 * @param buffer the buffer to read from
+	 * @return the read value
+	 * @throws CorruptedFrameException if the varint is longer than {@link #MAX_INT_SIZE} bytes
+	 * @throws IndexOutOfBoundsException if the buffer doesn't contain the whole varint
+	 */
+	public static int read(ByteBuf buffer) {
+		int value = 0;
+		for (int shift = 0; shift < MAX_INT_SIZE * 7; shift += 7) {
+			byte current = buffer.readByte();
+			value |= (current & 0x7F) << shift;
+			if (current >= 0) {
+				return value;
+			}
+		}
+		throw new CorruptedFrameException("Malformed varint: it is longer than " + MAX_INT_SIZE + " bytes");
+	}
+	
+	/**
+	 * Reads a long varint from the specified buffer.
+	 * The whole varint must be readable.
+	 *
+	 * @param buffer the buffer to read from
+	 * @return the read value
+	 * @throws CorruptedFrameException if the varint is longer than {@link #MAX_LONG_SIZE} bytes
+	 * @throws IndexOutOfBoundsException if the buffer doesn't contain the whole varint
+	 */
+	public static long readLong(ByteBuf buffer) {
+		long value = 0;
+		for (int shift = 0; shift < MAX_LONG_SIZE * 7; shift += 7) {
+			byte current = buffer.readByte();
+			value |= (current & 0x7FL) << shift;
+			if (current >= 0) {
+				return value;
+			}
+		}
+		throw new CorruptedFrameException("Malformed varint: it is longer than " + MAX_LONG_SIZE + " bytes");
+	}
+	
+	/**
+	 * Reads a varint from the specified buffer if the whole varint is readable.
+	 * The reader index is only modified if the varint was read.
+	 *
+	 * @param buffer the buffer to read from
+	 * @return the read value or -1, if the buffer doesn't contain the whole varint
+	 * @throws CorruptedFrameException if the varint is longer than {@link #MAX_INT_SIZE} bytes or is negative
+	 */
+	public static int tryReadNonNegative(ByteBuf buffer) {
+		int index = buffer.readerIndex();
+		int end = Math.min(buffer.writerIndex(), index + MAX_INT_SIZE);
+		int value = 0;
+		for (int shift = 0; index < end; shift += 7) {
+			byte current = buffer.getByte(index++);
+			value |= (current & 0x7F) << shift;
+			if (current >= 0) {
+				if (value < 0) {
+					throw new CorruptedFrameException("Malformed varint: it is negative");
+				}
+				buffer.readerIndex(index);
+				return value;
+			}
+		}
+		
+		if (end - buffer.readerIndex() == MAX_INT_SIZE) {
+			throw new CorruptedFrameException("Malformed varint: it is longer than " + MAX_INT_SIZE + " bytes");
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,89 @@
+package hu.trigary.simplenetty.server;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * A named group of clients (eg. a room or a shard) which is managed by the {@link Server}.
+ * Clients are automatically removed from all of their groups when they disconnect.
+ * Membership changes and iteration are lock-free.
+ *
+ * @param <C> the type of the object which is bound to all connected clients
+ * @see Server#joinGroup(String, ServerClient)
+ * @see Server#sendToGroup(String, Object)
+ */
+public class ClientGroup<C extends ServerClient<?>> {
+	private final Set<C> members = ConcurrentHashMap.newKeySet();
+	private final Collection<C> membersView = Collections.unmodifiableSet(members);
+	private final String name;
+	
+	ClientGroup(String name) {
+		this.name = name;
+	}
+	
+	
+	
+	/**
+	 * Gets the name of this group.
+	 *
+	 * @return the name of this group
+	 */
+	public String getName() {
+		return name;
+	}
+	
+	/**
+	 * Checks whether the specified client is a member of this group.
+	 *
+	 * @param client the client to check
+	 * @return true if the client is a member of this group
+	 */
+	public boolean contains(C client) {
+		return members.contains(client);
+	}
+	
+	/**
+	 * Gets the amount of members of this group.
+	 *
+	 * @return the amount of members
+	 */
+	public int size() {
+		return members.size();
+	}
+	
+	/**
+	 * Executes the specified action for each member of this group, without copying the members.
+	 * Clients joining or leaving during the iteration may or may not be included.
+	 *
+	 * @param action the action to execute
+	 */
+	public void forEachMember(Consumer<? super C> action) {
+		members.forEach(action);
+	}
+	
+	/**
+	 * Gets an unmodifiable, live view of the members of this group.
+	 *
+	 * @return a view of the members
+	 */
+	public Collection<C> getMembers() {
+		return membersView;
+	}
+	
+	
+	
+	boolean add(C client) {
+		return members.add(client);
+	}
+	
+	boolean remove(C client) {
+		return members.remove(client);
+	}
+	
+	void clear() {
+		members.clear();
+	}
+}
@@ -1,20 +1,32 @@
 package hu.trigary.simplenetty.server;
 
+import hu.trigary.simplenetty.Endpoint;
+import hu.trigary.simplenetty.metrics.EndpointMetrics;
+import hu.trigary.simplenetty.rpc.RpcException;
+import hu.trigary.simplenetty.rpc.RpcSession;
 import hu.trigary.simplenetty.serialization.DataSerializer;
-import hu.trigary.simplenetty.serialization.PacketDecoder;
-import hu.trigary.simplenetty.serialization.PacketEncoder;
+import hu.trigary.simplenetty.serialization.Envelope;
+import hu.trigary.simplenetty.serialization.MessageRegistry;
+import hu.trigary.simplenetty.serialization.Recyclable;
+import hu.trigary.simplenetty.serialization.TypedData;
+import hu.trigary.simplenetty.stream.ReceivedStream;
+import hu.trigary.simplenetty.transport.Transport;
 import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.*;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
-import io.netty.handler.codec.LengthFieldPrepender;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
 import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 
@@ -24,18 +36,28 @@ import java.util.function.Supplier;
  * @param <C> the type of the object which is bound to all connected clients
  * @param <D> the type of the data being transmitted
  */
-public class Server<C extends ServerClient<D>, D> {
-	private final Set<C> clients = new HashSet<>();
-	private final DataSerializer<D> serializer;
+public class Server<C extends ServerClient<D>, D> extends Endpoint<D> {
+	private static final Object[] NO_CLIENTS = new Object[0];
+	private final Set<C> clients = ConcurrentHashMap.newKeySet();
+	private final Collection<C> clientsView = Collections.unmodifiableSet(clients);
+	private final ConcurrentMap<String, ClientGroup<C>> groups = new ConcurrentHashMap<>();
+	private final Collection<ClientGroup<C>> groupsView = Collections.unmodifiableCollection(groups.values());
 	private final Supplier<C> clientSupplier;
 	private EventLoopGroup bossGroup;
 	private EventLoopGroup workerGroup;
+	private boolean ownsBossGroup;
+	private boolean ownsWorkerGroup;
+	private Channel serverChannel;
+	private volatile EventLoopGroup sharedBossGroup;
 	
 	private volatile Consumer<ServerBootstrap> onConfigured;
 	private volatile Consumer<SocketChannel> onChannelInitialized;
 	private volatile Consumer<C> onConnected;
 	private volatile BiConsumer<C, D> onReceived;
+	private volatile BiFunction<C, D, D> onRequest;
+	private volatile BiConsumer<C, ReceivedStream> onStream;
 	private volatile Consumer<C> onDisconnected;
+	private volatile BiConsumer<C, Boolean> onWritabilityChanged;
 	private volatile BiConsumer<C, Throwable> onException = (client, cause) -> cause.printStackTrace();
 	
 	/**
@@ -45,7 +67,7 @@ public class Server<C extends ServerClient<D>, D> {
 	 * @param clientSupplier the supplier which creates {@link C} instances
 	 */
 	public Server(DataSerializer<D> serializer, Supplier<C> clientSupplier) {
-		this.serializer = serializer;
+		super(serializer);
 		this.clientSupplier = clientSupplier;
 	}
 	
@@ -80,6 +102,7 @@ public class Server<C extends ServerClient<D>, D> {
 	
 	/**
 	 * Called when data has been received from a client.
+	 * {@link Recyclable} data is recycled after the code returns, unless it has been retained.
 	 *
 	 * @param onReceived the code to execute, can be null
 	 */
@@ -87,6 +110,48 @@ public class Server<C extends ServerClient<D>, D> {
 		this.onReceived = onReceived;
 	}
 	
+	/**
+	 * Called when data of the specified type has been received from a client, instead of the general receive listener.
+	 * The serializer must be a {@link MessageRegistry} and the type must be registered in it.
+	 * The listener is looked up using the type ID the data was received with, which is read from the frame.
+	 * {@link Recyclable} data is recycled after the code returns, unless it has been retained.
+	 *
+	 * @param type the registered type of the data
+	 * @param onReceived the code to execute, can be null
+	 * @param <T> the registered type of the data
+	 * @throws IllegalStateException if the serializer is not a {@link MessageRegistry}
+	 * @throws IllegalArgumentException if the type is not registered
+	 */
+	public <T extends D> void onReceived(Class<T> type, BiConsumer<C, T> onReceived) {
+		setTypedListener(type, onReceived);
+	}
+	
+	/**
+	 * Called when a request has been received from a client, the returned data is sent back as the response.
+	 * If the code throws an exception, the client's request fails with an {@link RpcException}
+	 * and the exception listener is called. Only the messages of thrown {@link RpcException}s are sent to the
+	 * remote side, other exceptions are reported as {@link RpcException#DEFAULT_MESSAGE}. Requests must be enabled using {@link #setRpcEnabled(boolean)}.
+	 *
+	 * @param onRequest the code to execute, which must return a non-null response, can be null
+	 * @see ServerClient#request(Object)
+	 */
+	public void onRequest(BiFunction<C, D, D> onRequest) {
+		this.onRequest = onRequest;
+	}
+	
+	/**
+	 * Called when a stream has started arriving from a client.
+	 * The code must start consuming the stream (possibly on another thread) or cancel it.
+	 * If no listener is set, the received streams are cancelled.
+	 * Streams must be enabled using {@link #enableStreams(int)}.
+	 *
+	 * @param onStream the code to execute, can be null
+	 * @see hu.trigary.simplenetty.client.Client#sendStream(java.io.InputStream)
+	 */
+	public void onStream(BiConsumer<C, ReceivedStream> onStream) {
+		this.onStream = onStream;
+	}
+	
 	/**
 	 * Called when a client has disconnected.
 	 *
@@ -96,6 +161,18 @@ public class Server<C extends ServerClient<D>, D> {
 		this.onDisconnected = onDisconnected;
 	}
 	
+	/**
+	 * Called when a client's channel becomes unwritable or writable again, with its new writability.
+	 * A channel is unwritable while the amount of data waiting to be transmitted to the client
+	 * exceeds the high water mark of the write buffer, eg. because the client is reading slowly.
+	 *
+	 * @param onWritabilityChanged the code to execute, can be null
+	 * @see hu.trigary.simplenetty.transport.SocketOptions#setWriteBufferWaterMark(Integer, Integer)
+	 */
+	public void onWritabilityChanged(BiConsumer<C, Boolean> onWritabilityChanged) {
+		this.onWritabilityChanged = onWritabilityChanged;
+	}
+	
 	/**
 	 * Called when an uncaught exception occurs in the client's pipeline.
 	 *
@@ -107,6 +184,21 @@ public class Server<C extends ServerClient<D>, D> {
 	
 	
 	
+	/**
+	 * Sets an externally owned {@link EventLoopGroup} which should accept the incoming connections,
+	 * allowing multiple servers to share the same thread. By default a new group with a single thread is created.
+	 * Shared groups are never shut down by this library, that is the responsibility of their owner.
+	 * The group must be compatible with the used transport and the change only takes effect the next time the server is started.
+	 *
+	 * @param sharedBossGroup the group to use or null to create and own a new group
+	 * @see #setSharedWorkerGroup(EventLoopGroup)
+	 */
+	public void setSharedBossGroup(EventLoopGroup sharedBossGroup) {
+		this.sharedBossGroup = sharedBossGroup;
+	}
+	
+	
+	
 	/**
 	 * Starts the server synchronously. Once it is completed, the server is ready to receive connections.
 	 *
@@ -116,19 +208,21 @@ public class Server<C extends ServerClient<D>, D> {
 	 * the {@code host} and {@code port} are being bound
 	 */
 	public void start(String host, int port) throws InterruptedException {
+		Transport transport = getTransport();
 		ServerBootstrap bootstrap = new ServerBootstrap();
-		bossGroup = new NioEventLoopGroup();
-		workerGroup = new NioEventLoopGroup();
+		EventLoopGroup sharedBoss = sharedBossGroup;
+		ownsBossGroup = sharedBoss == null;
+		bossGroup = ownsBossGroup ? newEventLoopGroup(1) : sharedBoss;
+		EventLoopGroup sharedWorker = getSharedWorkerGroup();
+		ownsWorkerGroup = sharedWorker == null;
+		workerGroup = ownsWorkerGroup ? newWorkerGroup() : sharedWorker;
 		
 		bootstrap.group(bossGroup, workerGroup)
-				.channel(NioServerSocketChannel.class)
+				.channel(transport.getServerChannelClass())
 				.childHandler(new ChannelInitializer<SocketChannel>() {
 					@Override
 					public void initChannel(SocketChannel channel) {
-						channel.pipeline().addLast(new PacketDecoder<>(serializer),
-								new LengthFieldPrepender(4),
-								new PacketEncoder<>(serializer),
-								new ServerChannelHandler());
+						initPipeline(channel.pipeline(), new ServerChannelHandler());
 						
 						Consumer<SocketChannel> consumer = onChannelInitialized;
 						if (consumer != null) {
@@ -138,6 +232,7 @@ public class Server<C extends ServerClient<D>, D> {
 				})
 				.option(ChannelOption.SO_BACKLOG, 128)
 				.childOption(ChannelOption.SO_KEEPALIVE, true);
+		applySocketOptions(bootstrap);
 		
 		Consumer<ServerBootstrap> consumer = onConfigured;
 		if (consumer != null) {
@@ -145,105 +240,297 @@ public class Server<C extends ServerClient<D>, D> {
 		}
 		
 		ChannelFuture future = host == null ? bootstrap.bind(port) : bootstrap.bind(host, port);
-		future.sync();
+		serverChannel = future.sync().channel();
 	}
 	
 	/**
-	 * Stops the server synchronously, freeing up all resources.
+	 * Stops the server synchronously, closing all connections and freeing up all resources.
+	 * Shared {@link EventLoopGroup}s are not shut down.
 	 *
 	 * @throws InterruptedException if the thread gets interrupted while the {@link EventLoopGroup}s are being shut down
 	 */
 	public void stop() throws InterruptedException {
-		synchronized (clients) {
-			clients.clear();
+		serverChannel.close().sync();
+		List<ChannelFuture> closing = new ArrayList<>();
+		clients.forEach(client -> closing.add(client.getContext().close()));
+		clients.clear();
+		groups.values().forEach(ClientGroup::clear);
+		groups.clear();
+		for (ChannelFuture future : closing) {
+			future.sync();
 		}
-		bossGroup.shutdownGracefully().sync();
-		workerGroup.shutdownGracefully().sync();
+		
+		shutdownIfOwned(bossGroup, ownsBossGroup);
+		shutdownIfOwned(workerGroup, ownsWorkerGroup);
 	}
 	
 	
 	
 	/**
 	 * Send the specified data to the specified clients.
-	 * The data is only serialized once, therefore using this method is better than
-	 * calling {@link ServerClient#send(Object)} on each client.
+	 * The data is only serialized once and the resulting buffer is shared between the recipients,
+	 * therefore using this method is better than calling {@link ServerClient#send(Object)} on each client.
 	 *
 	 * @param data the data to send
 	 * @param clients the recipients
 	 */
 	public void sendTo(D data, Collection<C> clients) {
-		byte[] serialized = serializer.serialize(data);
-		clients.forEach(client -> client.sendRaw(serialized));
+		ByteBuf frame = encodeFrame(data);
+		try {
+			for (C client : clients) {
+				client.sendFrame(frame.retainedDuplicate(), data);
+			}
+		} finally {
+			frame.release();
+		}
 	}
 	
 	/**
 	 * Send the specified data to the specified clients,
 	 * while also closing the connections directly after sending.
-	 * The data is only serialized once, therefore using this method is better than
-	 * calling {@link ServerClient#send(Object)} on each client.
+	 * The data is only serialized once and the resulting buffer is shared between the recipients,
+	 * therefore using this method is better than calling {@link ServerClient#send(Object)} on each client.
 	 *
 	 * @param data the data to send
 	 * @param clients the recipients
 	 */
 	public void sendToAndClose(D data, Collection<C> clients) {
-		byte[] serialized = serializer.serialize(data);
-		clients.forEach(client -> client.sendRawAndClose(serialized));
+		ByteBuf frame = encodeFrame(data);
+		try {
+			for (C client : clients) {
+				client.sendFrameAndClose(frame.retainedDuplicate(), data);
+			}
+		} finally {
+			frame.release();
+		}
 	}
 	
 	/**
 	 * Send the specified data to the specified clients,
 	 * while also executing the specified action directly after sending.
-	 * The data is only serialized once, therefore using this method is better than
-	 * calling {@link ServerClient#send(Object)} on each client.
+	 * The data is only serialized once and the resulting buffer is shared between the recipients,
+	 * therefore using this method is better than calling {@link ServerClient#send(Object)} on each client.
 	 *
 	 * @param data the data to send
 	 * @param clients the recipients
 	 * @param runnable the action to execute
 	 */
 	public void sendToAndThen(D data, Collection<C> clients, Runnable runnable) {
-		byte[] serialized = serializer.serialize(data);
-		clients.forEach(client -> client.sendRawAndThen(serialized, runnable));
+		ByteBuf frame = encodeFrame(data);
+		try {
+			for (C client : clients) {
+				client.sendFrameAndThen(frame.retainedDuplicate(), data, runnable);
+			}
+		} finally {
+			frame.release();
+		}
+	}
+	
+	/**
+	 * Send the specified data to all connected clients.
+	 * The data is only serialized once and the resulting buffer is shared between the recipients.
+	 *
+	 * @param data the data to send
+	 */
+	public void sendToAll(D data) {
+		broadcast(data, clients, NO_CLIENTS);
+	}
+	
+	/**
+	 * Send the specified data to all connected clients, excluding the specified ones.
+	 * The data is only serialized once and the resulting buffer is shared between the recipients.
+	 * Unlike {@link #getAllClientsExcept(Collection)}, this method doesn't copy the connected clients.
+	 * The excluded clients are compared by identity, this method is meant for excluding a few clients (eg. the sender).
+	 *
+	 * @param data the data to send
+	 * @param excluding the clients which shouldn't receive the data
+	 */
+	@SafeVarargs
+	public final void sendToAllExcept(D data, C... excluding) {
+		broadcast(data, clients, excluding);
+	}
+	
+	/**
+	 * Send the specified data to all members of the specified group.
+	 * The data is only serialized once and the resulting buffer is shared between the recipients.
+	 * Nothing is sent if the group doesn't exist.
+	 *
+	 * @param name the name of the group
+	 * @param data the data to send
+	 */
+	public void sendToGroup(String name, D data) {
+		sendToGroupExcept(name, data);
+	}
+	
+	/**
+	 * Send the specified data to all members of the specified group, excluding the specified clients.
+	 * The data is only serialized once and the resulting buffer is shared between the recipients.
+	 * Nothing is sent if the group doesn't exist.
+	 * The excluded clients are compared by identity, this method is meant for excluding a few clients (eg. the sender).
+	 *
+	 * @param name the name of the group
+	 * @param data the data to send
+	 * @param excluding the clients which shouldn't receive the data
+	 */
+	@SafeVarargs
+	public final void sendToGroupExcept(String name, D data, C... excluding) {
+		ClientGroup<C> group = groups.get(name);
+		if (group != null) {
+			broadcast(data, group.getMembers(), excluding);
+		}
+	}
+	
+	
+	
+	/**
+	 * Adds the specified client to the specified group, creating the group if it doesn't exist yet.
+	 * The client is automatically removed from the group when it disconnects.
+	 *
+	 * @param name the name of the group
+	 * @param client the client to add
+	 * @return the group the client was added to
+	 */
+	public ClientGroup<C> joinGroup(String name, C client) {
+		ClientGroup<C> group = groups.computeIfAbsent(name, ClientGroup::new);
+		if (group.add(client)) {
+			client.getGroupSet().add(group);
+			if (client.isDisconnected()) {
+				//the client disconnected concurrently, it might not have been removed from this group
+				leaveGroup(group, client);
+			}
+		}
+		return group;
+	}
+	
+	/**
+	 * Removes the specified client from the specified group.
+	 * Empty groups are not removed automatically, see {@link #removeGroup(String)}.
+	 *
+	 * @param name the name of the group
+	 * @param client the client to remove
+	 * @return true if the client was a member of the group
+	 */
+	public boolean leaveGroup(String name, C client) {
+		ClientGroup<C> group = groups.get(name);
+		return group != null && leaveGroup(group, client);
 	}
 	
+	/**
+	 * Removes the specified group, removing all of its members from it.
+	 *
+	 * @param name the name of the group
+	 */
+	public void removeGroup(String name) {
+		ClientGroup<C> group = groups.remove(name);
+		if (group != null) {
+			group.forEachMember(member -> member.getGroupSet().remove(group));
+			group.clear();
+		}
+	}
 	
+	/**
+	 * Gets the group with the specified name.
+	 *
+	 * @param name the name of the group
+	 * @return the group or null, if it doesn't exist
+	 */
+	public ClientGroup<C> getGroup(String name) {
+		return groups.get(name);
+	}
 	
 	/**
-	 * Gets all connected clients.
+	 * Gets an unmodifiable, live view of all existing groups.
+	 *
+	 * @return a view of all groups
+	 */
+	public Collection<ClientGroup<C>> getGroups() {
+		return groupsView;
+	}
+	
+	
+	
+	private boolean leaveGroup(ClientGroup<C> group, C client) {
+		client.getGroupSet().remove(group);
+		return group.remove(client);
+	}
+	
+	private void broadcast(D data, Iterable<C> recipients, Object[] excluding) {
+		ByteBuf frame = encodeFrame(data);
+		try {
+			for (C client : recipients) {
+				if (!isExcluded(client, excluding)) {
+					client.sendFrame(frame.retainedDuplicate(), data);
+				}
+			}
+		} finally {
+			frame.release();
+		}
+	}
+	
+	private static boolean isExcluded(Object client, Object[] excluding) {
+		for (Object excluded : excluding) {
+			if (client == excluded) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	
+	
+	/**
+	 * Executes the specified action for each connected client, without copying the clients.
+	 * Clients connecting or disconnecting during the iteration may or may not be included.
+	 *
+	 * @param action the action to execute
+	 */
+	public void forEachClient(Consumer<? super C> action) {
+		clients.forEach(action);
+	}
+	
+	/**
+	 * Gets an unmodifiable, live view of the connected clients.
+	 * No copy is made: the view reflects the clients connecting and disconnecting,
+	 * iterating over it is safe even while the clients change.
+	 *
+	 * @return a view of all connected clients
+	 */
+	public Collection<C> getClients() {
+		return clientsView;
+	}
+	
+	/**
+	 * Gets a copy of all connected clients.
+	 * Prefer {@link #getClients()} or {@link #forEachClient(Consumer)} if a copy is not necessary.
 	 *
 	 * @return all connected clients
 	 */
 	public Collection<C> getAllClients() {
-		synchronized (clients) {
-			return new ArrayList<>(clients);
-		}
+		return new ArrayList<>(clients);
 	}
 	
 	/**
-	 * Gets all connected clients, excluding the specified one.
+	 * Gets a copy of all connected clients, excluding the specified one.
+	 * Prefer {@link #sendToAllExcept(Object, ServerClient[])} if the clients are only needed for sending data.
 	 *
 	 * @param excluding the client to exclude
 	 * @return all connected clients, excluding one
 	 */
 	public Collection<C> getAllClientsExcept(C excluding) {
-		Set<C> set;
-		synchronized (clients) {
-			set = new HashSet<>(clients);
-		}
+		Set<C> set = new HashSet<>(clients);
 		set.remove(excluding);
 		return set;
 	}
 	
 	/**
-	 * Gets all connected clients, excluding the specified ones.
+	 * Gets a copy of all connected clients, excluding the specified ones.
+	 * Prefer {@link #sendToAllExcept(Object, ServerClient[])} if the clients are only needed for sending data.
 	 *
 	 * @param excluding the clients to exclude
 	 * @return all connected clients, excluding some
 	 */
 	public Collection<C> getAllClientsExcept(Collection<C> excluding) {
-		Set<C> set;
-		synchronized (clients) {
-			set = new HashSet<>(clients);
-		}
+		Set<C> set = new HashSet<>(clients);
 		set.removeAll(excluding);
 		return set;
 	}
@@ -251,43 +538,160 @@ public class Server<C extends ServerClient<D>, D> {
 	
 	
 	private class ServerChannelHandler extends ChannelInboundHandlerAdapter {
+		private final Executor executor = newConnectionExecutor();
 		private C client;
 		
 		@Override
 		public void channelActive(ChannelHandlerContext context) {
 			client = clientSupplier.get();
 			client.setContext(context);
-			synchronized (clients) {
-				clients.add(client);
-			}
-			Consumer<C> consumer = onConnected;
-			if (consumer != null) {
-				consumer.accept(client);
-			}
+			client.setRpcSession(newRpcSession());
+			clients.add(client);
+			dispatch(() -> {
+				Consumer<C> consumer = onConnected;
+				if (consumer != null) {
+					consumer.accept(client);
+				}
+			});
 		}
 		
 		@Override
 		public void channelRead(ChannelHandlerContext context, Object message) {
-			BiConsumer<C, D> consumer = onReceived;
-			if (consumer != null) {
-				//noinspection unchecked
-				consumer.accept(client, (D) message);
+			if (message instanceof Envelope) {
+				Envelope envelope = (Envelope) message;
+				if (envelope.getKind() == Envelope.REQUEST) {
+					dispatch(() -> respond(envelope));
+				} else {
+					dispatch(() -> client.getRpcSession().complete(envelope));
+				}
+				return;
+			} else if (message instanceof ReceivedStream) {
+				ReceivedStream stream = (ReceivedStream) message;
+				dispatch(() -> receiveStream(stream));
+				return;
+			}
+			
+			if (executor == null) {
+				receive(message);
+			} else {
+				dispatch(() -> receive(message));
 			}
 		}
 		
 		@Override
 		public void channelInactive(ChannelHandlerContext context) {
-			synchronized (clients) {
-				clients.remove(client);
+			if (client == null) {
+				//the connection was closed before it became active, eg. because its initialization failed
+				context.fireChannelInactive();
+				return;
 			}
-			Consumer<C> consumer = onDisconnected;
-			if (consumer != null) {
-				consumer.accept(client);
+			
+			client.setDisconnected();
+			for (ClientGroup<?> group : client.getGroupSet()) {
+				//noinspection unchecked
+				leaveGroup((ClientGroup<C>) group, client);
+			}
+			clients.remove(client);
+			RpcSession<D> session = client.getRpcSession();
+			if (session != null) {
+				session.close();
 			}
+			dispatch(() -> {
+				Consumer<C> consumer = onDisconnected;
+				if (consumer != null) {
+					consumer.accept(client);
+				}
+			});
+		}
+		
+		@Override
+		public void channelWritabilityChanged(ChannelHandlerContext context) {
+			boolean writable = context.channel().isWritable();
+			dispatch(() -> {
+				BiConsumer<C, Boolean> consumer = onWritabilityChanged;
+				if (consumer != null) {
+					consumer.accept(client, writable);
+				}
+			});
 		}
 		
 		@Override
 		public void exceptionCaught(ChannelHandlerContext context, Throwable cause) {
+			dispatch(() -> handleException(cause));
+		}
+		
+		
+		
+		private void dispatch(Runnable callback) {
+			if (executor == null) {
+				callback.run();
+				return;
+			}
+			
+			executor.execute(() -> {
+				try {
+					callback.run();
+				} catch (Throwable cause) {
+					handleException(cause);
+				}
+			});
+		}
+		
+		private void respond(Envelope request) {
+			Envelope response;
+			try {
+				BiFunction<C, D, D> function = onRequest;
+				if (function == null) {
+					response = new Envelope(Envelope.ERROR, request.getId(), "No request handler is set");
+				} else {
+					//noinspection unchecked
+					response = new Envelope(Envelope.RESPONSE, request.getId(), function.apply(client, (D) request.getPayload()));
+				}
+			} catch (Throwable cause) {
+				response = new Envelope(Envelope.ERROR, request.getId(), RpcException.getRemoteMessage(cause));
+				handleException(cause);
+			}
+			client.sendEnvelope(response);
+		}
+		
+		private void receive(Object message) {
+			Object data = message instanceof TypedData ? ((TypedData) message).getData() : message;
+			try {
+				Object listener = getTypedListener(message);
+				//noinspection unchecked
+				BiConsumer<C, D> consumer = listener == null ? onReceived : (BiConsumer<C, D>) listener;
+				if (consumer == null) {
+					return;
+				}
+				
+				EndpointMetrics metrics = getMetrics();
+				long start = metrics == null ? 0 : System.nanoTime();
+				//noinspection unchecked
+				consumer.accept(client, (D) data);
+				if (metrics != null) {
+					metrics.recordHandlerTime(System.nanoTime() - start);
+				}
+			} finally {
+				Recyclable.recycleReceived(data);
+			}
+		}
+		
+		private void receiveStream(ReceivedStream stream) {
+			BiConsumer<C, ReceivedStream> consumer = onStream;
+			if (consumer == null) {
+				stream.cancel();
+				return;
+			}
+			
+			try {
+				consumer.accept(client, stream);
+			} catch (Throwable cause) {
+				stream.cancel();
+				throw cause;
+			}
+		}
+		
+		private void handleException(Throwable cause) {
 			BiConsumer<C, Throwable> consumer = onException;
 			if (consumer != null) {
 				consumer.accept(client, cause);
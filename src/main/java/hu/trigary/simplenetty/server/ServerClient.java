@@ -1,8 +1,29 @@
 package hu.trigary.simplenetty.server;
 
+import hu.trigary.simplenetty.Endpoint;
+import hu.trigary.simplenetty.metrics.ConnectionMetrics;
+import hu.trigary.simplenetty.metrics.MetricsHandler;
+import hu.trigary.simplenetty.pipeline.SlowConsumerHandler;
+import hu.trigary.simplenetty.rpc.RpcSession;
+import hu.trigary.simplenetty.serialization.Envelope;
+import hu.trigary.simplenetty.serialization.FrameDecoder;
+import hu.trigary.simplenetty.stream.StreamHandler;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * A server-side class bound to a client which is connected to the server.
  * This class is expected be extended in order to store state information (eg. client ID) and add more functions.
@@ -10,36 +31,187 @@ import io.netty.channel.ChannelHandlerContext;
  * @param <D> the type of the data being transmitted
  */
 public class ServerClient<D> {
+	private final AtomicInteger batchDepth = new AtomicInteger();
 	private volatile ChannelHandlerContext context;
+	private volatile ChannelHandlerContext frameContext;
+	private volatile SlowConsumerHandler slowConsumerHandler;
+	private volatile StreamHandler streamHandler;
+	private volatile RpcSession<D> rpcSession;
+	private volatile ConnectionMetrics metrics;
+	private final Set<ClientGroup<?>> groups = ConcurrentHashMap.newKeySet();
+	private final Collection<ClientGroup<?>> groupsView = Collections.unmodifiableSet(groups);
+	private volatile boolean disconnected;
 	
 	
 	
 	/**
 	 * Asynchronously sends data to the client.
+	 * The data is flushed immediately, unless this method is called within a {@link #batch(Runnable)}.
 	 *
 	 * @param data the data to send
 	 */
 	public void send(D data) {
-		context.writeAndFlush(data);
+		writeMaybeFlush(data);
+	}
+	
+	/**
+	 * Asynchronously sends data to the client, but only if its channel is writable.
+	 * The data is flushed immediately, unless this method is called within a {@link #batch(Runnable)}.
+	 *
+	 * @param data the data to send
+	 * @return true if the data is being sent, false if the channel isn't writable
+	 * @see #isWritable()
+	 */
+	public boolean trySend(D data) {
+		if (!context.channel().isWritable()) {
+			return false;
+		}
+		writeMaybeFlush(data);
+		return true;
 	}
 	
 	/**
 	 * Asynchronously sends data to the client and closes the connection as soon as the transmission is done.
+	 * The data is flushed immediately, unless this method is called within a {@link #batch(Runnable)}.
 	 *
 	 * @param data the data to send
 	 */
 	public void sendAndClose(D data) {
-		context.writeAndFlush(data).addListener(ChannelFutureListener.CLOSE);
+		writeMaybeFlush(data).addListener(ChannelFutureListener.CLOSE);
 	}
 	
 	/**
 	 * Asynchronously sends data to the client and executes the specified action as soon as the transmission is done.
+	 * The data is flushed immediately, unless this method is called within a {@link #batch(Runnable)}.
 	 *
 	 * @param data the data to send
 	 * @param runnable the action to execute
 	 */
 	public void sendAndThen(D data, Runnable runnable) {
-		context.writeAndFlush(data).addListener((ChannelFutureListener) runnable);
+		writeMaybeFlush(data).addListener(future -> runnable.run());
+	}
+	
+	/**
+	 * Asynchronously sends a request to the client and returns the future of its response,
+	 * which is produced by the client's request listener. Any amount of requests can be pending at the same time.
+	 * The request fails if no response arrives within the server's request timeout.
+	 * Requests must be enabled using {@link Server#setRpcEnabled(boolean)}.
+	 *
+	 * @param data the data to send
+	 * @return the future of the response
+	 * @see RpcSession#request(Object, long, java.util.function.Function)
+	 */
+	public CompletableFuture<D> request(D data) {
+		return request(data, getRpcSessionOrThrow().getDefaultTimeoutMillis());
+	}
+	
+	/**
+	 * Asynchronously sends a request to the client and returns the future of its response,
+	 * which is produced by the client's request listener. Any amount of requests can be pending at the same time.
+	 * Requests must be enabled using {@link Server#setRpcEnabled(boolean)}.
+	 *
+	 * @param data the data to send
+	 * @param timeoutMillis the time in milliseconds after which the request fails if no response has arrived
+	 * @return the future of the response
+	 * @see RpcSession#request(Object, long, java.util.function.Function)
+	 */
+	public CompletableFuture<D> request(D data, long timeoutMillis) {
+		return getRpcSessionOrThrow().request(data, timeoutMillis, this::writeMaybeFlush);
+	}
+	
+	/**
+	 * Asynchronously sends the contents of the specified source to the client as a stream,
+	 * which is received by the client's stream listener. The source is read in chunks by a shared pool of
+	 * daemon threads, therefore it may block, the chunks are interleaved with the other sent data.
+	 * Streams must be enabled using {@link Server#enableStreams(int)}.
+	 *
+	 * @param source the data to send, which is closed once it has been sent
+	 * @return the future which completes once the whole stream has been written
+	 * @throws IllegalStateException if streams are disabled
+	 * @see StreamHandler#send(InputStream)
+	 */
+	public CompletableFuture<Void> sendStream(InputStream source) {
+		return getStreamHandlerOrThrow().send(source);
+	}
+	
+	/**
+	 * Asynchronously sends the contents of the specified source to the client as a stream,
+	 * just like {@link #sendStream(InputStream)}, but the source is read on the specified executor,
+	 * which mustn't execute the tasks on the I/O thread of the connection.
+	 *
+	 * @param source the data to send, which is closed once it has been sent
+	 * @param reader the executor which reads the source
+	 * @return the future which completes once the whole stream has been written
+	 * @throws IllegalStateException if streams are disabled
+	 * @see StreamHandler#send(InputStream, Executor)
+	 */
+	public CompletableFuture<Void> sendStream(InputStream source, Executor reader) {
+		return getStreamHandlerOrThrow().send(source, reader);
+	}
+	
+	/**
+	 * Asynchronously sends the specified range of a file to the client as a stream,
+	 * which is received by the client's stream listener, eg. using
+	 * {@link hu.trigary.simplenetty.stream.ReceivedStream#transferTo(Path)}.
+	 * Unless SSL is used, the file is sent without copying its contents into the memory of the JVM.
+	 * Streams must be enabled using {@link Server#enableStreams(int)}.
+	 *
+	 * @param path the file to send
+	 * @param offset the index of the first byte to send
+	 * @param length the amount of bytes to send
+	 * @return the future which completes once the whole range has been written
+	 * @throws IOException if the file can't be opened
+	 * @throws IllegalStateException if streams are disabled
+	 * @see StreamHandler#sendFile(Path, long, long)
+	 */
+	public CompletableFuture<Void> sendFile(Path path, long offset, long length) throws IOException {
+		return getStreamHandlerOrThrow().sendFile(path, offset, length);
+	}
+	
+	/**
+	 * Asynchronously queues data to be sent to the client without flushing it.
+	 * The data is only transmitted once {@link #flush()} is called.
+	 *
+	 * @param data the data to queue
+	 */
+	public void write(D data) {
+		write(context, data, false);
+	}
+	
+	/**
+	 * Gets whether the amount of data waiting to be transmitted to the client is below the high water mark.
+	 *
+	 * @return true if the channel is writable
+	 * @see Server#onWritabilityChanged(java.util.function.BiConsumer)
+	 */
+	public boolean isWritable() {
+		return context.channel().isWritable();
+	}
+	
+	/**
+	 * Asynchronously flushes all data which has been queued to be sent to the client.
+	 */
+	public void flush() {
+		context.flush();
+	}
+	
+	/**
+	 * Executes the specified actions in a batch: data sent to this client during the batch
+	 * is not flushed separately, but all at once after the actions have been executed.
+	 * Batches can be nested, in which case only the outermost batch flushes.
+	 * Data sent from other threads while a batch is in progress is also flushed at the end of the batch.
+	 *
+	 * @param actions the actions which send the data
+	 */
+	public void batch(Runnable actions) {
+		batchDepth.incrementAndGet();
+		try {
+			actions.run();
+		} finally {
+			if (batchDepth.decrementAndGet() == 0) {
+				flush();
+			}
+		}
 	}
 	
 	
@@ -51,6 +223,41 @@ public class ServerClient<D> {
 		context.close();
 	}
 	
+	/**
+	 * Gets an unmodifiable, live view of the groups this client is a member of.
+	 *
+	 * @return a view of the groups of this client
+	 * @see Server#joinGroup(String, ServerClient)
+	 */
+	public Collection<ClientGroup<?>> getGroups() {
+		return groupsView;
+	}
+	
+	/**
+	 * Gets the amount of inbound bytes which are buffered, because they are part of a frame which hasn't been fully received yet.
+	 * The returned value is only an estimate, since the buffer is modified by another thread.
+	 *
+	 * @return the amount of buffered inbound bytes or 0, if the client is no longer connected
+	 */
+	public int getBufferedInboundBytes() {
+		ChannelHandlerContext current = context;
+		if (current == null) {
+			return 0;
+		}
+		FrameDecoder decoder = (FrameDecoder) current.pipeline().get(Endpoint.FRAME_DECODER);
+		return decoder == null ? 0 : decoder.getBufferedBytes();
+	}
+	
+	/**
+	 * Gets the metrics of this client's connection.
+	 *
+	 * @return the metrics or null, if collecting metrics was disabled when the client connected
+	 * @see Server#enableMetrics()
+	 */
+	public ConnectionMetrics getMetrics() {
+		return metrics;
+	}
+	
 	/**
 	 * Returns the connection channel's context, allowing direct interaction with Netty.
 	 * Null is returned in case the client is no longer connected.
@@ -65,19 +272,92 @@ public class ServerClient<D> {
 	
 	void setContext(ChannelHandlerContext context) {
 		this.context = context;
+		boolean containers = context.pipeline().get(Endpoint.CONTAINER) != null;
+		frameContext = context.pipeline().context(containers ? Endpoint.PACKET_ENCODER : Endpoint.FRAME_ENCODER);
+		slowConsumerHandler = (SlowConsumerHandler) context.pipeline().get(Endpoint.SLOW_CONSUMER);
+		streamHandler = (StreamHandler) context.pipeline().get(Endpoint.STREAM);
+		MetricsHandler metricsHandler = (MetricsHandler) context.pipeline().get(Endpoint.METRICS);
+		metrics = metricsHandler == null ? null : metricsHandler.getMetrics();
+	}
+	
+	void setRpcSession(RpcSession<D> rpcSession) {
+		this.rpcSession = rpcSession;
+	}
+	
+	RpcSession<D> getRpcSession() {
+		return rpcSession;
+	}
+	
+	void sendEnvelope(Envelope envelope) {
+		writeMaybeFlush(envelope);
+	}
+	
+	Set<ClientGroup<?>> getGroupSet() {
+		return groups;
+	}
+	
+	boolean isDisconnected() {
+		return disconnected;
+	}
+	
+	void setDisconnected() {
+		disconnected = true;
+	}
+	
+	//frames already contain the serialized data and its length, therefore they are written using the
+	//frame encoder's context: this way they only pass through the handlers preceding it (eg. SSL)
+	//if container frames are enabled, they only contain the serialized data and are written using the packet encoder's context
+	void sendFrame(ByteBuf frame, D data) {
+		writeFrame(frame, data);
+	}
+	
+	void sendFrameAndClose(ByteBuf frame, D data) {
+		writeFrame(frame, data).addListener(ChannelFutureListener.CLOSE);
+	}
+	
+	void sendFrameAndThen(ByteBuf frame, D data, Runnable runnable) {
+		writeFrame(frame, data).addListener(future -> runnable.run());
+	}
+	
+	
+	
+	private RpcSession<D> getRpcSessionOrThrow() {
+		RpcSession<D> session = rpcSession;
+		if (session == null) {
+			throw new IllegalStateException("Requests are not enabled");
+		}
+		return session;
+	}
+	
+	private StreamHandler getStreamHandlerOrThrow() {
+		StreamHandler handler = streamHandler;
+		if (handler == null) {
+			throw new IllegalStateException("Streams are not enabled");
+		}
+		return handler;
+	}
+	
+	private ChannelFuture writeFrame(ByteBuf frame, D data) {
+		ConnectionMetrics current = metrics;
+		if (current != null) {
+			current.recordSent(data, -1);
+		}
+		return writeMaybeFlush(frameContext, frame);
 	}
 	
-	void sendRaw(byte[] data) {
-		context.writeAndFlush(context.alloc().buffer().writeBytes(data));
+	private ChannelFuture writeMaybeFlush(Object message) {
+		return writeMaybeFlush(context, message);
 	}
 	
-	void sendRawAndClose(byte[] data) {
-		context.writeAndFlush(context.alloc().buffer().writeBytes(data))
-				.addListener(ChannelFutureListener.CLOSE);
+	private ChannelFuture writeMaybeFlush(ChannelHandlerContext context, Object message) {
+		return write(context, message, batchDepth.get() == 0);
 	}
 	
-	void sendRawAndThen(byte[] data, Runnable runnable) {
-		context.writeAndFlush(context.alloc().buffer().writeBytes(data))
-				.addListener((ChannelFutureListener) runnable);
+	private ChannelFuture write(ChannelHandlerContext context, Object message, boolean flush) {
+		SlowConsumerHandler handler = slowConsumerHandler;
+		if (handler != null) {
+			return handler.write(context, message, flush);
+		}
+		return flush ? context.writeAndFlush(message) : context.write(message);
 	}
 }
@@ -0,0 +1,399 @@
+package hu.trigary.simplenetty.stream;
+
+import io.netty.buffer.ByteBuf;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A stream of bytes which is being received, chunk by chunk, through a connection.
+ * It has to be consumed in one of two ways: either by reading its {@link #getInputStream()}
+ * on a thread other than the I/O thread of the connection, or by setting a {@link StreamListener},
+ * which is called on the I/O thread. Until either of these happens, the chunks are buffered.
+ * <p>
+ * The sender may only send as many bytes as the receiver's stream window allows: the receiver grants more
+ * once the buffered bytes have been consumed, therefore the memory used by a stream is bounded,
+ * regardless of its size. Unwanted streams should be {@link #cancel()}-ed, otherwise they stall
+ * once the window is full, while still taking up the memory of the window.
+ */
+public final class ReceivedStream {
+	private final Queue<ByteBuf> chunks = new ArrayDeque<>();
+	private final StreamHandler handler;
+	private final int id;
+	private final int window;
+	private StreamListener listener;
+	private ChunkInputStream inputStream;
+	private int bufferedBytes;
+	private int unacknowledgedBytes;
+	private long receivedBytes;
+	private boolean ended;
+	private boolean cancelled;
+	private boolean listenerDone;
+	private Throwable failure;
+	
+	ReceivedStream(StreamHandler handler, int id, int window) {
+		this.handler = handler;
+		this.id = id;
+		this.window = window;
+	}
+	
+	
+	
+	/**
+	 * Gets the identifier of this stream, which is unique among the streams sent through the same connection.
+	 *
+	 * @return the identifier of this stream
+	 */
+	public int getId() {
+		return id;
+	}
+	
+	/**
+	 * Gets the amount of bytes which have been received so far.
+	 *
+	 * @return the amount of received bytes
+	 */
+	public synchronized long getReceivedBytes() {
+		return receivedBytes;
+	}
+	
+	/**
+	 * Gets whether the stream has been fully received.
+	 * The received bytes might not have been consumed yet.
+	 *
+	 * @return true if the end of the stream has been received
+	 */
+	public synchronized boolean isEnded() {
+		return ended;
+	}
+	
+	/**
+	 * Gets the blocking input stream which reads the contents of this stream.
+	 * Reading it blocks until data arrives, therefore it mustn't be read on the I/O thread of the connection.
+	 * Closing it before the end of the stream has been reached cancels this stream.
+	 *
+	 * @return the input stream which reads this stream
+	 * @throws IllegalStateException if this stream is being consumed by a {@link StreamListener}
+	 */
+	public synchronized InputStream getInputStream() {
+		if (listener != null) {
+			throw new IllegalStateException("The stream is already being consumed by a listener");
+		}
+		if (inputStream == null) {
+			inputStream = new ChunkInputStream();
+		}
+		return inputStream;
+	}
+	
+	/**
+	 * Sets the listener which consumes this stream. The chunks which have already been received
+	 * are passed to it right away, on the I/O thread of the connection.
+	 * If the listener throws an exception, this stream is cancelled
+	 * and the exception is passed on to the exception listener of the endpoint.
+	 *
+	 * @param listener the listener which consumes this stream
+	 * @throws IllegalStateException if this stream is already being consumed
+	 */
+	public void setListener(StreamListener listener) {
+		synchronized (this) {
+			if (inputStream != null || this.listener != null) {
+				throw new IllegalStateException("The stream is already being consumed");
+			}
+			this.listener = listener;
+		}
+		handler.execute(this::deliver);
+	}
+	
+	/**
+	 * Writes the contents of this stream into the specified file, which is created or truncated.
+	 * The chunks are written directly from the received buffers by a {@link StreamListener},
+	 * therefore the file is written on the I/O thread of the connection.
+	 * If the file can't be written, this stream is cancelled.
+	 *
+	 * @param path the file to write
+	 * @return the future which completes once the whole stream has been written and the file has been closed,
+	 * or fails if the file can't be written, the stream fails or it is cancelled
+	 * @throws IOException if the file can't be opened
+	 * @throws IllegalStateException if this stream is already being consumed
+	 */
+	public CompletableFuture<Void> transferTo(Path path) throws IOException {
+		FileChannel file = FileChannel.open(path, StandardOpenOption.WRITE,
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+		FileListener listener = new FileListener(file);
+		try {
+			setListener(listener);
+		} catch (IllegalStateException e) {
+			file.close();
+			throw e;
+		}
+		return listener.future;
+	}
+	
+	/**
+	 * Stops receiving this stream: the sender is notified and the buffered chunks are released.
+	 * If this stream is being consumed by a {@link StreamListener}, its {@link StreamListener#onCancel()}
+	 * is called on the I/O thread of the connection.
+	 * Does nothing if the stream has already been cancelled or it has failed.
+	 */
+	public void cancel() {
+		boolean notifySender;
+		boolean notifyListener;
+		synchronized (this) {
+			if (cancelled) {
+				return;
+			}
+			cancelled = true;
+			releaseChunks();
+			notifyAll();
+			notifySender = !ended && failure == null;
+			notifyListener = listener != null && !listenerDone;
+		}
+		if (notifySender) {
+			handler.cancel(this);
+		}
+		if (notifyListener) {
+			handler.execute(this::deliver);
+		}
+	}
+	
+	
+	
+	boolean onData(ByteBuf chunk) {
+		synchronized (this) {
+			if (cancelled || failure != null) {
+				chunk.release();
+				return true;
+			}
+			
+			bufferedBytes += chunk.readableBytes();
+			receivedBytes += chunk.readableBytes();
+			if (bufferedBytes > window) {
+				chunk.release();
+				return false;
+			}
+			chunks.add(chunk);
+			notifyAll();
+		}
+		deliver();
+		return true;
+	}
+	
+	void onEnd() {
+		synchronized (this) {
+			ended = true;
+			notifyAll();
+		}
+		deliver();
+	}
+	
+	void onFailure(Throwable cause) {
+		synchronized (this) {
+			if (cancelled || failure != null || ended) {
+				return;
+			}
+			failure = cause;
+			releaseChunks();
+			notifyAll();
+		}
+		deliver();
+	}
+	
+	
+	
+	private void deliver() {
+		while (true) {
+			StreamListener current;
+			ByteBuf chunk;
+			Throwable cause;
+			boolean finished;
+			boolean stopped;
+			synchronized (this) {
+				current = listener;
+				if (current == null || listenerDone) {
+					return;
+				}
+				
+				chunk = chunks.poll();
+				cause = failure;
+				finished = ended && !cancelled;
+				stopped = cancelled;
+				if (chunk == null && (cancelled || cause != null || ended)) {
+					listenerDone = true;
+				} else if (chunk == null) {
+					return;
+				}
+			}
+			
+			if (chunk == null) {
+				if (cause != null) {
+					current.onError(cause);
+				} else if (finished) {
+					current.onEnd();
+				} else if (stopped) {
+					current.onCancel();
+				}
+				return;
+			}
+			
+			int length = chunk.readableBytes();
+			try {
+				current.onChunk(chunk);
+			} catch (Throwable t) {
+				cancel();
+				handler.fireException(t);
+				return;
+			} finally {
+				chunk.release();
+			}
+			consumed(length);
+		}
+	}
+	
+	private void consumed(int length) {
+		int credit;
+		synchronized (this) {
+			bufferedBytes -= length;
+			unacknowledgedBytes += length;
+			if (unacknowledgedBytes < window / 2 || ended || cancelled || failure != null) {
+				return;
+			}
+			credit = unacknowledgedBytes;
+			unacknowledgedBytes = 0;
+		}
+		handler.grantCredit(this, credit);
+	}
+	
+	private void releaseChunks() {
+		ByteBuf chunk;
+		while ((chunk = chunks.poll()) != null) {
+			chunk.release();
+		}
+		bufferedBytes = 0;
+	}
+	
+	
+	
+	private class FileListener implements StreamListener {
+		final CompletableFuture<Void> future = new CompletableFuture<>();
+		private final FileChannel file;
+		
+		FileListener(FileChannel file) {
+			this.file = file;
+		}
+		
+		@Override
+		public void onChunk(ByteBuf chunk) {
+			if (future.isDone()) {
+				return;
+			}
+			
+			try {
+				while (chunk.isReadable()) {
+					chunk.readBytes(file, chunk.readableBytes());
+				}
+			} catch (IOException e) {
+				close(e);
+				cancel();
+			}
+		}
+		
+		@Override
+		public void onEnd() {
+			close(null);
+		}
+		
+		@Override
+		public void onError(Throwable cause) {
+			close(cause);
+		}
+		
+		@Override
+		public void onCancel() {
+			close(new CancellationException("The stream has been cancelled"));
+		}
+		
+		private void close(Throwable cause) {
+			try {
+				file.close();
+			} catch (IOException e) {
+				if (cause == null) {
+					cause = e;
+				}
+			}
+			
+			if (cause == null) {
+				future.complete(null);
+			} else {
+				future.completeExceptionally(cause);
+			}
+		}
+	}
+	
+	private class ChunkInputStream extends InputStream {
+		@Override
+		public int read() throws IOException {
+			byte[] buffer = new byte[1];
+			return read(buffer, 0, 1) < 0 ? -1 : buffer[0] & 0xFF;
+		}
+		
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException {
+			if (length == 0) {
+				return 0;
+			}
+			
+			int read;
+			synchronized (ReceivedStream.this) {
+				ByteBuf chunk;
+				while ((chunk = chunks.peek()) == null) {
+					if (failure != null) {
+						throw new IOException("The stream has failed", failure);
+					} else if (cancelled) {
+						throw new IOException("The stream has been cancelled");
+					} else if (ended) {
+						return -1;
+					} else if (handler.inEventLoop()) {
+						throw new IllegalStateException("The stream mustn't be read on the I/O thread of its connection");
+					}
+					
+					try {
+						ReceivedStream.this.wait();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new InterruptedIOException("Interrupted while waiting for the stream's data");
+					}
+				}
+				
+				read = Math.min(length, chunk.readableBytes());
+				chunk.readBytes(buffer, offset, read);
+				if (!chunk.isReadable()) {
+					chunks.poll();
+					chunk.release();
+				}
+			}
+			consumed(read);
+			return read;
+		}
+		
+		@Override
+		public int available() {
+			synchronized (ReceivedStream.this) {
+				ByteBuf chunk = chunks.peek();
+				return chunk == null ? 0 : chunk.readableBytes();
+			}
+		}
+		
+		@Override
+		public void close() {
+			cancel();
+		}
+	}
+}
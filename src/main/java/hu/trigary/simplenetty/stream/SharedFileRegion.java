@@ -0,0 +1,24 @@
+package hu.trigary.simplenetty.stream;
+
+import io.netty.channel.DefaultFileRegion;
+
+import java.nio.channels.FileChannel;
+
+/**
+ * A chunk of a file which is being sent as a stream. All chunks of the stream share the same file channel,
+ * therefore unlike {@link DefaultFileRegion}, releasing a chunk doesn't close the channel:
+ * the stream closes it once its last chunk has been written.
+ * Since it is still a {@link DefaultFileRegion}, the native transports transfer it using sendfile.
+ */
+class SharedFileRegion extends DefaultFileRegion {
+	SharedFileRegion(FileChannel file, long position, long count) {
+		super(file, position, count);
+	}
+	
+	
+	
+	@Override
+	protected void deallocate() {
+		
+	}
+}
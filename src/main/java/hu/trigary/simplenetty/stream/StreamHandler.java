@@ -0,0 +1,557 @@
+package hu.trigary.simplenetty.stream;
+
+import hu.trigary.simplenetty.serialization.Compression;
+import hu.trigary.simplenetty.serialization.CompressionCodec;
+import hu.trigary.simplenetty.serialization.ContainerCodec;
+import hu.trigary.simplenetty.serialization.Envelope;
+import hu.trigary.simplenetty.serialization.FrameEncoder;
+import hu.trigary.simplenetty.serialization.FrameFormat;
+import hu.trigary.simplenetty.serialization.VarInts;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.FileRegion;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Sends and receives streams: payloads of any size, which are split into chunks and sent as separate frames,
+ * interleaved with the other messages of the connection, this way they never have to be fully buffered.
+ * The frames start with one of the stream {@link Envelope} kinds (eg. {@link Envelope#STREAM_DATA}),
+ * followed by the varint identifier of the stream.
+ * <p>
+ * The streams are flow controlled one by one: the sender may send {@link #INITIAL_WINDOW} bytes of a stream
+ * up front and the receiver grants more (up to its own window size) as it consumes the received chunks.
+ * The sender also stops while the channel isn't writable. Each chunk is written in a separate task,
+ * so the chunks of concurrent streams and the other messages of the connection are interleaved.
+ * Input stream sources are read one chunk at a time on a separate executor, only the read chunks are written
+ * on the I/O thread, therefore slow sources (eg. pipes) don't stall the other streams and messages of the connection.
+ * Files are sent as {@link FileRegion}s below the frame encoder, unless the pipeline contains an {@link SslHandler}.
+ * If container frames are used, the pending container is flushed before each region, keeping the order of the writes.
+ * <p>
+ * Received streams are passed on as {@link ReceivedStream} messages when their first frame arrives.
+ * This handler must be placed before the packet decoder and the packet encoder.
+ */
+public class StreamHandler extends ChannelDuplexHandler {
+	/**
+	 * The maximum amount of bytes sent in a single frame.
+	 */
+	public static final int CHUNK_SIZE = 16 * 1024;
+	
+	/**
+	 * The amount of bytes a stream may send before the receiver grants more.
+	 * This is also the minimum window size.
+	 */
+	public static final int INITIAL_WINDOW = 64 * 1024;
+	
+	private static final Executor READER = Executors.newCachedThreadPool(
+			new DefaultThreadFactory("simplenetty-stream-reader", true));
+	private final Map<Integer, OutboundStream> outbound = new LinkedHashMap<>();
+	private final Map<Integer, ReceivedStream> inbound = new HashMap<>();
+	private final int window;
+	private ChannelHandlerContext context;
+	private int nextId;
+	private int lastInboundId = -1;
+	private boolean inactive;
+	private boolean pumpScheduled;
+	
+	/**
+	 * Creates a new instance with the specified settings.
+	 *
+	 * @param window the maximum amount of bytes a received stream may buffer
+	 */
+	public StreamHandler(int window) {
+		if (window < INITIAL_WINDOW) {
+			throw new IllegalArgumentException("The stream window must be at least " + INITIAL_WINDOW + " bytes");
+		}
+		this.window = window;
+	}
+	
+	
+	
+	/**
+	 * Starts sending the contents of the specified source as a new stream.
+	 * The source is read by a shared pool of daemon threads, therefore it may block.
+	 * The source is closed once it has been fully sent or the stream has failed.
+	 *
+	 * @param source the data to send
+	 * @return the future which completes once the end of the stream has been written,
+	 * or fails if the source throws, the receiver cancels the stream or the connection is closed
+	 * @see #send(InputStream, Executor)
+	 */
+	public CompletableFuture<Void> send(InputStream source) {
+		return send(source, READER);
+	}
+	
+	/**
+	 * Starts sending the contents of the specified source as a new stream.
+	 * The source is read on the specified executor, one chunk at a time, the chunks are written on the I/O thread.
+	 * The executor mustn't execute the tasks on the I/O thread of the connection.
+	 * The source is closed once it has been fully sent or the stream has failed.
+	 *
+	 * @param source the data to send
+	 * @param reader the executor which reads the source
+	 * @return the future which completes once the end of the stream has been written,
+	 * or fails if the source throws, the receiver cancels the stream or the connection is closed
+	 */
+	public CompletableFuture<Void> send(InputStream source, Executor reader) {
+		OutboundStream stream = new OutboundStream(source, reader, null, 0, 0);
+		execute(() -> start(stream));
+		return stream.future;
+	}
+	
+	/**
+	 * Starts sending the specified range of a file as a new stream, which is received the same way as other streams.
+	 * If the pipeline doesn't contain an {@link SslHandler}, the chunks of the file are written as
+	 * {@link FileRegion}s, which the transport sends without copying them into the memory of the JVM (using sendfile).
+	 * Otherwise the chunks are read into direct buffers, which then get encrypted.
+	 * The contents of the file are never compressed. The file is closed once it has been sent or the stream has failed.
+	 *
+	 * @param path the file to send
+	 * @param offset the index of the first byte to send
+	 * @param length the amount of bytes to send
+	 * @return the future which completes once the end of the stream has been written,
+	 * or fails if the file can't be read, the receiver cancels the stream or the connection is closed
+	 * @throws IOException if the file can't be opened
+	 * @throws IllegalArgumentException if the range is not inside the file
+	 */
+	public CompletableFuture<Void> sendFile(Path path, long offset, long length) throws IOException {
+		if (offset < 0 || length < 0) {
+			throw new IllegalArgumentException("The offset and the length mustn't be negative");
+		}
+		
+		FileChannel file = FileChannel.open(path, StandardOpenOption.READ);
+		try {
+			if (offset + length > file.size()) {
+				throw new IllegalArgumentException("The range exceeds the size of the file: " + file.size());
+			}
+		} catch (Throwable t) {
+			closeQuietly(file);
+			throw t;
+		}
+		
+		OutboundStream stream = new OutboundStream(null, null, file, offset, length);
+		execute(() -> start(stream));
+		return stream.future;
+	}
+	
+	/**
+	 * Gets the amount of streams which are currently being sent.
+	 * Must be called on the I/O thread of the connection.
+	 *
+	 * @return the amount of outbound streams
+	 */
+	public int getOutboundCount() {
+		return outbound.size();
+	}
+	
+	/**
+	 * Gets the amount of streams which are currently being received.
+	 * Must be called on the I/O thread of the connection.
+	 *
+	 * @return the amount of inbound streams
+	 */
+	public int getInboundCount() {
+		return inbound.size();
+	}
+	
+	
+	
+	@Override
+	public void handlerAdded(ChannelHandlerContext context) {
+		this.context = context;
+	}
+	
+	@Override
+	public void channelRead(ChannelHandlerContext context, Object message) {
+		if (!(message instanceof ByteBuf)) {
+			context.fireChannelRead(message);
+			return;
+		}
+		
+		ByteBuf frame = (ByteBuf) message;
+		byte kind = frame.isReadable() ? frame.getByte(frame.readerIndex()) : Envelope.MESSAGE;
+		if (kind < Envelope.STREAM_DATA || kind > Envelope.STREAM_CANCEL) {
+			context.fireChannelRead(message);
+			return;
+		}
+		
+		try {
+			frame.skipBytes(1);
+			handle(kind, VarInts.read(frame), frame);
+		} finally {
+			frame.release();
+		}
+	}
+	
+	@Override
+	public void channelWritabilityChanged(ChannelHandlerContext context) {
+		if (context.channel().isWritable()) {
+			schedulePump();
+		}
+		context.fireChannelWritabilityChanged();
+	}
+	
+	@Override
+	public void channelInactive(ChannelHandlerContext context) {
+		inactive = true;
+		for (OutboundStream stream : outbound.values()) {
+			closeSource(stream);
+			stream.future.completeExceptionally(new ClosedChannelException());
+		}
+		outbound.clear();
+		for (ReceivedStream stream : inbound.values()) {
+			stream.onFailure(new ClosedChannelException());
+		}
+		inbound.clear();
+		context.fireChannelInactive();
+	}
+	
+	
+	
+	void execute(Runnable task) {
+		if (context.executor().inEventLoop()) {
+			task.run();
+		} else {
+			context.executor().execute(task);
+		}
+	}
+	
+	boolean inEventLoop() {
+		return context.executor().inEventLoop();
+	}
+	
+	void grantCredit(ReceivedStream stream, int credit) {
+		execute(() -> {
+			if (inbound.get(stream.getId()) == stream) {
+				ByteBuf frame = newFrame(Envelope.STREAM_CREDIT, stream.getId(), VarInts.MAX_INT_SIZE);
+				VarInts.write(frame, credit);
+				context.writeAndFlush(frame, context.voidPromise());
+			}
+		});
+	}
+	
+	void cancel(ReceivedStream stream) {
+		execute(() -> {
+			if (inbound.remove(stream.getId()) == stream) {
+				context.writeAndFlush(newFrame(Envelope.STREAM_CANCEL, stream.getId(), 0), context.voidPromise());
+			}
+		});
+	}
+	
+	void fireException(Throwable cause) {
+		execute(() -> context.fireExceptionCaught(cause));
+	}
+	
+	
+	
+	private void handle(byte kind, int id, ByteBuf frame) {
+		if (kind == Envelope.STREAM_DATA) {
+			ReceivedStream stream = getOrOpen(id);
+			if (stream != null && !stream.onData(frame.retainedSlice())) {
+				inbound.remove(id);
+				stream.onFailure(new IOException("The sender exceeded the stream window"));
+				context.writeAndFlush(newFrame(Envelope.STREAM_CANCEL, id, 0), context.voidPromise());
+			}
+		} else if (kind == Envelope.STREAM_END) {
+			ReceivedStream stream = getOrOpen(id);
+			if (stream != null) {
+				inbound.remove(id);
+				stream.onEnd();
+			}
+		} else if (kind == Envelope.STREAM_ABORT) {
+			ReceivedStream stream = inbound.remove(id);
+			if (stream != null) {
+				stream.onFailure(new IOException("The stream was aborted by its sender"));
+			}
+		} else if (kind == Envelope.STREAM_CREDIT) {
+			int credit = VarInts.read(frame);
+			OutboundStream stream = outbound.get(id);
+			if (stream != null && credit > 0) {
+				stream.credit = (int) Math.min(Integer.MAX_VALUE, (long) stream.credit + credit);
+				schedulePump();
+			}
+		} else {
+			OutboundStream stream = outbound.remove(id);
+			if (stream != null) {
+				closeSource(stream);
+				stream.future.completeExceptionally(new IOException("The stream was cancelled by its receiver"));
+			}
+		}
+	}
+	
+	private ReceivedStream getOrOpen(int id) {
+		ReceivedStream stream = inbound.get(id);
+		if (stream != null || id <= lastInboundId) {
+			//the frames of cancelled streams which were sent before the cancellation arrived are ignored
+			return stream;
+		}
+		
+		lastInboundId = id;
+		stream = new ReceivedStream(this, id, window);
+		inbound.put(id, stream);
+		if (window > INITIAL_WINDOW) {
+			ByteBuf frame = newFrame(Envelope.STREAM_CREDIT, id, VarInts.MAX_INT_SIZE);
+			VarInts.write(frame, window - INITIAL_WINDOW);
+			context.writeAndFlush(frame, context.voidPromise());
+		}
+		context.fireChannelRead(stream);
+		return stream;
+	}
+	
+	private void start(OutboundStream stream) {
+		if (inactive) {
+			closeSource(stream);
+			stream.future.completeExceptionally(new ClosedChannelException());
+			return;
+		}
+		
+		if (stream.file != null) {
+			ChannelPipeline pipeline = context.pipeline();
+			if (pipeline.get(SslHandler.class) == null) {
+				//the regions are written below the frame encoder, only the SSL handler would need their contents
+				stream.frameContext = pipeline.context(FrameEncoder.class);
+			}
+			if (stream.frameContext != null) {
+				stream.frameFormat = ((FrameEncoder) stream.frameContext.handler()).getFormat();
+				stream.compressed = pipeline.get(CompressionCodec.class) != null;
+				stream.contained = pipeline.get(ContainerCodec.class) != null;
+			}
+		}
+		
+		stream.id = nextId++;
+		outbound.put(stream.id, stream);
+		pump();
+	}
+	
+	private void schedulePump() {
+		if (!pumpScheduled) {
+			pumpScheduled = true;
+			context.executor().execute(this::pump);
+		}
+	}
+	
+	private void pump() {
+		pumpScheduled = false;
+		boolean wrote = false;
+		for (OutboundStream stream : new ArrayList<>(outbound.values())) {
+			if (!context.channel().isWritable()) {
+				break;
+			} else if (stream.credit <= 0 || stream.reading) {
+				continue;
+			}
+			
+			if (stream.input == null) {
+				writeFileChunk(stream);
+				wrote = true;
+			} else {
+				readChunk(stream);
+			}
+		}
+		
+		if (wrote) {
+			context.flush();
+			//the next chunks are written in a separate task, letting other writes through in the meantime
+			schedulePump();
+		}
+	}
+	
+	private void readChunk(OutboundStream stream) {
+		int length = Math.min(CHUNK_SIZE, stream.credit);
+		stream.reading = true;
+		try {
+			stream.reader.execute(() -> {
+				ByteBuf frame = newFrame(Envelope.STREAM_DATA, stream.id, length);
+				int read;
+				Throwable failure = null;
+				try {
+					read = frame.writeBytes(stream.input, length);
+				} catch (Throwable cause) {
+					read = 0;
+					failure = cause;
+				}
+				
+				int result = read;
+				Throwable cause = failure;
+				try {
+					execute(() -> writeReadChunk(stream, frame, result, cause));
+				} catch (RejectedExecutionException e) {
+					//the event loop has been shut down, the stream has been failed by channelInactive
+					frame.release();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			stream.reading = false;
+			abort(stream, e);
+		}
+	}
+	
+	private void writeReadChunk(OutboundStream stream, ByteBuf frame, int read, Throwable cause) {
+		stream.reading = false;
+		if (outbound.get(stream.id) != stream) {
+			//the stream was cancelled or the connection was closed while the chunk was being read
+			frame.release();
+			return;
+		} else if (cause != null) {
+			frame.release();
+			abort(stream, cause);
+			return;
+		} else if (read < 0) {
+			frame.release();
+			finish(stream);
+			return;
+		}
+		
+		stream.credit -= read;
+		context.writeAndFlush(frame, context.voidPromise());
+		schedulePump();
+	}
+	
+	private void writeFileChunk(OutboundStream stream) {
+		int length = (int) Math.min(Math.min(CHUNK_SIZE, stream.credit), stream.remaining);
+		if (stream.frameContext == null) {
+			ByteBuf frame = newFrame(Envelope.STREAM_DATA, stream.id, length);
+			int read;
+			try {
+				read = frame.writeBytes(stream.file, stream.position, length);
+			} catch (Throwable cause) {
+				frame.release();
+				abort(stream, cause);
+				return;
+			}
+			
+			if (read < 0) {
+				frame.release();
+				abort(stream, new EOFException("The file ended before the end of the range"));
+				return;
+			}
+			length = read;
+			context.write(frame, context.voidPromise());
+		} else if (length > 0) {
+			if (stream.contained) {
+				//the regions skip the container codec: the messages written before them have to be written first
+				context.flush();
+			}
+			stream.frameContext.write(newRegionHeader(stream, length), context.voidPromise());
+			stream.lastWrite = stream.frameContext.write(new SharedFileRegion(stream.file, stream.position, length));
+		}
+		
+		stream.position += length;
+		stream.remaining -= length;
+		stream.credit -= length;
+		if (stream.remaining == 0) {
+			finish(stream);
+		}
+	}
+	
+	private ByteBuf newRegionHeader(OutboundStream stream, int length) {
+		//the header contains everything the handlers between this one and the frame encoder would add
+		int messageLength = 1 + VarInts.getSize(stream.id) + length;
+		int frameLength = messageLength + (stream.compressed ? 1 : 0)
+				+ (stream.contained ? VarInts.getSize(messageLength) : 0);
+		int headerSize = stream.frameFormat.getHeaderSize(frameLength);
+		ByteBuf header = context.alloc().ioBuffer(headerSize + frameLength - length);
+		stream.frameFormat.setLength(header, 0, frameLength);
+		header.writerIndex(headerSize);
+		if (stream.compressed) {
+			header.writeByte(Compression.FLAG_RAW);
+		}
+		if (stream.contained) {
+			VarInts.write(header, messageLength);
+		}
+		header.writeByte(Envelope.STREAM_DATA);
+		VarInts.write(header, stream.id);
+		return header;
+	}
+	
+	private void finish(OutboundStream stream) {
+		outbound.remove(stream.id);
+		closeSource(stream);
+		context.writeAndFlush(newFrame(Envelope.STREAM_END, stream.id, 0)).addListener(future -> {
+			if (future.isSuccess()) {
+				stream.future.complete(null);
+			} else {
+				stream.future.completeExceptionally(future.cause());
+			}
+		});
+	}
+	
+	private void abort(OutboundStream stream, Throwable cause) {
+		outbound.remove(stream.id);
+		closeSource(stream);
+		context.writeAndFlush(newFrame(Envelope.STREAM_ABORT, stream.id, 0), context.voidPromise());
+		stream.future.completeExceptionally(cause);
+	}
+	
+	private ByteBuf newFrame(byte kind, int id, int payloadCapacity) {
+		ByteBuf frame = context.alloc().ioBuffer(1 + VarInts.getSize(id) + payloadCapacity);
+		frame.writeByte(kind);
+		VarInts.write(frame, id);
+		return frame;
+	}
+	
+	private static void closeSource(OutboundStream stream) {
+		if (stream.input != null) {
+			//closing the source also unblocks the read which might be in progress on the reader executor
+			closeQuietly(stream.input);
+		} else if (stream.lastWrite == null) {
+			closeQuietly(stream.file);
+		} else {
+			//the regions which are still being written need the file to be open
+			stream.lastWrite.addListener(future -> closeQuietly(stream.file));
+		}
+	}
+	
+	private static void closeQuietly(Closeable source) {
+		try {
+			source.close();
+		} catch (IOException ignored) {
+		}
+	}
+	
+	
+	
+	private static class OutboundStream {
+		final CompletableFuture<Void> future = new CompletableFuture<>();
+		final InputStream input;
+		final Executor reader;
+		final FileChannel file;
+		long position;
+		long remaining;
+		int id;
+		int credit = INITIAL_WINDOW;
+		ChannelHandlerContext frameContext;
+		FrameFormat frameFormat;
+		boolean compressed;
+		boolean contained;
+		ChannelFuture lastWrite;
+		boolean reading;
+		
+		OutboundStream(InputStream input, Executor reader, FileChannel file, long position, long remaining) {
+			this.input = input;
+			this.reader = reader;
+			this.file = file;
+			this.position = position;
+			this.remaining = remaining;
+		}
+	}
+}
@@ -0,0 +1,44 @@
+package hu.trigary.simplenetty.stream;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Receives the chunks of a {@link ReceivedStream} as they arrive, on the I/O thread of the connection.
+ * The chunks are released after {@link #onChunk(ByteBuf)} returns, the listener has to retain them
+ * if it needs them afterwards. The sender is allowed to send more data once the chunks have been processed,
+ * therefore a slow listener slows down the stream, but not the other messages of the connection.
+ */
+public interface StreamListener {
+	/**
+	 * Called when a chunk of the stream has been received.
+	 *
+	 * @param chunk the received bytes, which are only valid until this method returns
+	 */
+	void onChunk(ByteBuf chunk);
+	
+	/**
+	 * Called when the stream has been fully received.
+	 */
+	default void onEnd() {
+		
+	}
+	
+	/**
+	 * Called when the stream fails: the sender aborts it or the connection is closed.
+	 * Not called if the stream is cancelled using {@link ReceivedStream#cancel()}.
+	 *
+	 * @param cause the reason of the failure
+	 */
+	default void onError(Throwable cause) {
+		
+	}
+	
+	/**
+	 * Called when the stream is cancelled before it has been fully consumed, either using
+	 * {@link ReceivedStream#cancel()} or because this listener has thrown an exception.
+	 * No further chunks are passed to the listener afterwards.
+	 */
+	default void onCancel() {
+		
+	}
+}
@@ -0,0 +1,151 @@
+package hu.trigary.simplenetty.transport;
+
+import io.netty.channel.ChannelOption;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollMode;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Low-level options of the sockets leading between the server and its clients.
+ * Unset options keep their default values, options which aren't supported by the used
+ * {@link Transport} are ignored. The options are applied when the channels are created,
+ * therefore changing them only affects channels which are created afterwards.
+ * Each setter returns this instance to allow chaining.
+ */
+public class SocketOptions {
+	private volatile Boolean tcpNoDelay;
+	private volatile Integer sendBufferSize;
+	private volatile Integer receiveBufferSize;
+	private volatile Boolean edgeTriggered;
+	private volatile Integer busyPollMicros;
+	private volatile Boolean quickAck;
+	private volatile WriteBufferWaterMark writeBufferWaterMark;
+	
+	
+	
+	/**
+	 * Sets whether Nagle's algorithm should be disabled (TCP_NODELAY).
+	 * Disabling it lowers the latency of small writes.
+	 *
+	 * @param tcpNoDelay true to disable Nagle's algorithm, null to use the default value
+	 * @return this instance
+	 */
+	public SocketOptions setTcpNoDelay(Boolean tcpNoDelay) {
+		this.tcpNoDelay = tcpNoDelay;
+		return this;
+	}
+	
+	/**
+	 * Sets the size of the socket's send buffer in bytes (SO_SNDBUF).
+	 *
+	 * @param sendBufferSize the size of the buffer, null to use the default value
+	 * @return this instance
+	 */
+	public SocketOptions setSendBufferSize(Integer sendBufferSize) {
+		this.sendBufferSize = sendBufferSize;
+		return this;
+	}
+	
+	/**
+	 * Sets the size of the socket's receive buffer in bytes (SO_RCVBUF).
+	 *
+	 * @param receiveBufferSize the size of the buffer, null to use the default value
+	 * @return this instance
+	 */
+	public SocketOptions setReceiveBufferSize(Integer receiveBufferSize) {
+		this.receiveBufferSize = receiveBufferSize;
+		return this;
+	}
+	
+	/**
+	 * Sets whether the epoll transport should operate in edge-triggered or level-triggered mode.
+	 * Only supported by {@link Transport#EPOLL}, where edge-triggered is the default.
+	 *
+	 * @param edgeTriggered true for edge-triggered, false for level-triggered, null to use the default value
+	 * @return this instance
+	 */
+	public SocketOptions setEdgeTriggered(Boolean edgeTriggered) {
+		this.edgeTriggered = edgeTriggered;
+		return this;
+	}
+	
+	/**
+	 * Sets the amount of microseconds to busy poll for when there is no data to read (SO_BUSY_POLL).
+	 * Only supported by {@link Transport#EPOLL} and only if the used Netty version exposes this option.
+	 *
+	 * @param busyPollMicros the amount of microseconds to busy poll for, null to use the default value
+	 * @return this instance
+	 */
+	public SocketOptions setBusyPollMicros(Integer busyPollMicros) {
+		this.busyPollMicros = busyPollMicros;
+		return this;
+	}
+	
+	/**
+	 * Sets whether acknowledgements should be sent immediately instead of being delayed (TCP_QUICKACK).
+	 * Only supported by {@link Transport#EPOLL}.
+	 *
+	 * @param quickAck true to send acknowledgements immediately, null to use the default value
+	 * @return this instance
+	 */
+	public SocketOptions setQuickAck(Boolean quickAck) {
+		this.quickAck = quickAck;
+		return this;
+	}
+	
+	/**
+	 * Sets the water marks of the channel's outbound buffer in bytes (WRITE_BUFFER_WATER_MARK).
+	 * The channel becomes unwritable once more bytes are waiting to be transmitted than the high water mark
+	 * and it becomes writable again once the amount drops below the low water mark.
+	 * Netty's defaults are 32 KiB and 64 KiB.
+	 *
+	 * @param low the low water mark, null to use the default values
+	 * @param high the high water mark, null to use the default values
+	 * @return this instance
+	 */
+	public SocketOptions setWriteBufferWaterMark(Integer low, Integer high) {
+		writeBufferWaterMark = low == null || high == null ? null : new WriteBufferWaterMark(low, high);
+		return this;
+	}
+	
+	
+	
+	/**
+	 * Gets the options which are set and are supported by the specified transport,
+	 * in a format which can be passed to Netty's bootstraps.
+	 *
+	 * @param transport the transport the options will be applied to
+	 * @return the options which should be set on the channels
+	 */
+	public Map<ChannelOption<?>, Object> toChannelOptions(Transport transport) {
+		Map<ChannelOption<?>, Object> options = new LinkedHashMap<>();
+		putIfSet(options, ChannelOption.TCP_NODELAY, tcpNoDelay);
+		putIfSet(options, ChannelOption.SO_SNDBUF, sendBufferSize);
+		putIfSet(options, ChannelOption.SO_RCVBUF, receiveBufferSize);
+		putIfSet(options, ChannelOption.WRITE_BUFFER_WATER_MARK, writeBufferWaterMark);
+		
+		if (transport == Transport.EPOLL) {
+			Boolean edge = edgeTriggered;
+			if (edge != null) {
+				options.put(EpollChannelOption.EPOLL_MODE, edge ? EpollMode.EDGE_TRIGGERED : EpollMode.LEVEL_TRIGGERED);
+			}
+			putIfSet(options, EpollChannelOption.TCP_QUICKACK, quickAck);
+			
+			//SO_BUSY_POLL is only present in newer Netty versions, the access of EpollChannelOption above registers it
+			Integer busyPoll = busyPollMicros;
+			if (busyPoll != null && ChannelOption.exists("SO_BUSY_POLL")) {
+				options.put(ChannelOption.valueOf("SO_BUSY_POLL"), busyPoll);
+			}
+		}
+		return options;
+	}
+	
+	private static <T> void putIfSet(Map<ChannelOption<?>, Object> options, ChannelOption<T> option, T value) {
+		if (value != null) {
+			options.put(option, value);
+		}
+	}
+}
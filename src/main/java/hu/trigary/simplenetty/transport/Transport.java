@@ -0,0 +1,116 @@
+package hu.trigary.simplenetty.transport;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.ServerSocketChannel;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * The transport implementations which can be used by the server and the client.
+ * The {@link EventLoopGroup}s and the channels of different transports aren't compatible with each other.
+ */
+public enum Transport {
+	/**
+	 * The transport based on Java's NIO, available on all platforms.
+	 */
+	NIO {
+		@Override
+		public boolean isAvailable() {
+			return true;
+		}
+		
+		@Override
+		public EventLoopGroup newEventLoopGroup(int threads, ThreadFactory threadFactory) {
+			return new NioEventLoopGroup(threads, threadFactory);
+		}
+		
+		@Override
+		public Class<? extends ServerSocketChannel> getServerChannelClass() {
+			return NioServerSocketChannel.class;
+		}
+		
+		@Override
+		public Class<? extends SocketChannel> getChannelClass() {
+			return NioSocketChannel.class;
+		}
+	},
+	
+	/**
+	 * The native transport based on Linux's epoll, only available on Linux and only
+	 * if Netty's native library is present. It generates less garbage and has lower latency than NIO.
+	 */
+	EPOLL {
+		@Override
+		public boolean isAvailable() {
+			try {
+				return Epoll.isAvailable();
+			} catch (LinkageError e) {
+				return false;
+			}
+		}
+		
+		@Override
+		public EventLoopGroup newEventLoopGroup(int threads, ThreadFactory threadFactory) {
+			return new EpollEventLoopGroup(threads, threadFactory);
+		}
+		
+		@Override
+		public Class<? extends ServerSocketChannel> getServerChannelClass() {
+			return EpollServerSocketChannel.class;
+		}
+		
+		@Override
+		public Class<? extends SocketChannel> getChannelClass() {
+			return EpollSocketChannel.class;
+		}
+	};
+	
+	
+	
+	/**
+	 * Gets the most performant transport which is available on the current platform.
+	 *
+	 * @return {@link #EPOLL} if it is available, otherwise {@link #NIO}
+	 */
+	public static Transport getDefault() {
+		return EPOLL.isAvailable() ? EPOLL : NIO;
+	}
+	
+	/**
+	 * Checks whether this transport can be used on the current platform.
+	 *
+	 * @return true if this transport is available
+	 */
+	public abstract boolean isAvailable();
+	
+	/**
+	 * Creates a new {@link EventLoopGroup} which is compatible with this transport.
+	 *
+	 * @param threads the amount of threads to use, 0 to use Netty's default (twice the amount of cores)
+	 * @param threadFactory the factory of the threads or null to use Netty's default
+	 * @return the newly created {@link EventLoopGroup}
+	 */
+	public abstract EventLoopGroup newEventLoopGroup(int threads, ThreadFactory threadFactory);
+	
+	/**
+	 * Gets the class of the server channels of this transport.
+	 *
+	 * @return the class of the server channels
+	 */
+	public abstract Class<? extends ServerSocketChannel> getServerChannelClass();
+	
+	/**
+	 * Gets the class of the (client) channels of this transport.
+	 *
+	 * @return the class of the channels
+	 */
+	public abstract Class<? extends SocketChannel> getChannelClass();
+}
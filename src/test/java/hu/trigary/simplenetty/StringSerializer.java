@@ -0,0 +1,25 @@
+package hu.trigary.simplenetty;
+
+import hu.trigary.simplenetty.serialization.DataSerializer;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The serializer of the tests which send text messages, encoding them using UTF-8.
+ */
+public class StringSerializer implements DataSerializer<String> {
+	@Override
+	public byte[] serialize(String data) {
+		return data.getBytes(StandardCharsets.UTF_8);
+	}
+	
+	@Override
+	public String deserialize(byte[] bytes) {
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+	
+	@Override
+	public Class<String> getType() {
+		return String.class;
+	}
+}
@@ -0,0 +1,99 @@
+package hu.trigary.simplenetty.client;
+
+import hu.trigary.simplenetty.StringSerializer;
+import hu.trigary.simplenetty.serialization.DataSerializer;
+import hu.trigary.simplenetty.server.Server;
+import hu.trigary.simplenetty.server.ServerClient;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+public class ClientPoolTest {
+	private static final DataSerializer<String> SERIALIZER = new StringSerializer();
+	
+	@Test
+	public void testPool() throws InterruptedException {
+		final int port = 804;
+		Map<ServerClient<String>, List<String>> received = new ConcurrentHashMap<>();
+		CountDownLatch[] latch = {new CountDownLatch(6)};
+		Server<ServerClient<String>, String> server = new Server<>(SERIALIZER, ServerClient::new);
+		server.onReceived((client, data) -> {
+			received.computeIfAbsent(client, key -> new CopyOnWriteArrayList<>()).add(data);
+			latch[0].countDown();
+		});
+		server.onException((client, cause) -> { });
+		server.start(null, port);
+		
+		ClientPool<String> pool = new ClientPool<>(3, () -> new Client<>(SERIALIZER));
+		pool.setReplaceDelay(10);
+		Assert.assertTrue(pool.connect("localhost", port, 5000));
+		awaitConnected(pool, 3);
+		
+		for (int i = 0; i < 6; i++) {
+			pool.send(String.valueOf(i));
+		}
+		Assert.assertTrue(latch[0].await(5, TimeUnit.SECONDS));
+		Assert.assertEquals(3, received.size());
+		for (List<String> messages : received.values()) {
+			Assert.assertEquals(2, messages.size());
+		}
+		
+		received.clear();
+		latch[0] = new CountDownLatch(100);
+		pool.setSelection(ClientPool.Selection.LEAST_PENDING_BYTES);
+		for (int i = 0; i < 50; i++) {
+			pool.send("key", "key" + i);
+			pool.send(String.valueOf(i));
+		}
+		Assert.assertTrue(latch[0].await(5, TimeUnit.SECONDS));
+		List<String> keyed = null;
+		for (List<String> messages : received.values()) {
+			List<String> filtered = messages.stream().filter(message -> message.startsWith("key")).collect(Collectors.toList());
+			if (!filtered.isEmpty()) {
+				Assert.assertNull(keyed);
+				keyed = filtered;
+			}
+		}
+		Assert.assertNotNull(keyed);
+		for (int i = 0; i < 50; i++) {
+			Assert.assertEquals("key" + i, keyed.get(i));
+		}
+		
+		pool.getClient("key").getContext().close().sync();
+		awaitConnected(pool, 3);
+		
+		pool.uninitialize();
+		Assert.assertEquals(0, pool.getConnectedCount());
+		server.stop();
+	}
+	
+	@Test
+	public void testReconnectPolicyRejected() {
+		try {
+			new ClientPool<>(2, () -> {
+				Client<String> client = new Client<>(SERIALIZER);
+				client.setReconnectPolicy(new ReconnectPolicy(10, 100));
+				return client;
+			});
+			Assert.fail();
+		} catch (IllegalArgumentException ignored) {
+		}
+	}
+	
+	
+	
+	private static void awaitConnected(ClientPool<String> pool, int expected) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (pool.getConnectedCount() != expected) {
+			Assert.assertTrue(System.currentTimeMillis() < deadline);
+			Thread.sleep(10);
+		}
+	}
+}
@@ -0,0 +1,103 @@
+package hu.trigary.simplenetty.client;
+
+import hu.trigary.simplenetty.StringSerializer;
+import hu.trigary.simplenetty.serialization.DataSerializer;
+import hu.trigary.simplenetty.server.Server;
+import hu.trigary.simplenetty.server.ServerClient;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ReconnectTest {
+	private static final DataSerializer<String> SERIALIZER = new StringSerializer();
+	
+	@Test
+	public void testPolicy() {
+		ReconnectPolicy policy = new ReconnectPolicy(100, 1000, 0, 0);
+		Assert.assertEquals(100, policy.getDelayMillis(0));
+		Assert.assertEquals(400, policy.getDelayMillis(2));
+		Assert.assertEquals(1000, policy.getDelayMillis(4));
+		Assert.assertEquals(1000, policy.getDelayMillis(Integer.MAX_VALUE));
+		
+		ReconnectPolicy jittered = new ReconnectPolicy(100, 1000);
+		for (int i = 0; i < 100; i++) {
+			long delay = jittered.getDelayMillis(1);
+			Assert.assertTrue(delay >= 100 && delay <= 200);
+		}
+	}
+	
+	@Test
+	public void testReconnect() throws InterruptedException {
+		final int port = 805;
+		Server<ServerClient<String>, String> server = new Server<>(SERIALIZER, ServerClient::new);
+		server.start(null, port);
+		
+		CountDownLatch disconnected = new CountDownLatch(1);
+		CountDownLatch reconnected = new CountDownLatch(2);
+		Client<String> client = new Client<>(SERIALIZER);
+		client.setReconnectPolicy(new ReconnectPolicy(10, 50));
+		client.setOutboundQueue(10, OverflowPolicy.DROP_OLDEST);
+		client.onConnected(reconnected::countDown);
+		client.onDisconnected(disconnected::countDown);
+		Assert.assertTrue(client.connect("localhost", port, 5000));
+		
+		server.stop();
+		Assert.assertTrue(disconnected.await(5, TimeUnit.SECONDS));
+		for (int i = 0; i < 15; i++) {
+			client.send(String.valueOf(i));
+		}
+		Assert.assertEquals(10, client.getOutboundQueueSize());
+		
+		List<String> received = new CopyOnWriteArrayList<>();
+		CountDownLatch receivedAll = new CountDownLatch(10);
+		server = new Server<>(SERIALIZER, ServerClient::new);
+		server.onReceived((serverClient, data) -> {
+			received.add(data);
+			receivedAll.countDown();
+		});
+		server.start(null, port);
+		
+		Assert.assertTrue(reconnected.await(5, TimeUnit.SECONDS));
+		Assert.assertTrue(receivedAll.await(5, TimeUnit.SECONDS));
+		for (int i = 0; i < 10; i++) {
+			Assert.assertEquals(String.valueOf(i + 5), received.get(i));
+		}
+		Assert.assertEquals(0, client.getOutboundQueueSize());
+		
+		client.uninitialize();
+		server.stop();
+	}
+	
+	@Test
+	public void testFlappingServer() throws InterruptedException {
+		final int port = 812;
+		AtomicInteger connections = new AtomicInteger();
+		Server<ServerClient<String>, String> server = new Server<>(SERIALIZER, ServerClient::new);
+		server.onConnected(serverClient -> {
+			connections.incrementAndGet();
+			serverClient.close();
+		});
+		server.start(null, port);
+		
+		//the connections are closed right away, therefore the attempts mustn't start over after each of them
+		ReconnectPolicy policy = new ReconnectPolicy(10, 5000, 0, 3);
+		CountDownLatch disconnected = new CountDownLatch(4);
+		Client<String> client = new Client<>(SERIALIZER);
+		client.setReconnectPolicy(policy);
+		client.onDisconnected(disconnected::countDown);
+		client.connect("localhost", port, 5000);
+		Assert.assertTrue(disconnected.await(5, TimeUnit.SECONDS));
+		
+		//the last attempt has been made: no further attempt may be scheduled after the last disconnect
+		Thread.sleep(policy.getDelayMillis(policy.getMaxAttempts()) * 2);
+		Assert.assertEquals(4, connections.get());
+		
+		client.uninitialize();
+		server.stop();
+	}
+}
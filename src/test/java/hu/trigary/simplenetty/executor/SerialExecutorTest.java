@@ -0,0 +1,36 @@
+package hu.trigary.simplenetty.executor;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class SerialExecutorTest {
+	@Test
+	public void testOrder() throws InterruptedException {
+		final int taskCount = 10000;
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		SerialExecutor executor = new SerialExecutor(pool);
+		List<Integer> executed = new ArrayList<>();
+		CountDownLatch done = new CountDownLatch(taskCount);
+		
+		for (int i = 0; i < taskCount; i++) {
+			int value = i;
+			executor.execute(() -> {
+				executed.add(value);
+				done.countDown();
+			});
+		}
+		
+		Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+		pool.shutdown();
+		for (int i = 0; i < taskCount; i++) {
+			Assert.assertEquals(i, (int) executed.get(i));
+		}
+	}
+}
@@ -0,0 +1,24 @@
+package hu.trigary.simplenetty.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HistogramTest {
+	@Test
+	public void testPercentiles() {
+		Histogram histogram = new Histogram();
+		Assert.assertEquals(0, histogram.getPercentile(50));
+		
+		for (int i = 1; i <= 100; i++) {
+			histogram.record(i);
+		}
+		histogram.record(-5);
+		
+		Assert.assertEquals(101, histogram.getCount());
+		Assert.assertEquals(5050, histogram.getSum());
+		Assert.assertEquals(100, histogram.getMax());
+		Assert.assertEquals(63, histogram.getPercentile(50));
+		Assert.assertEquals(100, histogram.getPercentile(99));
+		Assert.assertEquals(0, histogram.getPercentile(0));
+	}
+}
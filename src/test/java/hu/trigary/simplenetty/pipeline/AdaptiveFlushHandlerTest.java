@@ -0,0 +1,48 @@
+package hu.trigary.simplenetty.pipeline;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class AdaptiveFlushHandlerTest {
+	@Test
+	public void testFlushAfterCount() {
+		EmbeddedChannel channel = new EmbeddedChannel(new AdaptiveFlushHandler(3, TimeUnit.HOURS.toMicros(1)));
+		channel.writeAndFlush("first");
+		channel.writeAndFlush("second");
+		Assert.assertNull(channel.readOutbound());
+		
+		channel.writeAndFlush("third");
+		Assert.assertEquals("first", channel.readOutbound());
+		Assert.assertEquals("second", channel.readOutbound());
+		Assert.assertEquals("third", channel.readOutbound());
+		Assert.assertFalse(channel.finish());
+	}
+	
+	@Test
+	public void testFlushAfterDelay() throws InterruptedException {
+		EmbeddedChannel channel = new EmbeddedChannel(new AdaptiveFlushHandler(100, 1));
+		channel.writeAndFlush("data");
+		Assert.assertNull(channel.readOutbound());
+		
+		Thread.sleep(10);
+		channel.runPendingTasks();
+		Assert.assertEquals("data", channel.readOutbound());
+		Assert.assertFalse(channel.finish());
+	}
+	
+	@Test
+	public void testFlushAfterRead() {
+		EmbeddedChannel channel = new EmbeddedChannel(new AdaptiveFlushHandler(100, TimeUnit.HOURS.toMicros(1)));
+		channel.pipeline().fireChannelRead("request");
+		channel.writeAndFlush("response");
+		Assert.assertNull(channel.readOutbound());
+		
+		channel.pipeline().fireChannelReadComplete();
+		Assert.assertEquals("response", channel.readOutbound());
+		Assert.assertEquals("request", channel.readInbound());
+		Assert.assertFalse(channel.finish());
+	}
+}
@@ -0,0 +1,83 @@
+package hu.trigary.simplenetty.pipeline;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SlowConsumerHandlerTest {
+	@Test
+	public void testDropNewest() {
+		SlowConsumerHandler handler = new SlowConsumerHandler(SlowConsumerPolicy.dropNewest());
+		EmbeddedChannel channel = newChannel(handler);
+		ChannelHandlerContext context = channel.pipeline().context(handler);
+		
+		handler.write(context, buffer(1), false);
+		Assert.assertFalse(channel.isWritable());
+		ChannelFuture dropped = handler.write(context, buffer(2), true);
+		Assert.assertSame(SlowConsumerHandler.DROPPED, dropped.cause());
+		
+		channel.flush();
+		assertOutbound(channel, 1);
+		Assert.assertFalse(channel.finish());
+	}
+	
+	@Test
+	public void testDropOldest() {
+		SlowConsumerHandler handler = new SlowConsumerHandler(SlowConsumerPolicy.dropOldest(2));
+		EmbeddedChannel channel = newChannel(handler);
+		ChannelHandlerContext context = channel.pipeline().context(handler);
+		
+		handler.write(context, buffer(1), false);
+		ChannelFuture dropped = handler.write(context, buffer(2), true);
+		ChannelFuture queued = handler.write(context, buffer(3), true);
+		handler.write(context, buffer(4), true);
+		Assert.assertSame(SlowConsumerHandler.DROPPED, dropped.cause());
+		Assert.assertFalse(queued.isDone());
+		
+		channel.flush();
+		channel.runPendingTasks();
+		Assert.assertTrue(queued.isSuccess());
+		assertOutbound(channel, 1, 3, 4);
+		Assert.assertFalse(channel.finish());
+	}
+	
+	@Test
+	public void testDisconnect() throws InterruptedException {
+		SlowConsumerHandler handler = new SlowConsumerHandler(SlowConsumerPolicy.disconnectAfter(50));
+		EmbeddedChannel channel = newChannel(handler);
+		handler.write(channel.pipeline().context(handler), buffer(1), false);
+		Assert.assertFalse(channel.isWritable());
+		Assert.assertTrue(channel.isOpen());
+		
+		Thread.sleep(100);
+		channel.runPendingTasks();
+		Assert.assertFalse(channel.isOpen());
+		channel.finishAndReleaseAll();
+	}
+	
+	
+	
+	private static EmbeddedChannel newChannel(SlowConsumerHandler handler) {
+		EmbeddedChannel channel = new EmbeddedChannel(handler);
+		channel.config().setWriteBufferWaterMark(new WriteBufferWaterMark(4, 8));
+		return channel;
+	}
+	
+	private static ByteBuf buffer(int id) {
+		return Unpooled.buffer(10).writeByte(id).writeZero(9);
+	}
+	
+	private static void assertOutbound(EmbeddedChannel channel, int... ids) {
+		for (int id : ids) {
+			ByteBuf buffer = channel.readOutbound();
+			Assert.assertEquals(id, buffer.readByte());
+			buffer.release();
+		}
+		Assert.assertNull(channel.readOutbound());
+	}
+}
@@ -0,0 +1,92 @@
+package hu.trigary.simplenetty.rpc;
+
+import hu.trigary.simplenetty.StringSerializer;
+import hu.trigary.simplenetty.client.Client;
+import hu.trigary.simplenetty.serialization.DataSerializer;
+import hu.trigary.simplenetty.server.Server;
+import hu.trigary.simplenetty.server.ServerClient;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.LockSupport;
+
+public class RpcTest {
+	private static final DataSerializer<String> SERIALIZER = new StringSerializer();
+	
+	@Test
+	public void testRequests() throws Throwable {
+		final int port = 803;
+		CountDownLatch connected = new CountDownLatch(1);
+		CountDownLatch received = new CountDownLatch(1);
+		Server<ServerClient<String>, String> server = new Server<>(SERIALIZER, ServerClient::new);
+		server.setRpcEnabled(true);
+		server.onConnected(client -> connected.countDown());
+		server.onReceived((client, data) -> received.countDown());
+		server.onException((client, cause) -> { });
+		server.onRequest((client, data) -> {
+			if (data.equals("fail")) {
+				throw new IllegalArgumentException("internal details");
+			} else if (data.equals("reject")) {
+				throw new RpcException("rejected");
+			} else if (data.equals("slow")) {
+				LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(200));
+			}
+			return "re:" + data;
+		});
+		server.setCallbackExecutor(command -> new Thread(command).start());
+		server.start(null, port);
+		
+		Client<String> client = new Client<>(SERIALIZER);
+		client.setRpcEnabled(true);
+		client.onRequest(data -> "client:" + data);
+		Assert.assertTrue(client.connect("localhost", port, 5000));
+		Assert.assertTrue(connected.await(5, TimeUnit.SECONDS));
+		
+		List<CompletableFuture<String>> futures = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			futures.add(client.request(String.valueOf(i)));
+		}
+		for (int i = 0; i < futures.size(); i++) {
+			Assert.assertEquals("re:" + i, futures.get(i).get(5, TimeUnit.SECONDS));
+		}
+		
+		client.send("regular");
+		Assert.assertTrue(received.await(5, TimeUnit.SECONDS));
+		
+		ServerClient<String> serverClient = server.getClients().iterator().next();
+		Assert.assertEquals("client:ping", serverClient.request("ping").get(5, TimeUnit.SECONDS));
+		
+		Assert.assertEquals(RpcException.DEFAULT_MESSAGE, assertFailure(RpcException.class, client.request("fail")));
+		Assert.assertEquals("rejected", assertFailure(RpcException.class, client.request("reject")));
+		assertFailure(TimeoutException.class, client.request("slow", 50));
+		
+		CompletableFuture<String> pending = client.request("slow");
+		client.getContext().close().sync();
+		assertFailure(ClosedChannelException.class, pending);
+		
+		client.uninitialize();
+		server.stop();
+	}
+	
+	
+	
+	private static String assertFailure(Class<? extends Throwable> expected, CompletableFuture<String> future)
+			throws InterruptedException, TimeoutException {
+		try {
+			future.get(5, TimeUnit.SECONDS);
+			Assert.fail();
+			return null;
+		} catch (ExecutionException e) {
+			Assert.assertEquals(expected, e.getCause().getClass());
+			return e.getCause().getMessage();
+		}
+	}
+}
@@ -0,0 +1,146 @@
+package hu.trigary.simplenetty.serialization;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class BinarySerializerTest {
+	@Test
+	public void testRoundTrip() {
+		BinarySerializer<Sample> serializer = new BinarySerializer<>(Sample.class);
+		Sample sample = new Sample();
+		sample.id = 7;
+		sample.primitiveInt = -1;
+		sample.primitiveLong = Long.MIN_VALUE;
+		sample.primitiveShort = -300;
+		sample.primitiveByte = -5;
+		sample.primitiveChar = '\u0151';
+		sample.primitiveBoolean = true;
+		sample.primitiveFloat = 1.5f;
+		sample.primitiveDouble = -2.25;
+		sample.boxedInt = 123456;
+		sample.boxedLong = null;
+		sample.boxedBoolean = false;
+		sample.text = "\u00e1rv\u00edzt\u0171r\u0151 \ud83d\ude42";
+		sample.emptyText = "";
+		sample.bytes = new byte[]{1, 2, 3};
+		sample.unit = TimeUnit.HOURS;
+		sample.nested = new Nested();
+		sample.nested.name = "nested";
+		sample.nested.child = new Nested(99);
+		sample.ignored = 42;
+		
+		ByteBuf buffer = Unpooled.buffer();
+		serializer.serialize(sample, buffer);
+		Sample result = serializer.deserialize(buffer);
+		Assert.assertEquals(0, buffer.readableBytes());
+		
+		Assert.assertEquals(7, result.id);
+		Assert.assertEquals(-1, result.primitiveInt);
+		Assert.assertEquals(Long.MIN_VALUE, result.primitiveLong);
+		Assert.assertEquals(-300, result.primitiveShort);
+		Assert.assertEquals(-5, result.primitiveByte);
+		Assert.assertEquals('\u0151', result.primitiveChar);
+		Assert.assertTrue(result.primitiveBoolean);
+		Assert.assertEquals(1.5f, result.primitiveFloat, 0);
+		Assert.assertEquals(-2.25, result.primitiveDouble, 0);
+		Assert.assertEquals(Integer.valueOf(123456), result.boxedInt);
+		Assert.assertNull(result.boxedLong);
+		Assert.assertEquals(Boolean.FALSE, result.boxedBoolean);
+		Assert.assertEquals("\u00e1rv\u00edzt\u0171r\u0151 \ud83d\ude42", result.text);
+		Assert.assertEquals("", result.emptyText);
+		Assert.assertNull(result.nullText);
+		Assert.assertArrayEquals(new byte[]{1, 2, 3}, result.bytes);
+		Assert.assertEquals(TimeUnit.HOURS, result.unit);
+		Assert.assertNull(result.nullUnit);
+		Assert.assertEquals("nested", result.nested.name);
+		Assert.assertEquals(99, result.nested.child.value);
+		Assert.assertNull(result.nested.child.child);
+		Assert.assertEquals(0, result.ignored);
+	}
+	
+	@Test
+	public void testCompactness() {
+		BinarySerializer<Nested> serializer = new BinarySerializer<>(Nested.class);
+		//null child, null name, zigzag encoded -1
+		Assert.assertArrayEquals(new byte[]{0, 0, 1}, serializer.serialize(new Nested(-1)));
+	}
+	
+	@Test
+	public void testErrors() {
+		assertUnsupported(Unsupported.class);
+		assertUnsupported(NoConstructor.class);
+		assertUnsupported(Runnable.class);
+		
+		BinarySerializer<Nested> serializer = new BinarySerializer<>(Nested.class);
+		try {
+			serializer.deserialize(new byte[]{0, 100});
+			Assert.fail();
+		} catch (RuntimeException ignored) {
+		}
+	}
+	
+	
+	
+	private static void assertUnsupported(Class<?> type) {
+		try {
+			new BinarySerializer<>(type);
+			Assert.fail();
+		} catch (IllegalArgumentException ignored) {
+		}
+	}
+	
+	private static class Base {
+		int id;
+	}
+	
+	private static class Sample extends Base {
+		int primitiveInt;
+		long primitiveLong;
+		short primitiveShort;
+		byte primitiveByte;
+		char primitiveChar;
+		boolean primitiveBoolean;
+		float primitiveFloat;
+		double primitiveDouble;
+		Integer boxedInt;
+		Long boxedLong;
+		Boolean boxedBoolean;
+		String text;
+		String emptyText;
+		String nullText;
+		byte[] bytes;
+		TimeUnit unit;
+		TimeUnit nullUnit;
+		Nested nested;
+		transient int ignored;
+		static int alsoIgnored;
+	}
+	
+	private static class Nested {
+		private final int value;
+		private Nested child;
+		private String name;
+		
+		private Nested() {
+			this(0);
+		}
+		
+		Nested(int value) {
+			this.value = value;
+		}
+	}
+	
+	private static class Unsupported {
+		List<String> list;
+	}
+	
+	private static class NoConstructor {
+		NoConstructor(int value) {
+		}
+	}
+}
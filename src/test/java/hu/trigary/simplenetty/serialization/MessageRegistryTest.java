@@ -0,0 +1,236 @@
+package hu.trigary.simplenetty.serialization;
+
+import hu.trigary.simplenetty.client.Client;
+import hu.trigary.simplenetty.server.Server;
+import hu.trigary.simplenetty.server.ServerClient;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class MessageRegistryTest {
+	@Test
+	public void testSerialization() {
+		MessageRegistry<Message> registry = newRegistry();
+		Assert.assertEquals(0, registry.getId(Number.class));
+		Assert.assertEquals(0, registry.getId(new Number(1) { }.getClass()));
+		Assert.assertEquals(5, registry.getId(Text.class));
+		Assert.assertEquals(-1, registry.getId(Message.class));
+		Assert.assertEquals(Text.class, registry.getType(5));
+		Assert.assertNull(registry.getType(1));
+		Assert.assertEquals(6, registry.getIdCapacity());
+		
+		ByteBuf buffer = Unpooled.buffer();
+		registry.serialize(new Text("hello"), buffer);
+		Assert.assertEquals(5, buffer.getByte(0));
+		Assert.assertEquals("hello", ((Text) registry.deserialize(buffer)).value);
+		Assert.assertEquals(42, ((Number) registry.deserialize(registry.serialize(new Number(42)))).value);
+		
+		try {
+			registry.register(5, Number.class, new NumberSerializer());
+			Assert.fail();
+		} catch (IllegalArgumentException ignored) {
+		}
+		try {
+			registry.deserialize(new byte[]{3});
+			Assert.fail();
+		} catch (RuntimeException ignored) {
+		}
+	}
+	
+	@Test
+	public void testRegisterAfterLookup() {
+		MessageRegistry<Message> registry = new MessageRegistry<>(Message.class);
+		registry.register(0, Message.class, new ByteBufDataSerializer<Message>() {
+			@Override
+			public void serialize(Message data, ByteBuf output) {
+			}
+			
+			@Override
+			public Message deserialize(ByteBuf input) {
+				return null;
+			}
+			
+			@Override
+			public Class<Message> getType() {
+				return Message.class;
+			}
+		});
+		Assert.assertEquals(-1, registry.getId(Object.class));
+		Assert.assertEquals(0, registry.getId(Number.class));
+		
+		registry.register(1, Number.class, new NumberSerializer());
+		Assert.assertEquals(1, registry.getId(Number.class));
+		Assert.assertEquals(1, registry.getId(new Number(1) { }.getClass()));
+		Assert.assertEquals(1, registry.serialize(new Number(7))[0]);
+	}
+	
+	@Test
+	public void testReceivedId() {
+		MessageRegistry<Message> registry = new MessageRegistry<>(Message.class);
+		registry.register(0, Number.class, new NumberSerializer() {
+			@Override
+			public Number deserialize(ByteBuf input) {
+				return new SpecialNumber(input.readInt());
+			}
+		});
+		registry.register(1, SpecialNumber.class, new ByteBufDataSerializer<SpecialNumber>() {
+			@Override
+			public void serialize(SpecialNumber data, ByteBuf output) {
+				output.writeInt(data.value);
+			}
+			
+			@Override
+			public SpecialNumber deserialize(ByteBuf input) {
+				return new SpecialNumber(input.readInt());
+			}
+			
+			@Override
+			public Class<SpecialNumber> getType() {
+				return SpecialNumber.class;
+			}
+		});
+		
+		//the data is dispatched by the ID it was received with, not by the ID of its class
+		EmbeddedChannel channel = new EmbeddedChannel(new PacketDecoder<>(registry));
+		channel.writeInbound(Unpooled.wrappedBuffer(registry.serialize(new Number(3))));
+		TypedData received = channel.readInbound();
+		Assert.assertEquals(0, received.getTypeId());
+		Assert.assertEquals(SpecialNumber.class, received.getData().getClass());
+		Assert.assertEquals(1, registry.getId(received.getData().getClass()));
+		Assert.assertFalse(channel.finish());
+	}
+	
+	@Test
+	public void testDispatch() throws InterruptedException {
+		final int port = 808;
+		CountDownLatch received = new CountDownLatch(3);
+		Queue<Object> numbers = new ConcurrentLinkedQueue<>();
+		Queue<Object> texts = new ConcurrentLinkedQueue<>();
+		Queue<Object> others = new ConcurrentLinkedQueue<>();
+		Server<ServerClient<Message>, Message> server = new Server<>(newRegistry(), ServerClient::new);
+		server.onReceived((client, data) -> {
+			others.add(data);
+			received.countDown();
+		});
+		server.onReceived(Number.class, (client, data) -> {
+			numbers.add(data.value);
+			received.countDown();
+		});
+		server.start(null, port);
+		
+		Client<Message> client = new Client<>(newRegistry());
+		Assert.assertTrue(client.connect("localhost", port, 5000));
+		client.send(new Number(1));
+		client.send(new Text("text"));
+		client.send(new Number(2));
+		Assert.assertTrue(received.await(5, TimeUnit.SECONDS));
+		
+		server.onReceived(Text.class, (c, data) -> texts.add(data.value));
+		client.send(new Text("typed"));
+		long deadline = System.currentTimeMillis() + 5000;
+		while (texts.isEmpty() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		
+		Assert.assertArrayEquals(new Object[]{1, 2}, numbers.toArray());
+		Assert.assertEquals(1, others.size());
+		Assert.assertArrayEquals(new Object[]{"typed"}, texts.toArray());
+		
+		try {
+			new Client<>(new ByteBufDataSerializer<Message>() {
+				@Override
+				public void serialize(Message data, ByteBuf output) {
+				}
+				
+				@Override
+				public Message deserialize(ByteBuf input) {
+					return null;
+				}
+				
+				@Override
+				public Class<Message> getType() {
+					return Message.class;
+				}
+			}).onReceived(Text.class, data -> { });
+			Assert.fail();
+		} catch (IllegalStateException ignored) {
+		}
+		
+		client.uninitialize();
+		server.stop();
+	}
+	
+	
+	
+	private static MessageRegistry<Message> newRegistry() {
+		MessageRegistry<Message> registry = new MessageRegistry<>(Message.class);
+		registry.register(0, Number.class, new NumberSerializer());
+		registry.register(5, Text.class, new ByteBufDataSerializer<Text>() {
+			@Override
+			public void serialize(Text data, ByteBuf output) {
+				output.writeCharSequence(data.value, StandardCharsets.UTF_8);
+			}
+			
+			@Override
+			public Text deserialize(ByteBuf input) {
+				return new Text(input.readCharSequence(input.readableBytes(), StandardCharsets.UTF_8).toString());
+			}
+			
+			@Override
+			public Class<Text> getType() {
+				return Text.class;
+			}
+		});
+		return registry;
+	}
+	
+	private abstract static class Message {
+	}
+	
+	private static class Number extends Message {
+		final int value;
+		
+		Number(int value) {
+			this.value = value;
+		}
+	}
+	
+	private static class SpecialNumber extends Number {
+		SpecialNumber(int value) {
+			super(value);
+		}
+	}
+	
+	private static class Text extends Message {
+		final String value;
+		
+		Text(String value) {
+			this.value = value;
+		}
+	}
+	
+	private static class NumberSerializer extends ByteBufDataSerializer<Number> {
+		@Override
+		public void serialize(Number data, ByteBuf output) {
+			output.writeInt(data.value);
+		}
+		
+		@Override
+		public Number deserialize(ByteBuf input) {
+			return new Number(input.readInt());
+		}
+		
+		@Override
+		public Class<Number> getType() {
+			return Number.class;
+		}
+	}
+}
@@ -0,0 +1,201 @@
+package hu.trigary.simplenetty.serialization;
+
+import hu.trigary.simplenetty.pipeline.InboundBudget;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.TooLongFrameException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.zip.Inflater;
+
+public class PacketCodecTest {
+	private static final DataSerializer<String> ARRAY_SERIALIZER = new DataSerializer<String>() {
+		@Override
+		public byte[] serialize(String data) {
+			return data.getBytes(StandardCharsets.US_ASCII);
+		}
+		
+		@Override
+		public String deserialize(byte[] bytes) {
+			return new String(bytes, StandardCharsets.US_ASCII);
+		}
+		
+		@Override
+		public Class<String> getType() {
+			return String.class;
+		}
+	};
+	
+	private static final DataSerializer<String> BUFFER_SERIALIZER = new ByteBufDataSerializer<String>() {
+		@Override
+		public void serialize(String data, ByteBuf output) {
+			output.writeCharSequence(data, StandardCharsets.US_ASCII);
+		}
+		
+		@Override
+		public String deserialize(ByteBuf input) {
+			return input.readCharSequence(input.readableBytes(), StandardCharsets.US_ASCII).toString();
+		}
+		
+		@Override
+		public Class<String> getType() {
+			return String.class;
+		}
+	};
+	
+	@Test
+	public void testArraySerializer() {
+		testRoundTrip(ARRAY_SERIALIZER, FrameFormat.FIXED_INT, null, "Hello", "", "World");
+	}
+	
+	@Test
+	public void testBufferSerializer() {
+		testRoundTrip(BUFFER_SERIALIZER, FrameFormat.FIXED_INT, null, "Hello", "", "World");
+		Assert.assertEquals("Hello", BUFFER_SERIALIZER.deserialize(BUFFER_SERIALIZER.serialize("Hello")));
+	}
+	
+	@Test
+	public void testCompression() {
+		String repetitive = String.join("", Collections.nCopies(100, "{\"user\":\"someone\"}"));
+		testRoundTrip(ARRAY_SERIALIZER, FrameFormat.FIXED_INT, new Compression(64), "short", "", repetitive);
+		testRoundTrip(BUFFER_SERIALIZER, FrameFormat.VARINT, new Compression(0, 9, "{\"user\":\"".getBytes(StandardCharsets.US_ASCII)),
+				"short", "", repetitive);
+		
+		Compression compression = new Compression(0);
+		ByteBuf compressed = Unpooled.buffer();
+		Assert.assertTrue(compression.compress(Unpooled.copiedBuffer(repetitive, StandardCharsets.US_ASCII),
+				compressed, compression.getThreadLocalDeflater()));
+		Assert.assertTrue(compressed.readableBytes() < repetitive.length() / 10);
+		
+		Inflater inflater = compression.newInflater();
+		ByteBuf decompressed = compression.decompress(compressed, UnpooledByteBufAllocator.DEFAULT, inflater);
+		Assert.assertEquals(repetitive, decompressed.toString(StandardCharsets.US_ASCII));
+		decompressed.release();
+		inflater.end();
+	}
+	
+	@Test
+	public void testVarIntFraming() {
+		String large = String.join("", Collections.nCopies(20000, "x"));
+		testRoundTrip(BUFFER_SERIALIZER, FrameFormat.VARINT, null, "Hello", "", large, "World");
+		
+		EmbeddedChannel channel = new EmbeddedChannel(new FrameEncoder(FrameFormat.VARINT));
+		channel.writeOutbound(Unpooled.wrappedBuffer(new byte[100]));
+		ByteBuf header = channel.readOutbound();
+		Assert.assertEquals(1, header.readableBytes());
+		header.release();
+		((ByteBuf) channel.readOutbound()).release();
+	}
+	
+	@Test
+	public void testContainerFrames() {
+		String large = String.join("", Collections.nCopies(100, "x"));
+		EmbeddedChannel sender = new EmbeddedChannel(new FrameEncoder(FrameFormat.VARINT),
+				new ContainerCodec(3, 64), new PacketEncoder<>(BUFFER_SERIALIZER));
+		EmbeddedChannel receiver = new EmbeddedChannel(new FrameDecoder(FrameFormat.VARINT),
+				new ContainerCodec(3, 64), new PacketDecoder<>(BUFFER_SERIALIZER));
+		
+		String[] messages = {"1", "2", "3", "4", large, "5"};
+		for (String message : messages) {
+			sender.write(message);
+		}
+		sender.flush();
+		
+		int frames = 0;
+		ByteBuf buffer;
+		while ((buffer = sender.readOutbound()) != null) {
+			//the headers and the contents of the frames are separate buffers
+			frames++;
+			receiver.writeInbound(buffer);
+		}
+		Assert.assertEquals(4 * 2, frames);
+		
+		for (String message : messages) {
+			Assert.assertEquals(message, receiver.readInbound());
+		}
+		Assert.assertFalse(sender.finish());
+		Assert.assertFalse(receiver.finish());
+	}
+	
+	@Test
+	public void testFrameLimits() {
+		EmbeddedChannel limited = new EmbeddedChannel(new FrameDecoder(FrameFormat.FIXED_INT, 10, null));
+		try {
+			limited.writeInbound(Unpooled.buffer().writeInt(11));
+			Assert.fail();
+		} catch (TooLongFrameException ignored) {
+		}
+		Assert.assertFalse(limited.isOpen());
+		
+		InboundBudget budget = new InboundBudget(100, 50);
+		EmbeddedChannel first = new EmbeddedChannel(new FrameDecoder(FrameFormat.FIXED_INT, Integer.MAX_VALUE, budget));
+		EmbeddedChannel second = new EmbeddedChannel(new FrameDecoder(FrameFormat.FIXED_INT, Integer.MAX_VALUE, budget));
+		first.writeInbound(Unpooled.buffer().writeInt(40).writeZero(20));
+		Assert.assertEquals(40, budget.getUsedBytes());
+		Assert.assertEquals(20, first.pipeline().get(FrameDecoder.class).getBufferedBytes());
+		
+		second.writeInbound(Unpooled.buffer().writeInt(30));
+		Assert.assertFalse(second.config().isAutoRead());
+		
+		first.writeInbound(Unpooled.buffer().writeZero(20));
+		((ByteBuf) first.readInbound()).release();
+		second.runPendingTasks();
+		Assert.assertTrue(second.config().isAutoRead());
+		Assert.assertEquals(30, budget.getUsedBytes());
+		
+		second.writeInbound(Unpooled.buffer().writeZero(30));
+		((ByteBuf) second.readInbound()).release();
+		Assert.assertEquals(0, budget.getUsedBytes());
+		
+		try {
+			first.writeInbound(Unpooled.buffer().writeInt(101));
+			Assert.fail();
+		} catch (TooLongFrameException ignored) {
+		}
+		
+		Compression compression = new Compression(0);
+		ByteBuf compressed = Unpooled.buffer();
+		Assert.assertTrue(compression.compress(Unpooled.buffer().writeZero(100), compressed, compression.getThreadLocalDeflater()));
+		Inflater inflater = compression.newInflater();
+		try {
+			compression.decompress(compressed, UnpooledByteBufAllocator.DEFAULT, inflater, 99);
+			Assert.fail();
+		} catch (TooLongFrameException ignored) {
+		}
+		inflater.end();
+	}
+	
+	private static void testRoundTrip(DataSerializer<String> serializer, FrameFormat format,
+			Compression compression, String... messages) {
+		EmbeddedChannel sender = new EmbeddedChannel(new FrameEncoder(format));
+		EmbeddedChannel receiver = new EmbeddedChannel(new FrameDecoder(format));
+		if (compression != null) {
+			sender.pipeline().addLast(new CompressionCodec(compression));
+			receiver.pipeline().addLast(new CompressionCodec(compression));
+		}
+		sender.pipeline().addLast(new PacketEncoder<>(serializer, compression == null));
+		receiver.pipeline().addLast(new PacketDecoder<>(serializer));
+		
+		Assert.assertTrue(sender.writeOutbound((Object[]) messages));
+		ByteBuf buffer;
+		while ((buffer = sender.readOutbound()) != null) {
+			//feed the bytes one by one to make sure partial frames are handled
+			while (buffer.isReadable()) {
+				receiver.writeInbound(buffer.readRetainedSlice(1));
+			}
+			buffer.release();
+		}
+		
+		for (String message : messages) {
+			Assert.assertEquals(message, receiver.readInbound());
+		}
+		Assert.assertNull(receiver.readInbound());
+		Assert.assertFalse(sender.finish());
+		Assert.assertFalse(receiver.finish());
+	}
+}
@@ -0,0 +1,103 @@
+package hu.trigary.simplenetty.serialization;
+
+import hu.trigary.simplenetty.client.Client;
+import hu.trigary.simplenetty.server.Server;
+import hu.trigary.simplenetty.server.ServerClient;
+import io.netty.buffer.ByteBuf;
+import io.netty.util.Recycler;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public class RecyclableTest {
+	private static final Recycler<Sample> RECYCLER = new Recycler<Sample>(16, 2, 1, 16) {
+		@Override
+		protected Sample newObject(Handle<Sample> handle) {
+			return new Sample(handle);
+		}
+	};
+	private static final DataSerializer<Sample> SERIALIZER = new ByteBufDataSerializer<Sample>() {
+		@Override
+		public void serialize(Sample data, ByteBuf output) {
+			output.writeInt(data.value);
+		}
+		
+		@Override
+		public Sample deserialize(ByteBuf input) {
+			Sample sample = RECYCLER.get();
+			sample.value = input.readInt();
+			return sample;
+		}
+		
+		@Override
+		public Class<Sample> getType() {
+			return Sample.class;
+		}
+	};
+	
+	@Test
+	public void testRecycling() throws InterruptedException {
+		final int port = 807;
+		BlockingQueue<Sample> received = new LinkedBlockingQueue<>();
+		BlockingQueue<Throwable> exceptions = new LinkedBlockingQueue<>();
+		Server<ServerClient<Sample>, Sample> server = new Server<>(SERIALIZER, ServerClient::new);
+		server.onException((client, cause) -> exceptions.add(cause));
+		server.onReceived((client, data) -> {
+			if (data.value == 1) {
+				data.retain();
+			} else if (data.value == 3) {
+				//the listener may recycle the instance itself, it mustn't be recycled again afterwards
+				data.recycle();
+			}
+			received.add(data);
+		});
+		server.start(null, port);
+		
+		Client<Sample> client = new Client<>(SERIALIZER);
+		Assert.assertTrue(client.connect("localhost", port, 5000));
+		
+		Sample[] samples = new Sample[5];
+		for (int i = 0; i < samples.length; i++) {
+			client.send(new Sample(i));
+			samples[i] = received.poll(5, TimeUnit.SECONDS);
+			Assert.assertNotNull(samples[i]);
+		}
+		
+		Assert.assertSame(samples[0], samples[1]);
+		Assert.assertNotSame(samples[1], samples[2]);
+		Assert.assertSame(samples[2], samples[3]);
+		Assert.assertSame(samples[3], samples[4]);
+		Assert.assertTrue(samples[1].isRetained());
+		Assert.assertEquals(1, samples[1].value);
+		
+		samples[1].recycle();
+		Assert.assertEquals(0, samples[1].value);
+		
+		client.uninitialize();
+		server.stop();
+		Assert.assertTrue(exceptions.isEmpty());
+	}
+	
+	
+	
+	private static class Sample extends Recyclable {
+		private int value;
+		
+		Sample(Recycler.Handle<Sample> handle) {
+			super(handle);
+		}
+		
+		Sample(int value) {
+			super(null);
+			this.value = value;
+		}
+		
+		@Override
+		protected void clear() {
+			value = 0;
+		}
+	}
+}
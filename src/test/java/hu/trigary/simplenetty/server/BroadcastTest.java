@@ -0,0 +1,132 @@
+package hu.trigary.simplenetty.server;
+
+import hu.trigary.simplenetty.StringSerializer;
+import hu.trigary.simplenetty.client.Client;
+import hu.trigary.simplenetty.metrics.EndpointMetrics;
+import hu.trigary.simplenetty.serialization.Compression;
+import hu.trigary.simplenetty.serialization.DataSerializer;
+import hu.trigary.simplenetty.serialization.FrameFormat;
+import hu.trigary.simplenetty.transport.Transport;
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BroadcastTest {
+	private static final DataSerializer<String> SERIALIZER = new StringSerializer();
+	
+	@Test
+	public void testSendTo() throws Throwable {
+		final String host = "localhost";
+		final int port = 801;
+		final int clientCount = 5;
+		final String message = "Hello everyone!";
+		
+		CountDownLatch connected = new CountDownLatch(clientCount);
+		Server<ServerClient<String>, String> server = new Server<>(SERIALIZER, ServerClient::new);
+		server.setFrameFormat(FrameFormat.VARINT);
+		EndpointMetrics metrics = server.enableMetrics();
+		server.onConnected(client -> connected.countDown());
+		server.start(null, port);
+		
+		CountDownLatch received = new CountDownLatch(clientCount * 3 - 1);
+		List<Client<String>> clients = new ArrayList<>();
+		EventLoopGroup clientGroup = Transport.getDefault().newEventLoopGroup(2, new DefaultThreadFactory("test-client"));
+		for (int i = 0; i < clientCount; i++) {
+			Client<String> client = new Client<>(SERIALIZER);
+			client.setSharedWorkerGroup(clientGroup);
+			client.setFrameFormat(FrameFormat.VARINT);
+			client.onReceived(data -> {
+				Assert.assertEquals(message, data);
+				received.countDown();
+			});
+			Assert.assertTrue(client.connect(host, port, 5000));
+			clients.add(client);
+		}
+		
+		Assert.assertTrue(connected.await(5, TimeUnit.SECONDS));
+		server.sendTo(message, server.getAllClients());
+		server.sendToAndThen(message, server.getAllClients(), () -> { });
+		server.sendToAllExcept(message, server.getClients().iterator().next());
+		Assert.assertTrue(received.await(5, TimeUnit.SECONDS));
+		Assert.assertEquals(clientCount, metrics.getConnects());
+		Assert.assertEquals(clientCount * 3 - 1, metrics.getMessagesSent());
+		Assert.assertEquals(Long.valueOf(clientCount * 3 - 1), metrics.getMessagesSentByType().get(String.class));
+		Assert.assertEquals(3, metrics.getSerializeNanos().getCount());
+		Assert.assertTrue(metrics.getBytesSent() >= (clientCount * 3 - 1) * (message.length() + 1));
+		Assert.assertTrue(server.getClients().iterator().next().getMetrics().getMessagesSent() >= 2);
+		
+		for (Client<String> client : clients) {
+			client.uninitialize();
+		}
+		Assert.assertFalse(clientGroup.isShuttingDown());
+		clientGroup.shutdownGracefully().sync();
+		server.stop();
+	}
+	
+	@Test
+	public void testGroups() throws Throwable {
+		final String host = "localhost";
+		final int port = 802;
+		final String message = String.join(" ", Collections.nCopies(100, "Hello room!"));
+		final Compression compression = new Compression(64);
+		
+		CountDownLatch connected = new CountDownLatch(3);
+		CountDownLatch disconnected = new CountDownLatch(1);
+		Server<ServerClient<String>, String> server = new Server<>(SERIALIZER, ServerClient::new);
+		server.setCompression(compression);
+		server.enableContainerFrames(16, 4096);
+		server.onConnected(client -> connected.countDown());
+		server.onDisconnected(client -> disconnected.countDown());
+		server.start(null, port);
+		
+		CountDownLatch received = new CountDownLatch(2);
+		AtomicInteger receivedCount = new AtomicInteger();
+		List<Client<String>> clients = new ArrayList<>();
+		EventLoopGroup clientGroup = Transport.getDefault().newEventLoopGroup(1, null);
+		for (int i = 0; i < 3; i++) {
+			Client<String> client = new Client<>(SERIALIZER);
+			client.setSharedWorkerGroup(clientGroup);
+			client.setCompression(compression);
+			client.enableContainerFrames(16, 4096);
+			client.onReceived(data -> {
+				Assert.assertEquals(message, data);
+				receivedCount.incrementAndGet();
+				received.countDown();
+			});
+			Assert.assertTrue(client.connect(host, port, 5000));
+			clients.add(client);
+		}
+		
+		Assert.assertTrue(connected.await(5, TimeUnit.SECONDS));
+		Iterator<ServerClient<String>> iterator = server.getClients().iterator();
+		ServerClient<String> first = iterator.next();
+		ClientGroup<ServerClient<String>> group = server.joinGroup("room", first);
+		server.joinGroup("room", iterator.next());
+		Assert.assertEquals(2, group.size());
+		Assert.assertTrue(first.getGroups().contains(group));
+		
+		server.sendToGroup("room", message);
+		Assert.assertTrue(received.await(5, TimeUnit.SECONDS));
+		
+		first.close();
+		Assert.assertTrue(disconnected.await(5, TimeUnit.SECONDS));
+		Assert.assertEquals(1, group.size());
+		Assert.assertTrue(first.getGroups().isEmpty());
+		
+		for (Client<String> client : clients) {
+			client.uninitialize();
+		}
+		clientGroup.shutdownGracefully().sync();
+		server.stop();
+		Assert.assertEquals(2, receivedCount.get());
+	}
+}
@@ -0,0 +1,57 @@
+package hu.trigary.simplenetty.server;
+
+import hu.trigary.simplenetty.StringSerializer;
+import hu.trigary.simplenetty.client.Client;
+import hu.trigary.simplenetty.serialization.DataSerializer;
+import io.netty.handler.timeout.ReadTimeoutException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class HeartbeatTest {
+	private static final DataSerializer<String> SERIALIZER = new StringSerializer();
+	
+	@Test
+	public void testHeartbeats() throws InterruptedException {
+		final int port = 806;
+		AtomicInteger received = new AtomicInteger();
+		AtomicInteger timeouts = new AtomicInteger();
+		CountDownLatch disconnected = new CountDownLatch(1);
+		Server<ServerClient<String>, String> server = new Server<>(SERIALIZER, ServerClient::new);
+		server.enableHeartbeats(250, 3);
+		server.onReceived((client, data) -> received.incrementAndGet());
+		server.onDisconnected(client -> disconnected.countDown());
+		server.onException((client, cause) -> {
+			if (cause instanceof ReadTimeoutException) {
+				timeouts.incrementAndGet();
+			}
+		});
+		server.start(null, port);
+		
+		//answers the pings, but never sends anything on its own
+		Client<String> alive = new Client<>(SERIALIZER);
+		alive.enableHeartbeats(1000, 3);
+		alive.onReceived(data -> received.incrementAndGet());
+		Assert.assertTrue(alive.connect("localhost", port, 5000));
+		
+		//understands the frames, but doesn't answer the pings
+		Client<String> dead = new Client<>(SERIALIZER);
+		dead.setRpcEnabled(true);
+		Assert.assertTrue(dead.connect("localhost", port, 5000));
+		
+		Assert.assertTrue(disconnected.await(5, TimeUnit.SECONDS));
+		Thread.sleep(300);
+		Assert.assertEquals(1, server.getClients().size());
+		Assert.assertNotNull(alive.getContext());
+		Assert.assertNull(dead.getContext());
+		Assert.assertEquals(1, timeouts.get());
+		Assert.assertEquals(0, received.get());
+		
+		alive.uninitialize();
+		dead.uninitialize();
+		server.stop();
+	}
+}
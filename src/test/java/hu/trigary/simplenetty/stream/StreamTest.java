@@ -0,0 +1,313 @@
+package hu.trigary.simplenetty.stream;
+
+import hu.trigary.simplenetty.Endpoint;
+import hu.trigary.simplenetty.client.Client;
+import hu.trigary.simplenetty.serialization.ByteBufDataSerializer;
+import hu.trigary.simplenetty.serialization.Compression;
+import hu.trigary.simplenetty.serialization.FrameFormat;
+import hu.trigary.simplenetty.server.Server;
+import hu.trigary.simplenetty.server.ServerClient;
+import io.netty.buffer.ByteBuf;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class StreamTest {
+	@Test
+	public void testStreams() throws Exception {
+		final int port = 809;
+		byte[] payload = new byte[4 * 1024 * 1024 + 123];
+		new Random(1).nextBytes(payload);
+		
+		AtomicInteger messages = new AtomicInteger();
+		CompletableFuture<byte[]> serverReceived = new CompletableFuture<>();
+		Server<ServerClient<Integer>, Integer> server = new Server<>(new IntegerSerializer(), ServerClient::new);
+		server.enableStreams(StreamHandler.INITIAL_WINDOW);
+		server.onReceived((client, data) -> messages.incrementAndGet());
+		server.onStream((client, stream) -> {
+			if (serverReceived.isDone()) {
+				stream.cancel();
+				return;
+			}
+			
+			Thread reader = new Thread(() -> {
+				try (InputStream input = stream.getInputStream()) {
+					serverReceived.complete(readFully(input));
+				} catch (Throwable cause) {
+					serverReceived.completeExceptionally(cause);
+				}
+			});
+			reader.start();
+		});
+		server.start(null, port);
+		
+		CompletableFuture<byte[]> clientReceived = new CompletableFuture<>();
+		Client<Integer> client = new Client<>(new IntegerSerializer());
+		client.enableStreams(256 * 1024);
+		client.onStream(stream -> {
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			stream.setListener(new StreamListener() {
+				@Override
+				public void onChunk(ByteBuf chunk) {
+					byte[] bytes = new byte[chunk.readableBytes()];
+					chunk.readBytes(bytes);
+					output.write(bytes, 0, bytes.length);
+				}
+				
+				@Override
+				public void onEnd() {
+					clientReceived.complete(output.toByteArray());
+				}
+				
+				@Override
+				public void onError(Throwable cause) {
+					clientReceived.completeExceptionally(cause);
+				}
+			});
+		});
+		Assert.assertTrue(client.connect("localhost", port, 5000));
+		
+		CompletableFuture<Void> sent = client.sendStream(new ByteArrayInputStream(payload));
+		for (int i = 0; i < 100; i++) {
+			client.send(i);
+		}
+		sent.get(10, TimeUnit.SECONDS);
+		Assert.assertArrayEquals(payload, serverReceived.get(10, TimeUnit.SECONDS));
+		Assert.assertEquals(100, messages.get());
+		
+		ServerClient<Integer> serverClient = server.getClients().iterator().next();
+		serverClient.sendStream(new ByteArrayInputStream(payload)).get(10, TimeUnit.SECONDS);
+		Assert.assertArrayEquals(payload, clientReceived.get(10, TimeUnit.SECONDS));
+		
+		try {
+			client.sendStream(new ByteArrayInputStream(payload)).get(10, TimeUnit.SECONDS);
+			Assert.fail();
+		} catch (ExecutionException e) {
+			Assert.assertTrue(e.getCause() instanceof IOException);
+		}
+		
+		client.uninitialize();
+		server.stop();
+	}
+	
+	@Test
+	public void testBlockingSource() throws Exception {
+		final int port = 814;
+		byte[] payload = new byte[100 * 1024];
+		new Random(3).nextBytes(payload);
+		
+		CountDownLatch messages = new CountDownLatch(3);
+		CompletableFuture<byte[]> received = new CompletableFuture<>();
+		Server<ServerClient<Integer>, Integer> server = new Server<>(new IntegerSerializer(), ServerClient::new);
+		server.enableStreams(StreamHandler.INITIAL_WINDOW);
+		server.onReceived((client, data) -> messages.countDown());
+		server.onStream((client, stream) -> new Thread(() -> {
+			try (InputStream input = stream.getInputStream()) {
+				received.complete(readFully(input));
+			} catch (Throwable cause) {
+				received.completeExceptionally(cause);
+			}
+		}).start());
+		server.start(null, port);
+		
+		Client<Integer> client = new Client<>(new IntegerSerializer());
+		client.enableStreams(StreamHandler.INITIAL_WINDOW);
+		Assert.assertTrue(client.connect("localhost", port, 5000));
+		
+		//the source blocks until data is written into the pipe, the other messages mustn't wait for it
+		PipedOutputStream pipe = new PipedOutputStream();
+		CompletableFuture<Void> sent = client.sendStream(new PipedInputStream(pipe, payload.length));
+		for (int i = 0; i < 3; i++) {
+			client.send(i);
+		}
+		Assert.assertTrue(messages.await(5, TimeUnit.SECONDS));
+		Assert.assertFalse(sent.isDone());
+		
+		pipe.write(payload);
+		pipe.close();
+		sent.get(10, TimeUnit.SECONDS);
+		Assert.assertArrayEquals(payload, received.get(10, TimeUnit.SECONDS));
+		
+		client.uninitialize();
+		server.stop();
+	}
+	
+	@Test
+	public void testFiles() throws Exception {
+		final int port = 810;
+		byte[] contents = new byte[1024 * 1024 + 7];
+		new Random(2).nextBytes(contents);
+		Path source = Files.createTempFile("stream-test", ".bin");
+		Path target = Files.createTempFile("stream-test", ".bin");
+		Files.write(source, contents);
+		
+		CompletableFuture<CompletableFuture<Void>> received = new CompletableFuture<>();
+		Server<ServerClient<Integer>, Integer> server = new Server<>(new IntegerSerializer(), ServerClient::new);
+		configure(server);
+		server.onStream((client, stream) -> {
+			try {
+				received.complete(stream.transferTo(target));
+			} catch (IOException e) {
+				received.completeExceptionally(e);
+			}
+		});
+		server.start(null, port);
+		
+		Client<Integer> client = new Client<>(new IntegerSerializer());
+		configure(client);
+		Assert.assertTrue(client.connect("localhost", port, 5000));
+		
+		client.sendFile(source, 5, contents.length - 7).get(10, TimeUnit.SECONDS);
+		received.get(10, TimeUnit.SECONDS).get(10, TimeUnit.SECONDS);
+		Assert.assertArrayEquals(Arrays.copyOfRange(contents, 5, contents.length - 2), Files.readAllBytes(target));
+		
+		try {
+			client.sendFile(source, 1, contents.length);
+			Assert.fail();
+		} catch (IllegalArgumentException ignored) {
+		}
+		
+		client.uninitialize();
+		server.stop();
+		Files.delete(source);
+		Files.delete(target);
+	}
+	
+	@Test
+	public void testFileOrdering() throws Exception {
+		final int port = 811;
+		Path source = Files.createTempFile("stream-test", ".bin");
+		Path target = Files.createTempFile("stream-test", ".bin");
+		Files.write(source, new byte[100]);
+		
+		Queue<Object> events = new ConcurrentLinkedQueue<>();
+		CompletableFuture<CompletableFuture<Void>> received = new CompletableFuture<>();
+		Server<ServerClient<Integer>, Integer> server = new Server<>(new IntegerSerializer(), ServerClient::new);
+		configure(server);
+		server.onReceived((client, data) -> events.add(data));
+		server.onStream((client, stream) -> {
+			events.add("stream");
+			try {
+				received.complete(stream.transferTo(target));
+			} catch (IOException e) {
+				received.completeExceptionally(e);
+			}
+		});
+		server.start(null, port);
+		
+		Client<Integer> client = new Client<>(new IntegerSerializer());
+		configure(client);
+		Assert.assertTrue(client.connect("localhost", port, 5000));
+		
+		//the metadata is held back in the container until the batch ends, it still has to arrive first
+		CompletableFuture<CompletableFuture<Void>> sent = new CompletableFuture<>();
+		client.batch(() -> {
+			client.send(100);
+			try {
+				sent.complete(client.sendFile(source, 0, 100));
+			} catch (IOException e) {
+				sent.completeExceptionally(e);
+			}
+		});
+		sent.get().get(10, TimeUnit.SECONDS);
+		received.get(10, TimeUnit.SECONDS).get(10, TimeUnit.SECONDS);
+		Assert.assertArrayEquals(new Object[]{100, "stream"}, events.toArray());
+		
+		client.uninitialize();
+		server.stop();
+		Files.delete(source);
+		Files.delete(target);
+	}
+	
+	@Test
+	public void testFileCancel() throws Exception {
+		final int port = 813;
+		Path source = Files.createTempFile("stream-test", ".bin");
+		Path target = Files.createTempFile("stream-test", ".bin");
+		Files.write(source, new byte[1024 * 1024]);
+		
+		CompletableFuture<CompletableFuture<Void>> received = new CompletableFuture<>();
+		Server<ServerClient<Integer>, Integer> server = new Server<>(new IntegerSerializer(), ServerClient::new);
+		server.enableStreams(StreamHandler.INITIAL_WINDOW);
+		server.onStream((client, stream) -> {
+			try {
+				received.complete(stream.transferTo(target));
+			} catch (IOException e) {
+				received.completeExceptionally(e);
+			}
+			stream.cancel();
+		});
+		server.start(null, port);
+		
+		Client<Integer> client = new Client<>(new IntegerSerializer());
+		client.enableStreams(StreamHandler.INITIAL_WINDOW);
+		Assert.assertTrue(client.connect("localhost", port, 5000));
+		
+		client.sendFile(source, 0, 1024 * 1024);
+		try {
+			received.get(10, TimeUnit.SECONDS).get(10, TimeUnit.SECONDS);
+			Assert.fail();
+		} catch (CancellationException ignored) {
+		}
+		
+		client.uninitialize();
+		server.stop();
+		Files.delete(source);
+		Files.delete(target);
+	}
+	
+	
+	
+	private static void configure(Endpoint<Integer> endpoint) {
+		//the file regions have to be framed the same way as the other messages
+		endpoint.enableStreams(StreamHandler.INITIAL_WINDOW);
+		endpoint.setFrameFormat(FrameFormat.VARINT);
+		endpoint.setCompression(new Compression(64));
+		endpoint.enableContainerFrames(16, 4096);
+	}
+	
+	private static byte[] readFully(InputStream input) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = input.read(buffer)) >= 0) {
+			output.write(buffer, 0, read);
+		}
+		return output.toByteArray();
+	}
+	
+	private static class IntegerSerializer extends ByteBufDataSerializer<Integer> {
+		@Override
+		public void serialize(Integer data, ByteBuf output) {
+			output.writeInt(data);
+		}
+		
+		@Override
+		public Integer deserialize(ByteBuf input) {
+			return input.readInt();
+		}
+		
+		@Override
+		public Class<Integer> getType() {
+			return Integer.class;
+		}
+	}
+}